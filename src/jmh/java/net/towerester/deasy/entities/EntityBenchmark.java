@@ -0,0 +1,61 @@
+package net.towerester.deasy.entities;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.towerester.deasy.gateway.GatewayPayload;
+import net.towerester.deasy.utils.Snowflake;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the fields a handler typically needs from MESSAGE_CREATE the way the gateway hands it to a handler:
+ * the frame is parsed and detached, then the handler reads the data as a json tree or through the message reader.
+ * Run with -prof gc to compare the allocation**/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityBenchmark {
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+        this.json = ("{\"op\":0,\"s\":42,\"t\":\"MESSAGE_CREATE\",\"d\":{\"id\":\"1400000000000000001\",\"channel_id\":\"1100000000000000001\",\"guild_id\":\"1000000000000000000\"," +
+                "\"content\":\"Hello, this is a benchmark message with a few words in it\",\"timestamp\":\"2023-05-01T12:00:00.000000+00:00\"," +
+                "\"edited_timestamp\":null,\"tts\":false,\"mention_everyone\":false,\"type\":0,\"pinned\":false,\"flags\":0," +
+                "\"mentions\":[],\"mention_roles\":[],\"attachments\":[],\"embeds\":[],\"components\":[]," +
+                "\"author\":{\"id\":\"1300000000000000001\",\"username\":\"user1\",\"discriminator\":\"0\",\"global_name\":\"User\",\"avatar\":null,\"public_flags\":0}," +
+                "\"member\":{\"roles\":[\"1200000000000000001\"],\"joined_at\":\"2023-05-01T12:00:00.000000+00:00\",\"nick\":null,\"deaf\":false,\"mute\":false,\"flags\":0}}}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long tree() throws IOException {
+        JsonNode message = GatewayPayload.parse(json, 0, json.length).detach().getData();
+        JsonNode author = message.get("author");
+
+        return Snowflake.parse(message, "id") + Snowflake.parse(message, "channel_id") + Snowflake.parse(author, "id")
+                + message.get("content").asText().length() + author.get("username").asText().length();
+    }
+
+    @Benchmark
+    public long reader() throws IOException {
+        Message message = GatewayPayload.parse(json, 0, json.length).detach().getData(Entities.MESSAGE);
+
+        return message.id() + message.channelId() + message.author().id()
+                + message.content().length() + message.author().username().length();
+    }
+}
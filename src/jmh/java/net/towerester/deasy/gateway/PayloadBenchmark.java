@@ -0,0 +1,70 @@
+package net.towerester.deasy.gateway;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.gateway.entities.Activity;
+import net.towerester.deasy.gateway.entities.Presence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building outbound heartbeat and presence frames: a json tree written to a string (the old way)
+ * against the heartbeat template and the cached presence frame. Run with -prof gc to see the allocation per frame**/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+    private HeartbeatPayload heartbeat;
+    private Presence presence;
+    private int sequence;
+
+    @Setup
+    public void setup() {
+        this.heartbeat = new HeartbeatPayload();
+        this.presence = new Presence();
+        this.presence.addActivity(new Activity(Activity.Type.WATCHING, "benchmarks"));
+        this.sequence = 1000;
+    }
+
+    @Benchmark
+    public String heartbeatTree() throws JsonProcessingException {
+        ObjectNode node = Constants.MAPPER.createObjectNode();
+        node.put("op", 1);
+        node.put("d", ++sequence);
+
+        return Constants.MAPPER.writeValueAsString(node);
+    }
+
+    @Benchmark
+    public int heartbeatTemplate() {
+        return heartbeat.write(++sequence);
+    }
+
+    @Benchmark
+    public String presenceTree() throws JsonProcessingException {
+        ObjectNode node = Constants.MAPPER.createObjectNode();
+        node.put("op", 3);
+        node.set("d", presence.toJson());
+
+        return Constants.MAPPER.writeValueAsString(node);
+    }
+
+    @Benchmark
+    public byte[] presenceCached() {
+        return presence.toPayload();
+    }
+}
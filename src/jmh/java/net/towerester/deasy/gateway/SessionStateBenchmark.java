@@ -0,0 +1,60 @@
+package net.towerester.deasy.gateway;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message cost of storing the dispatch sequence: reflective field lookup and set (the old way)
+ * against a direct update of {@link GatewaySession}**/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionStateBenchmark {
+    private ReflectiveClient reflectiveClient;
+    private GatewaySession session;
+    private int sequence;
+
+    /**
+     * Mirrors the field layout the old reflective code was writing into**/
+    public static class ReflectiveClient {
+        private volatile int lastSeq;
+        private volatile String sessionId;
+    }
+
+    @Setup
+    public void setup() {
+        this.reflectiveClient = new ReflectiveClient();
+        this.session = new GatewaySession();
+        this.sequence = 0;
+    }
+
+    @Benchmark
+    public int reflection() throws ReflectiveOperationException {
+        Field f = reflectiveClient.getClass().getDeclaredField("lastSeq");
+        f.setAccessible(true);
+        f.set(reflectiveClient, ++sequence);
+
+        return reflectiveClient.lastSeq;
+    }
+
+    @Benchmark
+    public int session() {
+        session.advanceSequence(++sequence);
+
+        return session.getSequence();
+    }
+}
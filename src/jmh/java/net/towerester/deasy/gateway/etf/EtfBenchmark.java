@@ -0,0 +1,182 @@
+package net.towerester.deasy.gateway.etf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.towerester.deasy.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode cost of a dispatch in the json and the etf encoding. Payloads are shaped like GUILD_CREATE (channels, roles
+ * and members of a mid-sized guild) and MESSAGE_CREATE. In the etf version keys are atoms and snowflakes are integers, as Discord
+ * sends them. Sizes of both encodings are printed on setup**/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EtfBenchmark {
+    @Param({"GUILD_CREATE", "MESSAGE_CREATE"})
+    private String event;
+
+    private byte[] json;
+    private byte[] etf;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectNode payload = Constants.MAPPER.createObjectNode();
+        payload.put("op", 0);
+        payload.put("s", 42);
+        payload.put("t", event);
+        payload.set("d", event.equals("GUILD_CREATE") ? guild() : message(1));
+
+        this.json = Constants.MAPPER.writeValueAsBytes(payload);
+        this.etf = EtfEncoder.encode(withIntegerIds(payload.deepCopy()), true);
+
+        System.out.printf("%n%s: json %d bytes, etf %d bytes%n", event, json.length, etf.length);
+    }
+
+    @Benchmark
+    public JsonNode decodeJson() throws IOException {
+        return Constants.MAPPER.readTree(json);
+    }
+
+    @Benchmark
+    public JsonNode decodeEtf() throws IOException {
+        return EtfDecoder.decode(etf, 0, etf.length);
+    }
+
+    private static ObjectNode guild() {
+        ObjectNode guild = Constants.MAPPER.createObjectNode();
+        guild.put("id", "1000000000000000000");
+        guild.put("name", "Benchmark guild");
+        guild.put("owner_id", "1000000000000000001");
+        guild.put("member_count", 300);
+        guild.put("large", false);
+        guild.putNull("icon");
+
+        ArrayNode channels = guild.putArray("channels");
+        for(int i = 0; i < 80; i++) {
+            ObjectNode channel = channels.addObject();
+            channel.put("id", String.valueOf(1100000000000000000L + i));
+            channel.put("type", i % 5 == 0 ? 2 : 0);
+            channel.put("name", "channel-" + i);
+            channel.put("position", i);
+            channel.put("parent_id", "1100000000000000000");
+            channel.putNull("topic");
+            channel.put("nsfw", false);
+            channel.put("rate_limit_per_user", 0);
+            channel.putArray("permission_overwrites").addObject().put("id", "1200000000000000000").put("type", 0).put("allow", "1024").put("deny", "0");
+        }
+
+        ArrayNode roles = guild.putArray("roles");
+        for(int i = 0; i < 40; i++) {
+            ObjectNode role = roles.addObject();
+            role.put("id", String.valueOf(1200000000000000000L + i));
+            role.put("name", "role-" + i);
+            role.put("color", 3447003);
+            role.put("position", i);
+            role.put("permissions", "2147483647");
+            role.put("hoist", false);
+            role.put("managed", false);
+            role.put("mentionable", true);
+        }
+
+        ArrayNode members = guild.putArray("members");
+        for(int i = 0; i < 300; i++) {
+            ObjectNode member = members.addObject();
+            ObjectNode user = member.putObject("user");
+            user.put("id", String.valueOf(1300000000000000000L + i));
+            user.put("username", "user" + i);
+            user.put("discriminator", "0");
+            user.putNull("avatar");
+            user.put("bot", false);
+            member.putArray("roles").add(String.valueOf(1200000000000000000L + i % 40));
+            member.put("joined_at", "2023-05-01T12:00:00.000000+00:00");
+            member.putNull("nick");
+            member.put("deaf", false);
+            member.put("mute", false);
+        }
+
+        return guild;
+    }
+
+    private static ObjectNode message(int index) {
+        ObjectNode message = Constants.MAPPER.createObjectNode();
+        message.put("id", String.valueOf(1400000000000000000L + index));
+        message.put("channel_id", "1100000000000000001");
+        message.put("guild_id", "1000000000000000000");
+        message.put("content", "Hello, this is a benchmark message with a few words in it");
+        message.put("timestamp", "2023-05-01T12:00:00.000000+00:00");
+        message.putNull("edited_timestamp");
+        message.put("tts", false);
+        message.put("mention_everyone", false);
+        message.put("type", 0);
+        message.put("pinned", false);
+        message.putArray("mentions");
+        message.putArray("attachments");
+        message.putArray("embeds");
+
+        ObjectNode author = message.putObject("author");
+        author.put("id", "1300000000000000001");
+        author.put("username", "user1");
+        author.put("discriminator", "0");
+        author.putNull("avatar");
+
+        ObjectNode member = message.putObject("member");
+        member.putArray("roles").add("1200000000000000001");
+        member.put("joined_at", "2023-05-01T12:00:00.000000+00:00");
+        member.put("deaf", false);
+        member.put("mute", false);
+
+        return message;
+    }
+
+    /**
+     * Replace snowflake strings (id fields and role lists) with integers**/
+    private static JsonNode withIntegerIds(JsonNode node) {
+        if(node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+
+            while(fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+
+                if((field.getKey().equals("id") || field.getKey().endsWith("_id")) && field.getValue().isTextual()) {
+                    field.setValue(Constants.MAPPER.getNodeFactory().numberNode(Long.parseLong(field.getValue().asText())));
+                } else if(field.getKey().equals("roles") && field.getValue().isArray() && field.getValue().path(0).isTextual()) {
+                    ArrayNode ids = Constants.MAPPER.createArrayNode();
+
+                    for(JsonNode id: field.getValue()) {
+                        ids.add(Long.parseLong(id.asText()));
+                    }
+
+                    field.setValue(ids);
+                } else {
+                    withIntegerIds(field.getValue());
+                }
+            }
+        } else if(node.isArray()) {
+            for(JsonNode el: node) {
+                withIntegerIds(el);
+            }
+        }
+
+        return node;
+    }
+}
@@ -0,0 +1,98 @@
+package net.towerester.deasy.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snowflake-keyed lookups and bulk inserts: {@link LongObjectMap} against HashMap with boxed Long keys.
+ * Run with -prof gc to compare the allocation of the fill benchmarks**/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LongMapBenchmark {
+    @Param({"1000000", "10000000"})
+    private int size;
+
+    private long[] ids;
+    private LongObjectMap<Object> primitive;
+    private Map<Long, Object> boxed;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        long timestamp = System.currentTimeMillis() - Snowflake.DISCORD_EPOCH;
+
+        this.ids = new long[size];
+        this.primitive = new LongObjectMap<>(size);
+        this.boxed = new HashMap<>(size * 2);
+
+        for(int i = 0; i < size; i++) {
+            // Realistic snowflakes: close timestamps, random worker/process/increment bits
+            ids[i] = ((timestamp - random.nextInt(1_000_000_000)) << 22) | random.nextInt(1 << 22);
+            primitive.put(ids[i], Boolean.TRUE);
+            boxed.put(ids[i], Boolean.TRUE);
+        }
+    }
+
+    @Benchmark
+    public Object getPrimitive() {
+        return primitive.get(ids[nextIndex()]);
+    }
+
+    @Benchmark
+    public Object getBoxed() {
+        return boxed.get(ids[nextIndex()]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 3)
+    public LongObjectMap<Object> fillPrimitive() {
+        LongObjectMap<Object> map = new LongObjectMap<>();
+
+        for(long id: ids) {
+            map.put(id, Boolean.TRUE);
+        }
+
+        return map;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 3)
+    public Map<Long, Object> fillBoxed() {
+        Map<Long, Object> map = new HashMap<>();
+
+        for(long id: ids) {
+            map.put(id, Boolean.TRUE);
+        }
+
+        return map;
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == size ? 0 : index + 1;
+        return index;
+    }
+}
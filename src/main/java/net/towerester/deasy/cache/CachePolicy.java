@@ -0,0 +1,65 @@
+package net.towerester.deasy.cache;
+
+/**
+ * Which entities of one type are kept in the {@link EntityCache}**/
+public class CachePolicy {
+    private static final CachePolicy NONE = new CachePolicy(false, 0, false);
+    private static final CachePolicy ALL = new CachePolicy(true, 0, false);
+    private static final CachePolicy VOICE_MEMBERS = new CachePolicy(true, 0, true);
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final boolean voiceOnly;
+
+    private CachePolicy(boolean enabled, int maxSize, boolean voiceOnly) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.voiceOnly = voiceOnly;
+    }
+
+    /**
+     * @return Policy caching nothing**/
+    public static CachePolicy none() {
+        return NONE;
+    }
+
+    /**
+     * @return Policy caching every entity received from the gateway**/
+    public static CachePolicy all() {
+        return ALL;
+    }
+
+    /**
+     * @param maxSize Maximum number of entities (for members - per guild)
+     * @return Policy evicting the least recently used entities when the cache is over maxSize**/
+    public static CachePolicy lru(int maxSize) {
+        if(maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be positive");
+        }
+
+        return new CachePolicy(true, maxSize, false);
+    }
+
+    /**
+     * Member policy caching only members connected to a voice channel (requires the GUILD_VOICE_STATES intent)
+     * @return Policy caching voice members**/
+    public static CachePolicy voiceMembers() {
+        return VOICE_MEMBERS;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Maximum number of entities or 0 if the size isn't limited**/
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return Whether only members connected to a voice channel are cached**/
+    public boolean isVoiceOnly() {
+        return voiceOnly;
+    }
+}
@@ -0,0 +1,493 @@
+package net.towerester.deasy.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.utils.LongObjectMap;
+import net.towerester.deasy.utils.LongSet;
+import net.towerester.deasy.utils.Snowflake;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Guilds, channels, roles and members received from the gateway, keyed by snowflake. The cache is updated
+ * on the websocket thread before event handlers are called, so handlers see the state after the event.
+ * Entities are stored as the json sent by Discord. Lists held by guilds (channels, roles, members, etc...)
+ * are removed from the cached guild, they are stored separately. Members (and their presences) can be stored
+ * off-heap instead, see {@link OffHeapMemberStore}**/
+public class EntityCache {
+    private static final Set<String> EVENTS = Set.of(
+            "GUILD_CREATE", "GUILD_UPDATE", "GUILD_DELETE",
+            "CHANNEL_CREATE", "CHANNEL_UPDATE", "CHANNEL_DELETE",
+            "GUILD_ROLE_CREATE", "GUILD_ROLE_UPDATE", "GUILD_ROLE_DELETE",
+            "GUILD_MEMBER_ADD", "GUILD_MEMBER_UPDATE", "GUILD_MEMBER_REMOVE", "GUILD_MEMBERS_CHUNK",
+            "VOICE_STATE_UPDATE"
+    );
+    private static final Set<String> GUILD_LISTS = Set.of("channels", "threads", "roles", "members", "presences", "voice_states", "emojis", "stickers", "stage_instances", "guild_scheduled_events");
+
+    private final CachePolicy guildPolicy;
+    private final CachePolicy channelPolicy;
+    private final CachePolicy rolePolicy;
+    private final CachePolicy memberPolicy;
+    private final EntityStore guilds;
+    private final EntityStore channels;
+    private final EntityStore roles;
+    private final LongObjectMap<EntityStore> members;
+    private final ReentrantReadWriteLock membersLock;
+    private final OffHeapMemberStore offHeapMembers;
+
+    public static class Builder {
+        private CachePolicy guildPolicy;
+        private CachePolicy channelPolicy;
+        private CachePolicy rolePolicy;
+        private CachePolicy memberPolicy;
+        private boolean offHeapMembers;
+
+        public Builder() {
+            this.guildPolicy = CachePolicy.all();
+            this.channelPolicy = CachePolicy.all();
+            this.rolePolicy = CachePolicy.all();
+            this.memberPolicy = CachePolicy.voiceMembers();
+            this.offHeapMembers = false;
+        }
+
+        /**
+         * @param guildPolicy Guild cache policy. Default is all**/
+        public Builder setGuildPolicy(CachePolicy guildPolicy) {
+            this.guildPolicy = guildPolicy;
+            return this;
+        }
+
+        /**
+         * @param channelPolicy Channel cache policy. Default is all**/
+        public Builder setChannelPolicy(CachePolicy channelPolicy) {
+            this.channelPolicy = channelPolicy;
+            return this;
+        }
+
+        /**
+         * @param rolePolicy Role cache policy. Default is all**/
+        public Builder setRolePolicy(CachePolicy rolePolicy) {
+            this.rolePolicy = rolePolicy;
+            return this;
+        }
+
+        /**
+         * @param memberPolicy Member cache policy, LRU max size is applied per guild. Default is voice members,
+         *                     caching every member of big bots takes a lot of memory**/
+        public Builder setMemberPolicy(CachePolicy memberPolicy) {
+            this.memberPolicy = memberPolicy;
+            return this;
+        }
+
+        /**
+         * @param offHeapMembers If true, members and their presences are stored outside the heap and read through
+         *                       {@link MemberView}s. Recommended with the GUILD_MEMBERS and GUILD_PRESENCES intents.
+         *                       Can't be used with an LRU member policy**/
+        public Builder setOffHeapMembers(boolean offHeapMembers) {
+            this.offHeapMembers = offHeapMembers;
+            return this;
+        }
+
+        /**
+         * @return Built EntityCache**/
+        public EntityCache build() {
+            return new EntityCache(guildPolicy, channelPolicy, rolePolicy, memberPolicy, offHeapMembers);
+        }
+    }
+
+    /**
+     * @param guildPolicy Guild cache policy
+     * @param channelPolicy Channel cache policy
+     * @param rolePolicy Role cache policy
+     * @param memberPolicy Member cache policy**/
+    public EntityCache(CachePolicy guildPolicy, CachePolicy channelPolicy, CachePolicy rolePolicy, CachePolicy memberPolicy) {
+        this(guildPolicy, channelPolicy, rolePolicy, memberPolicy, false);
+    }
+
+    /**
+     * @param guildPolicy Guild cache policy
+     * @param channelPolicy Channel cache policy
+     * @param rolePolicy Role cache policy
+     * @param memberPolicy Member cache policy
+     * @param offHeapMembers Whether members and presences are stored off-heap**/
+    public EntityCache(CachePolicy guildPolicy, CachePolicy channelPolicy, CachePolicy rolePolicy, CachePolicy memberPolicy, boolean offHeapMembers) {
+        if(offHeapMembers && memberPolicy.getMaxSize() > 0) {
+            throw new IllegalArgumentException("LRU member policy isn't supported by the off-heap member store");
+        }
+
+        this.guildPolicy = guildPolicy;
+        this.channelPolicy = channelPolicy;
+        this.rolePolicy = rolePolicy;
+        this.memberPolicy = memberPolicy;
+        this.guilds = new EntityStore(guildPolicy);
+        this.channels = new EntityStore(channelPolicy);
+        this.roles = new EntityStore(rolePolicy);
+        this.members = new LongObjectMap<>();
+        this.membersLock = new ReentrantReadWriteLock();
+        this.offHeapMembers = offHeapMembers && memberPolicy.isEnabled() ? new OffHeapMemberStore() : null;
+    }
+
+    /**
+     * @return Whether the cache is updated by the dispatch event**/
+    public boolean isHandled(String eventName) {
+        return EVENTS.contains(eventName) || (offHeapMembers != null && eventName.equals("PRESENCE_UPDATE"));
+    }
+
+    /**
+     * Update the cache from a dispatch event
+     * @param eventName Dispatch event name
+     * @param data Event data**/
+    public void handle(String eventName, JsonNode data) {
+        switch (eventName) {
+            case "GUILD_CREATE" -> handleGuildCreate(data);
+            case "GUILD_UPDATE" -> guilds.put(Snowflake.parse(data, "id"), stripGuild(data));
+            case "GUILD_DELETE" -> removeGuild(Snowflake.parse(data, "id"));
+            case "CHANNEL_CREATE", "CHANNEL_UPDATE" -> channels.put(Snowflake.parse(data, "id"), data);
+            case "CHANNEL_DELETE" -> channels.remove(Snowflake.parse(data, "id"));
+            case "GUILD_ROLE_CREATE", "GUILD_ROLE_UPDATE" -> roles.put(Snowflake.parse(data.get("role"), "id"), withGuildId(data.get("role"), data.get("guild_id")));
+            case "GUILD_ROLE_DELETE" -> roles.remove(Snowflake.parse(data, "role_id"));
+            case "GUILD_MEMBER_ADD" -> {
+                // A member that just joined isn't connected to a voice channel
+                if(!memberPolicy.isVoiceOnly()) {
+                    putMember(Snowflake.parse(data, "guild_id"), data);
+                }
+            }
+            case "GUILD_MEMBER_UPDATE" -> {
+                long guildId = Snowflake.parse(data, "guild_id");
+
+                if(!memberPolicy.isVoiceOnly() || hasMember(guildId, Snowflake.parse(data.get("user"), "id"))) {
+                    putMember(guildId, data);
+                }
+            }
+            case "GUILD_MEMBER_REMOVE" -> removeMember(Snowflake.parse(data, "guild_id"), Snowflake.parse(data.get("user"), "id"));
+            case "GUILD_MEMBERS_CHUNK" -> {
+                long guildId = Snowflake.parse(data, "guild_id");
+
+                // Chunks have no voice states, with voice members only the cached ones are refreshed
+                for(JsonNode member: data.path("members")) {
+                    if(!memberPolicy.isVoiceOnly() || hasMember(guildId, Snowflake.parse(member.get("user"), "id"))) {
+                        putMember(guildId, member);
+                    }
+                }
+
+                if(offHeapMembers != null) {
+                    for(JsonNode presence: data.path("presences")) {
+                        offHeapMembers.updatePresence(guildId, presence);
+                    }
+                }
+            }
+            case "PRESENCE_UPDATE" -> {
+                if(offHeapMembers != null) {
+                    offHeapMembers.updatePresence(Snowflake.parse(data, "guild_id"), data);
+                }
+            }
+            case "VOICE_STATE_UPDATE" -> {
+                if(memberPolicy.isVoiceOnly()) {
+                    long guildId = Snowflake.parse(data, "guild_id");
+
+                    JsonNode channelId = data.get("channel_id");
+
+                    if(channelId == null || channelId.isNull()) {
+                        removeMember(guildId, Snowflake.parse(data, "user_id"));
+                    } else if(data.has("member")) {
+                        putMember(guildId, data.get("member"));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Guild json or null if it isn't cached. The guild doesn't contain channels, roles and members, use the other methods of the cache**/
+    public JsonNode getGuild(long id) {
+        return guilds.get(id);
+    }
+
+    /**
+     * @return Cached guilds**/
+    public List<JsonNode> getGuilds() {
+        return guilds.values();
+    }
+
+    /**
+     * @return Channel json (with guild_id for guild channels) or null if it isn't cached**/
+    public JsonNode getChannel(long id) {
+        return channels.get(id);
+    }
+
+    /**
+     * @return Role json (with guild_id) or null if it isn't cached**/
+    public JsonNode getRole(long id) {
+        return roles.get(id);
+    }
+
+    /**
+     * @return Guild member json or null if it isn't cached**/
+    public JsonNode getMember(long guildId, long userId) {
+        if(offHeapMembers != null) {
+            MemberView view = offHeapMembers.getMember(guildId, userId);
+            return view == null ? null : view.toJson();
+        }
+
+        EntityStore store = getMemberStore(guildId, false);
+        return store == null ? null : store.get(userId);
+    }
+
+    /**
+     * @return Cached members of the guild**/
+    public List<JsonNode> getMembers(long guildId) {
+        if(offHeapMembers != null) {
+            List<JsonNode> res = new ArrayList<>();
+            offHeapMembers.forEachMember(guildId, view -> res.add(view.toJson()));
+            return res;
+        }
+
+        EntityStore store = getMemberStore(guildId, false);
+        return store == null ? List.of() : store.values();
+    }
+
+    /**
+     * Read a member without building json, only with off-heap member storage
+     * @return View of the member or null if it isn't cached or members aren't stored off-heap**/
+    public MemberView getMemberView(long guildId, long userId) {
+        return offHeapMembers == null ? null : offHeapMembers.getMember(guildId, userId);
+    }
+
+    /**
+     * Call the consumer for every cached member of the guild, only with off-heap member storage.
+     * The view is reused between calls and must not be kept**/
+    public void forEachMember(long guildId, Consumer<MemberView> consumer) {
+        if(offHeapMembers != null) {
+            offHeapMembers.forEachMember(guildId, consumer);
+        }
+    }
+
+    /**
+     * @return Off-heap member store or null if members are stored on the heap**/
+    public OffHeapMemberStore getOffHeapMembers() {
+        return offHeapMembers;
+    }
+
+    public int getGuildCount() {
+        return guilds.size();
+    }
+
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    public int getRoleCount() {
+        return roles.size();
+    }
+
+    /**
+     * @return Number of cached members in all guilds**/
+    public int getMemberCount() {
+        if(offHeapMembers != null) {
+            return offHeapMembers.getMemberCount();
+        }
+
+        membersLock.readLock().lock();
+        try {
+            int[] count = new int[1];
+            members.forEach((id, store) -> count[0] += store.size());
+            return count[0];
+        } finally {
+            membersLock.readLock().unlock();
+        }
+    }
+
+    public CachePolicy getGuildPolicy() {
+        return guildPolicy;
+    }
+
+    public CachePolicy getChannelPolicy() {
+        return channelPolicy;
+    }
+
+    public CachePolicy getRolePolicy() {
+        return rolePolicy;
+    }
+
+    public CachePolicy getMemberPolicy() {
+        return memberPolicy;
+    }
+
+    /**
+     * Remove everything from the cache**/
+    public void clear() {
+        guilds.clear();
+        channels.clear();
+        roles.clear();
+
+        membersLock.writeLock().lock();
+        try {
+            members.clear();
+        } finally {
+            membersLock.writeLock().unlock();
+        }
+
+        if(offHeapMembers != null) {
+            offHeapMembers.clear();
+        }
+    }
+
+    private void handleGuildCreate(JsonNode data) {
+        long guildId = Snowflake.parse(data, "id");
+        JsonNode guildIdNode = data.get("id");
+
+        guilds.put(guildId, stripGuild(data));
+
+        // Channels and roles of GUILD_CREATE don't have guild_id
+        for(JsonNode channel: data.path("channels")) {
+            channels.put(Snowflake.parse(channel, "id"), withGuildId(channel, guildIdNode));
+        }
+
+        for(JsonNode role: data.path("roles")) {
+            roles.put(Snowflake.parse(role, "id"), withGuildId(role, guildIdNode));
+        }
+
+        if(!memberPolicy.isEnabled()) {
+            return;
+        }
+
+        LongSet voiceUsers = null;
+        if(memberPolicy.isVoiceOnly()) {
+            voiceUsers = new LongSet();
+
+            for(JsonNode state: data.path("voice_states")) {
+                voiceUsers.add(Snowflake.parse(state, "user_id"));
+            }
+        }
+
+        for(JsonNode member: data.path("members")) {
+            if(voiceUsers == null || voiceUsers.contains(Snowflake.parse(member.get("user"), "id"))) {
+                putMember(guildId, member);
+            }
+        }
+
+        if(offHeapMembers != null) {
+            for(JsonNode presence: data.path("presences")) {
+                offHeapMembers.updatePresence(guildId, presence);
+            }
+        }
+    }
+
+    private void removeGuild(long guildId) {
+        guilds.remove(guildId);
+
+        for(JsonNode channel: channels.values()) {
+            if(Snowflake.parse(channel, "guild_id") == guildId) {
+                channels.remove(Snowflake.parse(channel, "id"));
+            }
+        }
+
+        for(JsonNode role: roles.values()) {
+            if(Snowflake.parse(role, "guild_id") == guildId) {
+                roles.remove(Snowflake.parse(role, "id"));
+            }
+        }
+
+        membersLock.writeLock().lock();
+        try {
+            members.remove(guildId);
+        } finally {
+            membersLock.writeLock().unlock();
+        }
+
+        if(offHeapMembers != null) {
+            offHeapMembers.removeGuild(guildId);
+        }
+    }
+
+    private void putMember(long guildId, JsonNode member) {
+        if(!memberPolicy.isEnabled() || !member.has("user")) {
+            return;
+        }
+
+        if(offHeapMembers != null) {
+            offHeapMembers.putMember(guildId, member);
+            return;
+        }
+
+        getMemberStore(guildId, true).put(Snowflake.parse(member.get("user"), "id"), member);
+    }
+
+    private boolean hasMember(long guildId, long userId) {
+        if(offHeapMembers != null) {
+            return offHeapMembers.getMember(guildId, userId) != null;
+        }
+
+        EntityStore store = getMemberStore(guildId, false);
+        return store != null && store.contains(userId);
+    }
+
+    private void removeMember(long guildId, long userId) {
+        if(offHeapMembers != null) {
+            offHeapMembers.removeMember(guildId, userId);
+            return;
+        }
+
+        EntityStore store = getMemberStore(guildId, false);
+
+        if(store != null) {
+            store.remove(userId);
+        }
+    }
+
+    private EntityStore getMemberStore(long guildId, boolean create) {
+        membersLock.readLock().lock();
+        try {
+            EntityStore store = members.get(guildId);
+
+            if(store != null || !create) {
+                return store;
+            }
+        } finally {
+            membersLock.readLock().unlock();
+        }
+
+        membersLock.writeLock().lock();
+        try {
+            EntityStore store = members.get(guildId);
+
+            if(store == null) {
+                store = new EntityStore(memberPolicy);
+                members.put(guildId, store);
+            }
+
+            return store;
+        } finally {
+            membersLock.writeLock().unlock();
+        }
+    }
+
+    private static JsonNode stripGuild(JsonNode guild) {
+        ObjectNode res = Constants.MAPPER.createObjectNode();
+
+        guild.fields().forEachRemaining(field -> {
+            if(!GUILD_LISTS.contains(field.getKey())) {
+                res.set(field.getKey(), field.getValue());
+            }
+        });
+
+        return res;
+    }
+
+    private static JsonNode withGuildId(JsonNode entity, JsonNode guildId) {
+        if(entity.has("guild_id") || guildId == null) {
+            return entity;
+        }
+
+        ObjectNode res = Constants.MAPPER.createObjectNode();
+        res.setAll((ObjectNode) entity);
+        res.set("guild_id", guildId);
+
+        return res;
+    }
+}
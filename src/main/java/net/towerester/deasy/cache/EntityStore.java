@@ -0,0 +1,145 @@
+package net.towerester.deasy.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.towerester.deasy.utils.LongObjectMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Entities of one type by snowflake. Lookups only take the read lock, so for the LRU policy the access time
+ * is stamped on the entry and the least recently used entries are evicted in batches when the store is over its size**/
+class EntityStore {
+    /**
+     * Part of the entries evicted at once, so a full scan is done once per maxSize / 10 inserts**/
+    private static final int EVICT_DIVISOR = 10;
+
+    private final CachePolicy policy;
+    private final LongObjectMap<Entry> entities;
+    private final ReentrantReadWriteLock lock;
+
+    private static class Entry {
+        private final JsonNode node;
+        private volatile long accessedAt;
+
+        private Entry(JsonNode node) {
+            this.node = node;
+            this.accessedAt = System.nanoTime();
+        }
+    }
+
+    EntityStore(CachePolicy policy) {
+        this.policy = policy;
+        this.entities = new LongObjectMap<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    JsonNode get(long id) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entities.get(id);
+
+            if(entry == null) {
+                return null;
+            }
+
+            if(policy.getMaxSize() > 0) {
+                entry.accessedAt = System.nanoTime();
+            }
+
+            return entry.node;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(long id, JsonNode node) {
+        if(!policy.isEnabled()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            entities.put(id, new Entry(node));
+
+            if(policy.getMaxSize() > 0 && entities.size() > policy.getMaxSize()) {
+                evict();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    JsonNode remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entities.remove(id);
+            return entry == null ? null : entry.node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean contains(long id) {
+        lock.readLock().lock();
+        try {
+            return entities.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<JsonNode> values() {
+        lock.readLock().lock();
+        try {
+            List<JsonNode> res = new ArrayList<>(entities.size());
+            entities.forEach((id, entry) -> res.add(entry.node));
+            return res;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return entities.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            entities.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void evict() {
+        int target = policy.getMaxSize() - Math.max(1, policy.getMaxSize() / EVICT_DIVISOR);
+        long[] ids = entities.keys();
+        long[] times = new long[ids.length];
+
+        for(int i = 0; i < ids.length; i++) {
+            times[i] = entities.get(ids[i]).accessedAt;
+        }
+
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+
+        int toEvict = ids.length - target;
+        long threshold = sorted[toEvict - 1];
+
+        for(int i = 0; i < ids.length && toEvict > 0; i++) {
+            if(times[i] <= threshold) {
+                entities.remove(ids[i]);
+                toEvict--;
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package net.towerester.deasy.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only off-heap storage of interned byte strings (UTF-8 text, role id lists). Equal values are stored once,
+ * so usernames, avatars and role sets shared by many members cost one copy. A value is referenced by an int handle:
+ * chunk index in the high bits, offset in the chunk in the low bits. Single values are never freed, replaced and removed
+ * values stay until the owner copies the live ones into a new arena (see {@link OffHeapMemberStore}) and drops this one.
+ * Not thread-safe, {@link OffHeapMemberStore} guards it with its lock**/
+class InternArena {
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << (31 - CHUNK_BITS);
+    static final int CHUNK_BYTES = CHUNK_SIZE;
+    static final int NONE = -1;
+
+    private final List<ByteBuffer> chunks;
+    private int position;
+    // Open addressing table of handles, NONE marks free slots
+    private int[] table;
+    private int count;
+
+    InternArena() {
+        this.chunks = new ArrayList<>();
+        this.table = new int[1024];
+        this.count = 0;
+        Arrays.fill(table, NONE);
+        this.position = CHUNK_SIZE;
+    }
+
+    /**
+     * @return Handle of the string or NONE if it's null**/
+    int intern(String value) {
+        return value == null ? NONE : intern(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Handle of the long array or NONE if it's null**/
+    int intern(long[] values) {
+        if(values == null) {
+            return NONE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES);
+        buffer.asLongBuffer().put(values);
+
+        return intern(buffer.array());
+    }
+
+    int intern(byte[] bytes) {
+        int mask = table.length - 1;
+        int index = hash(bytes) & mask;
+
+        while(table[index] != NONE) {
+            if(matches(table[index], bytes)) {
+                return table[index];
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        int handle = append(bytes);
+        table[index] = handle;
+        count++;
+
+        if(count * 2 > table.length) {
+            resize();
+        }
+
+        return handle;
+    }
+
+    String getString(int handle) {
+        return handle == NONE ? null : new String(getBytes(handle), StandardCharsets.UTF_8);
+    }
+
+    long[] getLongs(int handle) {
+        if(handle == NONE) {
+            return new long[0];
+        }
+
+        long[] res = new long[length(handle) / Long.BYTES];
+        ByteBuffer.wrap(getBytes(handle)).asLongBuffer().get(res);
+
+        return res;
+    }
+
+    /**
+     * @return Number of off-heap bytes reserved by the arena**/
+    long getCapacity() {
+        return (long) chunks.size() * CHUNK_SIZE;
+    }
+
+    /**
+     * @return Number of bytes written to the arena, live and dead values**/
+    long getUsed() {
+        return chunks.isEmpty() ? 0 : (long) (chunks.size() - 1) * CHUNK_SIZE + position;
+    }
+
+    /**
+     * @return Number of distinct values**/
+    int getCount() {
+        return count;
+    }
+
+    void clear() {
+        chunks.clear();
+        Arrays.fill(table, NONE);
+        count = 0;
+        position = CHUNK_SIZE;
+    }
+
+    private int append(byte[] bytes) {
+        int size = Integer.BYTES + bytes.length;
+
+        if(size > CHUNK_SIZE) {
+            throw new IllegalArgumentException("Value is too large for the arena: " + bytes.length + " bytes");
+        }
+
+        if(position + size > CHUNK_SIZE) {
+            if(chunks.size() == MAX_CHUNKS) {
+                throw new IllegalStateException("Arena is full");
+            }
+
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+            position = 0;
+        }
+
+        ByteBuffer chunk = chunks.get(chunks.size() - 1);
+        int handle = ((chunks.size() - 1) << CHUNK_BITS) | position;
+
+        chunk.putInt(position, bytes.length);
+        chunk.put(position + Integer.BYTES, bytes);
+        position += size;
+
+        return handle;
+    }
+
+    private int length(int handle) {
+        return chunks.get(handle >>> CHUNK_BITS).getInt(handle & (CHUNK_SIZE - 1));
+    }
+
+    byte[] getBytes(int handle) {
+        ByteBuffer chunk = chunks.get(handle >>> CHUNK_BITS);
+        int offset = handle & (CHUNK_SIZE - 1);
+        byte[] res = new byte[chunk.getInt(offset)];
+
+        chunk.get(offset + Integer.BYTES, res);
+
+        return res;
+    }
+
+    private boolean matches(int handle, byte[] bytes) {
+        ByteBuffer chunk = chunks.get(handle >>> CHUNK_BITS);
+        int offset = handle & (CHUNK_SIZE - 1);
+
+        if(chunk.getInt(offset) != bytes.length) {
+            return false;
+        }
+
+        for(int i = 0; i < bytes.length; i++) {
+            if(chunk.get(offset + Integer.BYTES + i) != bytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void resize() {
+        int[] old = table;
+        this.table = new int[old.length << 1];
+        Arrays.fill(table, NONE);
+
+        int mask = table.length - 1;
+
+        for(int handle: old) {
+            if(handle != NONE) {
+                int index = hash(getBytes(handle)) & mask;
+
+                while(table[index] != NONE) {
+                    index = (index + 1) & mask;
+                }
+
+                table[index] = handle;
+            }
+        }
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = Arrays.hashCode(bytes);
+        return h ^ (h >>> 16);
+    }
+}
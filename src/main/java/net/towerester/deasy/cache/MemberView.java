@@ -0,0 +1,144 @@
+package net.towerester.deasy.cache;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.gateway.entities.DiscordStatus;
+import net.towerester.deasy.utils.Snowflake;
+
+import java.time.Instant;
+
+/**
+ * Flyweight over a member record of {@link OffHeapMemberStore}. Every getter reads the record, nothing is copied
+ * to the heap in advance. Reading a view of a member that was removed throws IllegalStateException**/
+public class MemberView {
+    private final OffHeapMemberStore store;
+    private final long guildId;
+    private int slot;
+    private long userId;
+
+    MemberView(OffHeapMemberStore store, int slot, long guildId, long userId) {
+        this.store = store;
+        this.slot = slot;
+        this.guildId = guildId;
+        this.userId = userId;
+    }
+
+    void moveTo(int slot, long userId) {
+        this.slot = slot;
+        this.userId = userId;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public long getGuildId() {
+        return guildId;
+    }
+
+    public String getUsername() {
+        return store.readString(this, OffHeapMemberStore.USERNAME);
+    }
+
+    /**
+     * @return Display name of the user or null if it isn't set**/
+    public String getGlobalName() {
+        return store.readString(this, OffHeapMemberStore.GLOBAL_NAME);
+    }
+
+    /**
+     * @return Guild nickname or null if it isn't set**/
+    public String getNick() {
+        return store.readString(this, OffHeapMemberStore.NICK);
+    }
+
+    /**
+     * @return User avatar hash or null if it isn't set**/
+    public String getAvatar() {
+        return store.readString(this, OffHeapMemberStore.AVATAR);
+    }
+
+    /**
+     * @return Sorted role ids**/
+    public long[] getRoles() {
+        return store.readLongs(this, OffHeapMemberStore.ROLES);
+    }
+
+    public Instant getJoinedAt() {
+        long time = store.readLong(this, OffHeapMemberStore.JOINED_AT);
+        return time == -1 ? null : Instant.ofEpochMilli(time);
+    }
+
+    /**
+     * @return Start of the guild boost or null if the member doesn't boost the guild**/
+    public Instant getPremiumSince() {
+        long time = store.readLong(this, OffHeapMemberStore.PREMIUM_SINCE);
+        return time == -1 ? null : Instant.ofEpochMilli(time);
+    }
+
+    public int getFlags() {
+        return store.readInt(this, OffHeapMemberStore.FLAGS);
+    }
+
+    public boolean isDeaf() {
+        return store.readBit(this, OffHeapMemberStore.DEAF);
+    }
+
+    public boolean isMute() {
+        return store.readBit(this, OffHeapMemberStore.MUTE);
+    }
+
+    public boolean isPending() {
+        return store.readBit(this, OffHeapMemberStore.PENDING);
+    }
+
+    public boolean isBot() {
+        return store.readBit(this, OffHeapMemberStore.BOT);
+    }
+
+    /**
+     * @return Online status or null if no presence was received for the member**/
+    public DiscordStatus getStatus() {
+        return store.readStatus(this);
+    }
+
+    /**
+     * @return Name of the first activity or null if there is none**/
+    public String getActivityName() {
+        return store.readString(this, OffHeapMemberStore.ACTIVITY);
+    }
+
+    /**
+     * @return Member json in the format sent by Discord (without the presence)**/
+    public ObjectNode toJson() {
+        ObjectNode user = Constants.MAPPER.createObjectNode();
+        user.put("id", Snowflake.of(userId).toString());
+        user.put("username", getUsername());
+        user.put("global_name", getGlobalName());
+        user.put("avatar", getAvatar());
+        user.put("bot", isBot());
+
+        ArrayNode roles = Constants.MAPPER.createArrayNode();
+        for(long role: getRoles()) {
+            roles.add(Snowflake.of(role).toString());
+        }
+
+        ObjectNode res = Constants.MAPPER.createObjectNode();
+        res.set("user", user);
+        res.put("nick", getNick());
+        res.set("roles", roles);
+        res.put("joined_at", getJoinedAt() == null ? null : getJoinedAt().toString());
+        res.put("premium_since", getPremiumSince() == null ? null : getPremiumSince().toString());
+        res.put("deaf", isDeaf());
+        res.put("mute", isMute());
+        res.put("pending", isPending());
+        res.put("flags", getFlags());
+
+        return res;
+    }
+}
@@ -0,0 +1,481 @@
+package net.towerester.deasy.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.towerester.deasy.gateway.entities.DiscordStatus;
+import net.towerester.deasy.utils.LongIntMap;
+import net.towerester.deasy.utils.LongObjectMap;
+import net.towerester.deasy.utils.Snowflake;
+
+import java.nio.ByteBuffer;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Guild members and their presences stored outside the heap. Every member is a fixed 64-byte record in direct
+ * buffers, strings and role lists are interned into a shared {@link InternArena}, so the heap only holds
+ * the primitive index (guild id -> user id -> record slot) and the GC doesn't scan member data.
+ * Interned values of removed members and replaced values (nicknames, avatars, activities) become garbage in the arena.
+ * When the arena has grown to twice its size after the last compaction, the live values are copied into a new arena,
+ * so off-heap memory follows the number of cached members instead of the churn.
+ * Members are read through {@link MemberView} flyweights**/
+public class OffHeapMemberStore {
+    static final int RECORD_SIZE = 64;
+    private static final int RECORDS_PER_CHUNK = 1 << 14;
+
+    // Record layout
+    static final int USER_ID = 0;
+    static final int GUILD_ID = 8;
+    static final int JOINED_AT = 16;
+    static final int PREMIUM_SINCE = 24;
+    static final int USERNAME = 32;
+    static final int GLOBAL_NAME = 36;
+    static final int NICK = 40;
+    static final int AVATAR = 44;
+    static final int ROLES = 48;
+    static final int ACTIVITY = 52;
+    static final int FLAGS = 56;
+    static final int STATUS = 60;
+    static final int BITS = 61;
+
+    static final int DEAF = 1;
+    static final int MUTE = 1 << 1;
+    static final int PENDING = 1 << 2;
+    static final int BOT = 1 << 3;
+
+    private static final DiscordStatus[] STATUSES = DiscordStatus.values();
+    private static final int[] INTERNED = {USERNAME, GLOBAL_NAME, NICK, AVATAR, ROLES, ACTIVITY};
+    private static final long MIN_COMPACT_BYTES = 4L * InternArena.CHUNK_BYTES;
+
+    private final List<ByteBuffer> chunks;
+    private InternArena arena;
+    private long compactAt;
+    private final LongObjectMap<LongIntMap> guilds;
+    private final ReentrantReadWriteLock lock;
+    private int nextSlot;
+    private int[] freeSlots;
+    private int freeCount;
+    private int memberCount;
+
+    public OffHeapMemberStore() {
+        this.chunks = new ArrayList<>();
+        this.arena = new InternArena();
+        this.compactAt = MIN_COMPACT_BYTES;
+        this.guilds = new LongObjectMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.nextSlot = 0;
+        this.freeSlots = new int[64];
+        this.freeCount = 0;
+        this.memberCount = 0;
+    }
+
+    /**
+     * Add or replace a member. The presence of a replaced member is kept
+     * @param guildId Guild id
+     * @param member Guild member json (with the user object)**/
+    public void putMember(long guildId, JsonNode member) {
+        JsonNode user = member.get("user");
+        long userId = Snowflake.parse(user, "id");
+
+        lock.writeLock().lock();
+        try {
+            LongIntMap index = guilds.get(guildId);
+
+            if(index == null) {
+                index = new LongIntMap();
+                guilds.put(guildId, index);
+            }
+
+            int slot = index.get(userId, -1);
+            ByteBuffer chunk;
+            int offset;
+
+            if(slot == -1) {
+                slot = allocate();
+                index.put(userId, slot);
+                memberCount++;
+
+                chunk = chunk(slot);
+                offset = offset(slot);
+                chunk.putInt(offset + ACTIVITY, InternArena.NONE);
+                chunk.put(offset + STATUS, (byte) 0);
+            } else {
+                chunk = chunk(slot);
+                offset = offset(slot);
+            }
+
+            int bits = 0;
+            bits |= member.path("deaf").asBoolean() ? DEAF : 0;
+            bits |= member.path("mute").asBoolean() ? MUTE : 0;
+            bits |= member.path("pending").asBoolean() ? PENDING : 0;
+            bits |= user.path("bot").asBoolean() ? BOT : 0;
+
+            chunk.putLong(offset + USER_ID, userId);
+            chunk.putLong(offset + GUILD_ID, guildId);
+            chunk.putLong(offset + JOINED_AT, parseTime(member.get("joined_at")));
+            chunk.putLong(offset + PREMIUM_SINCE, parseTime(member.get("premium_since")));
+            chunk.putInt(offset + USERNAME, arena.intern(getText(user, "username")));
+            chunk.putInt(offset + GLOBAL_NAME, arena.intern(getText(user, "global_name")));
+            chunk.putInt(offset + NICK, arena.intern(getText(member, "nick")));
+            chunk.putInt(offset + AVATAR, arena.intern(getText(user, "avatar")));
+            chunk.putInt(offset + ROLES, arena.intern(parseRoles(member.get("roles"))));
+            chunk.putInt(offset + FLAGS, member.path("flags").asInt());
+            chunk.put(offset + BITS, (byte) bits);
+
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Update the status and the activity of a cached member. Presences of members that aren't cached are ignored
+     * @param guildId Guild id
+     * @param presence Presence update json
+     * @return Whether the member was cached**/
+    public boolean updatePresence(long guildId, JsonNode presence) {
+        long userId = Snowflake.parse(presence.get("user"), "id");
+        JsonNode activities = presence.path("activities");
+        String activity = activities.isArray() && activities.size() > 0 ? getText(activities.get(0), "name") : null;
+
+        lock.writeLock().lock();
+        try {
+            LongIntMap index = guilds.get(guildId);
+            int slot = index == null ? -1 : index.get(userId, -1);
+
+            if(slot == -1) {
+                return false;
+            }
+
+            chunk(slot).put(offset(slot) + STATUS, (byte) parseStatus(getText(presence, "status")));
+            chunk(slot).putInt(offset(slot) + ACTIVITY, arena.intern(activity));
+            compactIfNeeded();
+
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Whether the member was cached**/
+    public boolean removeMember(long guildId, long userId) {
+        lock.writeLock().lock();
+        try {
+            LongIntMap index = guilds.get(guildId);
+            int slot = index == null ? -1 : index.remove(userId, -1);
+
+            if(slot == -1) {
+                return false;
+            }
+
+            free(slot);
+
+            if(index.isEmpty()) {
+                guilds.remove(guildId);
+            }
+
+            compactIfNeeded();
+
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all members of the guild**/
+    public void removeGuild(long guildId) {
+        lock.writeLock().lock();
+        try {
+            LongIntMap index = guilds.remove(guildId);
+
+            if(index != null) {
+                index.forEach((userId, slot) -> free(slot));
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return View of the member or null if it isn't cached. The view stays valid until the member is removed**/
+    public MemberView getMember(long guildId, long userId) {
+        lock.readLock().lock();
+        try {
+            LongIntMap index = guilds.get(guildId);
+            int slot = index == null ? -1 : index.get(userId, -1);
+
+            return slot == -1 ? null : new MemberView(this, slot, guildId, userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Call the consumer for every cached member of the guild. One view is reused for all members,
+     * so it must not be kept after the consumer returns. The store can't be modified from the consumer**/
+    public void forEachMember(long guildId, Consumer<MemberView> consumer) {
+        lock.readLock().lock();
+        try {
+            LongIntMap index = guilds.get(guildId);
+
+            if(index == null) {
+                return;
+            }
+
+            MemberView view = new MemberView(this, 0, guildId, 0);
+
+            index.forEach((userId, slot) -> {
+                view.moveTo(slot, userId);
+                consumer.accept(view);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of cached members in all guilds**/
+    public int getMemberCount() {
+        lock.readLock().lock();
+        try {
+            return memberCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of cached members of the guild**/
+    public int getMemberCount(long guildId) {
+        lock.readLock().lock();
+        try {
+            LongIntMap index = guilds.get(guildId);
+            return index == null ? 0 : index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of off-heap bytes reserved for records and interned values**/
+    public long getOffHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) chunks.size() * RECORDS_PER_CHUNK * RECORD_SIZE + arena.getCapacity();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all members and release the buffers**/
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            chunks.clear();
+            arena.clear();
+            compactAt = MIN_COMPACT_BYTES;
+            guilds.clear();
+            nextSlot = 0;
+            freeCount = 0;
+            memberCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    long readLong(MemberView view, int field) {
+        lock.readLock().lock();
+        try {
+            return record(view).getLong(offset(view.getSlot()) + field);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int readInt(MemberView view, int field) {
+        lock.readLock().lock();
+        try {
+            return record(view).getInt(offset(view.getSlot()) + field);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    String readString(MemberView view, int field) {
+        lock.readLock().lock();
+        try {
+            return arena.getString(record(view).getInt(offset(view.getSlot()) + field));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long[] readLongs(MemberView view, int field) {
+        lock.readLock().lock();
+        try {
+            return arena.getLongs(record(view).getInt(offset(view.getSlot()) + field));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    DiscordStatus readStatus(MemberView view) {
+        lock.readLock().lock();
+        try {
+            int status = record(view).get(offset(view.getSlot()) + STATUS);
+            return status == 0 ? null : STATUSES[status - 1];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean readBit(MemberView view, int bit) {
+        lock.readLock().lock();
+        try {
+            return (record(view).get(offset(view.getSlot()) + BITS) & bit) != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Chunk of the view's record, after checking that the slot still holds the same member**/
+    private ByteBuffer record(MemberView view) {
+        int slot = view.getSlot();
+
+        if(slot < nextSlot) {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+
+            if(chunk.getLong(offset + USER_ID) == view.getUserId() && chunk.getLong(offset + GUILD_ID) == view.getGuildId()) {
+                return chunk;
+            }
+        }
+
+        throw new IllegalStateException("Member " + view.getUserId() + " was removed from the cache");
+    }
+
+    /**
+     * @return Number of bytes of live and dead values in the arena**/
+    long getArenaUsed() {
+        lock.readLock().lock();
+        try {
+            return arena.getUsed();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void compactIfNeeded() {
+        if(arena.getUsed() > compactAt) {
+            compact();
+        }
+    }
+
+    /**
+     * Copy the values referenced by cached members into a new arena and drop the old one, its buffers are released by the GC**/
+    private void compact() {
+        InternArena live = new InternArena();
+
+        guilds.forEach((guildId, index) -> index.forEach((userId, slot) -> {
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+
+            for(int field: INTERNED) {
+                int handle = chunk.getInt(offset + field);
+
+                if(handle != InternArena.NONE) {
+                    chunk.putInt(offset + field, live.intern(arena.getBytes(handle)));
+                }
+            }
+        }));
+
+        this.arena = live;
+        this.compactAt = Math.max(MIN_COMPACT_BYTES, live.getUsed() * 2);
+    }
+
+    private int allocate() {
+        if(freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+
+        if(nextSlot == chunks.size() * RECORDS_PER_CHUNK) {
+            chunks.add(ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SIZE));
+        }
+
+        return nextSlot++;
+    }
+
+    private void free(int slot) {
+        // Clear the ids, so views of the removed member fail instead of reading the next member of the slot
+        chunk(slot).putLong(offset(slot) + USER_ID, 0);
+        chunk(slot).putLong(offset(slot) + GUILD_ID, 0);
+
+        if(freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+
+        freeSlots[freeCount++] = slot;
+        memberCount--;
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks.get(slot / RECORDS_PER_CHUNK);
+    }
+
+    private static int offset(int slot) {
+        return (slot % RECORDS_PER_CHUNK) * RECORD_SIZE;
+    }
+
+    private static String getText(JsonNode node, String field) {
+        JsonNode value = node == null ? null : node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static long parseTime(JsonNode value) {
+        if(value == null || value.isNull()) {
+            return -1;
+        }
+
+        return OffsetDateTime.parse(value.asText()).toInstant().toEpochMilli();
+    }
+
+    private static long[] parseRoles(JsonNode roles) {
+        if(roles == null || !roles.isArray()) {
+            return new long[0];
+        }
+
+        long[] res = new long[roles.size()];
+        for(int i = 0; i < res.length; i++) {
+            res[i] = Snowflake.parse(roles.get(i).asText());
+        }
+
+        // Sorted, so members with the same roles share one interned list
+        Arrays.sort(res);
+
+        return res;
+    }
+
+    private static int parseStatus(String status) {
+        if(status == null) {
+            return 0;
+        }
+
+        DiscordStatus res = switch (status) {
+            case "online" -> DiscordStatus.ONLINE;
+            case "idle" -> DiscordStatus.IDLE;
+            case "dnd" -> DiscordStatus.DO_NOT_DISTURB;
+            case "invisible" -> DiscordStatus.INVISIBLE;
+            default -> DiscordStatus.OFFLINE;
+        };
+
+        return res.ordinal() + 1;
+    }
+}
@@ -0,0 +1,16 @@
+package net.towerester.deasy.entities;
+
+/**
+ * Guild channel, thread or DM channel
+ * @param id Channel id
+ * @param type Channel type (0 text, 2 voice, 4 category, etc...)
+ * @param guildId Id of the guild, 0 for DM channels and channels of GUILD_CREATE
+ * @param name Channel name or null for DM channels
+ * @param position Position of the channel
+ * @param parentId Id of the category or the parent channel of a thread, 0 if there's none
+ * @param topic Channel topic or null
+ * @param nsfw Whether the channel is NSFW
+ * @param lastMessageId Id of the last message, 0 if there's none
+ * @param rateLimitPerUser Slowmode delay in seconds**/
+public record Channel(long id, int type, long guildId, String name, int position, long parentId, String topic, boolean nsfw, long lastMessageId, int rateLimitPerUser) {
+}
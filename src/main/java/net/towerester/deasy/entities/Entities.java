@@ -0,0 +1,92 @@
+package net.towerester.deasy.entities;
+
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import net.towerester.deasy.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Readers of the typed entities. Readers are built once, so the deserializers of an entity are resolved on the first read
+ * and reused afterwards. Snake case json names are mapped to the record components, unknown fields are skipped,
+ * snowflakes are read from strings (json) and integers (etf) alike. Missing and null lists are read as empty ones,
+ * records copy them into unmodifiable lists.
+ * If jackson-module-blackbird is on the classpath, it's registered and generates accessors instead of reflective calls**/
+public final class Entities {
+    private static final Logger logger = LoggerFactory.getLogger(Entities.class);
+    private static final String BLACKBIRD = "com.fasterxml.jackson.module.blackbird.BlackbirdModule";
+    private static final ObjectMapper MAPPER = createMapper();
+
+    public static final ObjectReader USER = reader(User.class);
+    public static final ObjectReader ROLE = reader(Role.class);
+    public static final ObjectReader CHANNEL = reader(Channel.class);
+    public static final ObjectReader MEMBER = reader(Member.class);
+    public static final ObjectReader MESSAGE = reader(Message.class);
+    public static final ObjectReader GUILD = reader(Guild.class);
+    public static final ObjectReader READY = reader(Ready.class);
+
+    private Entities() {
+    }
+
+    /**
+     * Create a reader of an entity. Readers are immutable and thread-safe, keep the reader instead of creating it per read
+     * @param type Entity class
+     * @return Reader of the entity**/
+    public static ObjectReader reader(Class<?> type) {
+        return MAPPER.readerFor(type);
+    }
+
+    /**
+     * Create a reader of a json array of entities
+     * @param type Entity class
+     * @return Reader of a list of the entities**/
+    public static ObjectReader listReader(Class<?> type) {
+        return MAPPER.readerForListOf(type);
+    }
+
+    /**
+     * Read an entity from a json tree, for data that was read as a tree already
+     * @param reader Reader of the entity, see the constants of this class
+     * @param node Json of the entity
+     * @return Entity or null if the node is null**/
+    public static <T> T read(ObjectReader reader, JsonNode node) throws IOException {
+        if(node == null || node.isNull() || node.isMissingNode()) {
+            return null;
+        }
+
+        return reader.readValue(node);
+    }
+
+    /**
+     * @return Whether accessors are generated by the blackbird module**/
+    public static boolean isBlackbirdEnabled() {
+        return MAPPER.getRegisteredModuleIds().contains(BLACKBIRD);
+    }
+
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = Constants.MAPPER.copy()
+                .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        mapper.configOverride(List.class).setSetterInfo(JsonSetter.Value.forValueNulls(Nulls.AS_EMPTY));
+
+        try {
+            mapper.registerModule((Module) Class.forName(BLACKBIRD).getConstructor().newInstance());
+        } catch(ClassNotFoundException e) {
+            logger.debug("Blackbird isn't on the classpath, entities are read with reflection");
+        } catch(Exception e) {
+            logger.warn("Can't register the blackbird module!", e);
+        }
+
+        return mapper;
+    }
+}
@@ -0,0 +1,24 @@
+package net.towerester.deasy.entities;
+
+import java.util.List;
+
+/**
+ * Guild. Lists are only sent in GUILD_CREATE, they are empty in other payloads
+ * @param id Guild id
+ * @param name Guild name
+ * @param icon Icon hash or null
+ * @param ownerId Id of the owner
+ * @param memberCount Number of members, only in GUILD_CREATE
+ * @param large Whether the guild is considered large
+ * @param unavailable Whether the guild is unavailable due to an outage
+ * @param channels Channels of the guild (without guild_id)
+ * @param roles Roles of the guild (without guild_id)
+ * @param members Members sent with the guild**/
+public record Guild(long id, String name, String icon, long ownerId, int memberCount, boolean large, boolean unavailable,
+                    List<Channel> channels, List<Role> roles, List<Member> members) {
+    public Guild {
+        channels = channels == null ? List.of() : List.copyOf(channels);
+        roles = roles == null ? List.of() : List.copyOf(roles);
+        members = members == null ? List.of() : List.copyOf(members);
+    }
+}
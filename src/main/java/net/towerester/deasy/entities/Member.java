@@ -0,0 +1,18 @@
+package net.towerester.deasy.entities;
+
+import java.util.List;
+
+/**
+ * Guild member
+ * @param user User of the member, null in members of MESSAGE_CREATE
+ * @param guildId Id of the guild, 0 if the payload doesn't contain it
+ * @param nick Guild nickname or null
+ * @param roles Role ids
+ * @param joinedAt ISO 8601 timestamp of joining the guild
+ * @param deaf Whether the member is deafened in voice channels
+ * @param mute Whether the member is muted in voice channels**/
+public record Member(User user, long guildId, String nick, List<Long> roles, String joinedAt, boolean deaf, boolean mute) {
+    public Member {
+        roles = roles == null ? List.of() : List.copyOf(roles);
+    }
+}
@@ -0,0 +1,25 @@
+package net.towerester.deasy.entities;
+
+import java.util.List;
+
+/**
+ * Channel message
+ * @param id Message id
+ * @param channelId Id of the channel
+ * @param guildId Id of the guild, 0 for DM messages
+ * @param author Author of the message
+ * @param member Guild member of the author (without the user) or null
+ * @param content Message text
+ * @param timestamp ISO 8601 timestamp of sending
+ * @param editedTimestamp ISO 8601 timestamp of the last edit or null
+ * @param tts Whether it's a TTS message
+ * @param mentionEveryone Whether the message mentions everyone
+ * @param mentions Mentioned users
+ * @param type Message type
+ * @param pinned Whether the message is pinned**/
+public record Message(long id, long channelId, long guildId, User author, Member member, String content, String timestamp, String editedTimestamp,
+                      boolean tts, boolean mentionEveryone, List<User> mentions, int type, boolean pinned) {
+    public Message {
+        mentions = mentions == null ? List.of() : List.copyOf(mentions);
+    }
+}
@@ -0,0 +1,10 @@
+package net.towerester.deasy.entities;
+
+/**
+ * Data of the READY dispatch. Guilds are unavailable at this point, they are sent in GUILD_CREATE events later
+ * @param v Gateway API version
+ * @param user Bot user
+ * @param sessionId Session id, used for resuming
+ * @param resumeGatewayUrl Gateway url for resuming**/
+public record Ready(int v, User user, String sessionId, String resumeGatewayUrl) {
+}
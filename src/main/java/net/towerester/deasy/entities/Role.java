@@ -0,0 +1,15 @@
+package net.towerester.deasy.entities;
+
+/**
+ * Guild role
+ * @param id Role id
+ * @param guildId Id of the guild, 0 if the payload doesn't contain it
+ * @param name Role name
+ * @param color Color as an RGB integer
+ * @param hoist Whether the role is shown separately in the member list
+ * @param position Position of the role
+ * @param permissions Permission bit set as a decimal string
+ * @param managed Whether the role is managed by an integration
+ * @param mentionable Whether the role can be mentioned**/
+public record Role(long id, long guildId, String name, int color, boolean hoist, int position, String permissions, boolean managed, boolean mentionable) {
+}
@@ -0,0 +1,12 @@
+package net.towerester.deasy.entities;
+
+/**
+ * Discord user
+ * @param id User id, see {@link net.towerester.deasy.utils.Snowflake}
+ * @param username Username
+ * @param discriminator Legacy discriminator ("0" for migrated users)
+ * @param globalName Display name or null if it isn't set
+ * @param avatar Avatar hash or null
+ * @param bot Whether the user is a bot**/
+public record User(long id, String username, String discriminator, String globalName, String avatar, boolean bot) {
+}
@@ -0,0 +1,48 @@
+package net.towerester.deasy.gateway;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Exponential backoff with jitter for reconnect attempts. The delay of the n-th attempt is random in
+ * [cap / 2, cap] with cap = min(max, base * 2^n), so shards that lost the connection at once
+ * don't reconnect at once. Reset when the connection is ready again**/
+public class Backoff {
+    private final long base;
+    private final long max;
+    private final DoubleSupplier random;
+    private int attempt;
+
+    /**
+     * @param base Delay cap of the first attempt (in milliseconds)
+     * @param max Maximum delay (in milliseconds)**/
+    public Backoff(long base, long max) {
+        this(base, max, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    Backoff(long base, long max, DoubleSupplier random) {
+        this.base = base;
+        this.max = max;
+        this.random = random;
+        this.attempt = 0;
+    }
+
+    /**
+     * @return Delay before the next attempt (in milliseconds)**/
+    public synchronized long next() {
+        long cap = attempt >= 30 ? max : Math.min(max, base << attempt);
+        attempt++;
+
+        return cap / 2 + (long) (random.getAsDouble() * (cap - cap / 2));
+    }
+
+    /**
+     * @return Number of attempts since the last reset**/
+    public synchronized int getAttempt() {
+        return attempt;
+    }
+
+    public synchronized void reset() {
+        attempt = 0;
+    }
+}
@@ -0,0 +1,29 @@
+package net.towerester.deasy.gateway;
+
+/**
+ * What to do after the gateway connection was closed, by close code**/
+public enum CloseAction {
+    /**
+     * Reconnect and resume the session**/
+    RESUME,
+    /**
+     * The session can't be resumed, reconnect and identify**/
+    IDENTIFY,
+    /**
+     * Reconnecting doesn't help (bad token, intents or shard), stop the client**/
+    STOP;
+
+    /**
+     * @param code Close code of the connection (-1 if it failed before a close frame was received)
+     * @return Action for the close code**/
+    public static CloseAction of(int code) {
+        return switch (code) {
+            // Closing with 1000 or 1001 invalidates the session, 4007 - invalid seq, 4009 - session timed out
+            case 1000, 1001, 4007, 4009 -> IDENTIFY;
+            // Authentication failed, invalid shard, sharding required, invalid api version, invalid or disallowed intents
+            case 4004, 4010, 4011, 4012, 4013, 4014 -> STOP;
+            // Network errors (1006), server restarts and the other 4000 codes
+            default -> RESUME;
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package net.towerester.deasy.gateway;
+
+/**
+ * State of a gateway connection. A lost connection goes to BACKOFF and from there to RESUMING
+ * (session kept) or CONNECTING (new session)**/
+public enum ConnectionState {
+    DISCONNECTED, CONNECTING, IDENTIFYING, RESUMING, READY,
+    /**
+     * The connection was lost, waiting before the next connection attempt**/
+    BACKOFF
+}
@@ -1,48 +1,74 @@
 package net.towerester.deasy.gateway;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import net.towerester.deasy.Constants;
+import net.towerester.deasy.cache.EntityCache;
 import net.towerester.deasy.gateway.entities.Activity;
 import net.towerester.deasy.gateway.entities.DiscordIntent;
 import net.towerester.deasy.gateway.entities.DiscordStatus;
 import net.towerester.deasy.gateway.entities.Presence;
+import net.towerester.deasy.gateway.etf.EtfEncoder;
+import net.towerester.deasy.gateway.events.DispatchMode;
+import net.towerester.deasy.gateway.events.EventBus;
+import net.towerester.deasy.gateway.events.EventDispatcher;
 import net.towerester.deasy.gateway.events.EventListener;
-import net.towerester.deasy.utils.ErrHandler;
+import net.towerester.deasy.gateway.session.SavedSession;
+import net.towerester.deasy.gateway.session.SessionStore;
+import net.towerester.deasy.rest.RestApi;
 import net.towerester.deasy.utils.SimpleHttpClient;
 import org.java_websocket.client.WebSocketClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpResponse;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 
 public class DiscordClient {
-    private WebSocketClient socket;
-    private final int recommendedShards;
-    private final String gatewayUrl;
+    private volatile WebsocketHandler socket;
+    private final GatewayInfo gatewayInfo;
+    private final IdentifyScheduler identifyScheduler;
+    private final EventBus eventBus;
+    // Whether the bus was created for this client, so its dispatcher is shut down on stop
+    private boolean ownEventBus;
+    // Whether the identify scheduler was created for this client, so its thread is stopped on stop
+    private final boolean ownIdentifyScheduler;
+    private final EntityCache cache;
+    private final GuildMemberRequests memberRequests;
+    private final int shardId;
     private final List<DiscordIntent> intents;
     private final String token;
-    private volatile int lastSeq;
-    private volatile String sessionId;
-    private volatile String resumeUrl;
+    private final GatewaySession session;
     private final boolean shardingEnabled;
     private final int shardCount;
     private final boolean compress;
     private SimpleHttpClient httpClient;
+    private final RestApi restApi;
     private final boolean debug;
     private final List<EventListener> listeners;
     private Thread keepAliveThread;
-    private volatile ScheduledExecutorService heartbeatExecutor;
+    private volatile CountDownLatch shutdownLatch;
+    private volatile CountDownLatch readyLatch;
     private final List<Activity> activities;
     private final DiscordStatus status;
-    private final AtomicInteger ping;
-    private volatile boolean reconnecting;
+    private final LatencyTracker latency;
+    private final SessionStore sessionStore;
+    private final GatewayEncoding encoding;
+    private final Backoff backoff;
+    private volatile byte[] identifyPayload;
+    // Set when the session is loaded from the session store, until it's resumed
+    private volatile boolean restored;
+    private static final Logger logger = LoggerFactory.getLogger(DiscordClient.class);
 
     public static class Builder {
         private String token;
@@ -56,6 +82,16 @@ public class DiscordClient {
         private final List<EventListener> listeners;
         private List<Activity> activities;
         private DiscordStatus status;
+        private int shardId;
+        private GatewayInfo gatewayInfo;
+        private IdentifyScheduler identifyScheduler;
+        private EventBus eventBus;
+        private EntityCache cache;
+        private DispatchMode dispatchMode;
+        private int dispatchThreads;
+        private int dispatchQueueSize;
+        private SessionStore sessionStore;
+        private GatewayEncoding encoding;
 
         /**
          * @param token Discord bot token**/
@@ -71,6 +107,44 @@ public class DiscordClient {
             this.listeners = new ArrayList<>();
             this.status = DiscordStatus.ONLINE;
             this.activities = new ArrayList<>();
+            this.shardId = 0;
+            this.gatewayInfo = null;
+            this.identifyScheduler = null;
+            this.eventBus = null;
+            this.cache = null;
+            this.dispatchMode = DispatchMode.POOL;
+            this.dispatchThreads = Runtime.getRuntime().availableProcessors();
+            this.dispatchQueueSize = 10000;
+            this.sessionStore = null;
+            this.encoding = GatewayEncoding.JSON;
+        }
+
+        /**
+         * @return Builder with the same settings, changes of the copy don't affect this builder**/
+        Builder copy() {
+            Builder res = new Builder(token);
+            res.intents = new ArrayList<>(intents);
+            res.shardCount = shardCount;
+            res.shardingEnabled = shardingEnabled;
+            res.compress = compress;
+            res.allowInsecureConnections = allowInsecureConnections;
+            res.httpClient = httpClient;
+            res.debug = debug;
+            res.listeners.addAll(listeners);
+            res.activities = new ArrayList<>(activities);
+            res.status = status;
+            res.shardId = shardId;
+            res.gatewayInfo = gatewayInfo;
+            res.identifyScheduler = identifyScheduler;
+            res.eventBus = eventBus;
+            res.cache = cache;
+            res.dispatchMode = dispatchMode;
+            res.dispatchThreads = dispatchThreads;
+            res.dispatchQueueSize = dispatchQueueSize;
+            res.sessionStore = sessionStore;
+            res.encoding = encoding;
+
+            return res;
         }
 
         /**
@@ -129,6 +203,85 @@ public class DiscordClient {
             return this;
         }
 
+        /**
+         * @param shardId Id of the shard this client connects as (requires sharding to be enabled if not 0)**/
+        public Builder setShardId(int shardId) {
+            this.shardId = shardId;
+            return this;
+        }
+
+        /**
+         * @param gatewayInfo Result of the GET /gateway/bot request. If not set, it is requested when the client is built**/
+        public Builder setGatewayInfo(GatewayInfo gatewayInfo) {
+            this.gatewayInfo = gatewayInfo;
+            return this;
+        }
+
+        /**
+         * @param identifyScheduler Scheduler pacing identifies. Clients of the same bot should share one scheduler**/
+        public Builder setIdentifyScheduler(IdentifyScheduler identifyScheduler) {
+            this.identifyScheduler = identifyScheduler;
+            return this;
+        }
+
+        /**
+         * Use an existing event bus, for example one shared by several clients. Event listeners added to this builder
+         * aren't registered in it, they must be registered by the owner of the bus**/
+        public Builder setEventBus(EventBus eventBus) {
+            this.eventBus = eventBus;
+            return this;
+        }
+
+        /**
+         * @param cache Entity cache filled from gateway events. By default, a cache with the default policies of {@link EntityCache.Builder} is used**/
+        public Builder setCache(EntityCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * @param dispatchMode Where event handlers are run. By default, they are run on a pool of worker threads,
+         *                     so slow handlers don't delay heartbeats. In VIRTUAL_THREADS mode responses of the
+         *                     http client created by this builder are handled on virtual threads too**/
+        public Builder setDispatchMode(DispatchMode dispatchMode) {
+            this.dispatchMode = dispatchMode;
+            return this;
+        }
+
+        /**
+         * @param dispatchThreads Number of worker threads in POOL dispatch mode. Default is the number of processors**/
+        public Builder setDispatchThreads(int dispatchThreads) {
+            this.dispatchThreads = dispatchThreads;
+            return this;
+        }
+
+        /**
+         * @param dispatchQueueSize Maximum number of events waiting for handlers, when it's reached
+         *                          reading from the gateway is paused for {@link EventDispatcher#DEFAULT_BLOCK_TIMEOUT}ms at most,
+         *                          then the event is dropped. Default is 10000**/
+        public Builder setDispatchQueueSize(int dispatchQueueSize) {
+            this.dispatchQueueSize = dispatchQueueSize;
+            return this;
+        }
+
+        /**
+         * @param sessionStore Storage of the session between restarts. When it's set, the session is saved on
+         *                     {@link DiscordClient#stop()} and the next start resumes it instead of identifying. Disabled by default.
+         *                     Discord sends GUILD_CREATE events only after identifying, so after a resume in a new process the
+         *                     entity cache stays empty: guilds, channels and roles must be fetched with the REST API, or the
+         *                     saved session deleted when the cache is needed. A warning is logged when it happens**/
+        public Builder setSessionStore(SessionStore sessionStore) {
+            this.sessionStore = sessionStore;
+            return this;
+        }
+
+        /**
+         * @param encoding Encoding of gateway payloads. Default is json, etf is smaller and cheaper to decode**/
+        public Builder setEncoding(GatewayEncoding encoding) {
+            this.encoding = encoding;
+            return this;
+        }
+
         /**
          * Use or not zlib-stream compression**/
         public Builder setCompress(boolean compress) {
@@ -184,16 +337,54 @@ public class DiscordClient {
         /**
          * @return Built DiscordClient**/
         public DiscordClient build() {
+            SimpleHttpClient client = buildHttpClient();
+            GatewayInfo info = gatewayInfo == null ? GatewayInfo.fetch(client) : gatewayInfo;
+            boolean ownEventBus = eventBus == null;
+
+            DiscordClient res = new DiscordClient(token, intents, shardingEnabled, shardCount, compress, client, debug, listeners, activities, status, shardId, info, identifyScheduler, buildEventBus(), buildCache(), sessionStore, encoding);
+            res.ownEventBus = ownEventBus;
+
+            return res;
+        }
+
+        /**
+         * @return Cache set on this builder or a new one with the default policies. The builder isn't changed,
+         * so every client built without a cache gets its own**/
+        EntityCache buildCache() {
+            return cache == null ? new EntityCache.Builder().build() : cache;
+        }
+
+        /**
+         * @return Event bus set on this builder or a new one with the listeners of this builder registered.
+         * The builder isn't changed, so every client built without a bus gets its own**/
+        EventBus buildEventBus() {
+            if(eventBus != null) {
+                return eventBus;
+            }
+
+            EventBus res = new EventBus(new EventDispatcher(dispatchMode, dispatchThreads, dispatchQueueSize));
+
+            for(EventListener listener: listeners) {
+                res.register(listener);
+            }
+
+            return res;
+        }
+
+        /**
+         * Create the http client if it wasn't set. Clients built by this builder share it**/
+        SimpleHttpClient buildHttpClient() {
             if(httpClient == null) {
                 httpClient = new SimpleHttpClient.Builder()
                         .setAllowInsecureConnections(allowInsecureConnections)
                         .addDefaultHeader("Authorization", "Bot " + token)
                         .addDefaultHeader("User-Agent", Constants.USER_AGENT)
                         .setBaseUrl(Constants.BASE_URL)
+                        .setUseVirtualThreads(dispatchMode == DispatchMode.VIRTUAL_THREADS)
                         .build();
             }
 
-            return new DiscordClient(token, intents, shardingEnabled, shardCount, compress, httpClient, debug, listeners, activities, status);
+            return httpClient;
         }
     }
 
@@ -209,73 +400,339 @@ public class DiscordClient {
      * @param httpClient Base HttpClient
      * @param listeners Event listeners list**/
     public DiscordClient(String token, List<DiscordIntent> intents, boolean shardingEnabled, int shardCount, boolean compress, SimpleHttpClient httpClient, boolean debug, List<EventListener> listeners, List<Activity> activities, DiscordStatus status) {
+        this(token, intents, shardingEnabled, shardCount, compress, httpClient, debug, listeners, activities, status, 0, GatewayInfo.fetch(httpClient), null, null, null, null, GatewayEncoding.JSON);
+    }
+
+    /**
+     * @param shardingEnabled Is sharding enabled
+     * @param intents Discord bot intents
+     * @param token Discord bot token
+     * @param shardCount When sharding is enabled, the number of shards
+     * @param status Bot online status
+     * @param activities Bot activities
+     * @param compress Use or not zlib-stream compression
+     * @param debug Whether to print debug information to the console
+     * @param httpClient Base HttpClient
+     * @param listeners Event listeners list
+     * @param shardId Id of the shard this client connects as
+     * @param gatewayInfo Result of the GET /gateway/bot request
+     * @param identifyScheduler Scheduler pacing identifies, shared between shards. If null, a scheduler for this client is created
+     * @param eventBus Event bus, shared between shards. If null, a bus with the listeners registered is created, otherwise the listeners must be registered already
+     * @param cache Entity cache, shared between shards. If null, a cache with the default policies is created
+     * @param sessionStore Storage of the session between restarts or null to always identify on start
+     * @param encoding Encoding of gateway payloads**/
+    public DiscordClient(String token, List<DiscordIntent> intents, boolean shardingEnabled, int shardCount, boolean compress, SimpleHttpClient httpClient, boolean debug, List<EventListener> listeners, List<Activity> activities, DiscordStatus status, int shardId, GatewayInfo gatewayInfo, IdentifyScheduler identifyScheduler, EventBus eventBus, EntityCache cache, SessionStore sessionStore, GatewayEncoding encoding) {
         this.token = token;
         this.intents = intents;
         this.shardCount = shardCount;
         this.shardingEnabled = shardingEnabled;
         this.compress = compress;
         this.httpClient = httpClient;
+        this.restApi = new RestApi(httpClient);
         this.debug = debug;
         this.listeners = listeners;
-        this.lastSeq = 0;
+        this.session = new GatewaySession();
         this.activities = activities;
         this.status = status;
-        this.ping = new AtomicInteger(0);
-        this.reconnecting = false;
+        this.latency = new LatencyTracker();
+        this.shardId = shardId;
+        this.gatewayInfo = gatewayInfo;
+        this.ownIdentifyScheduler = identifyScheduler == null;
+        this.identifyScheduler = identifyScheduler == null ? new IdentifyScheduler(gatewayInfo) : identifyScheduler;
 
-        SimpleHttpClient.Request gatewayReq = new SimpleHttpClient.Request.Builder("/gateway/bot", "GET").build();
-        HttpResponse<String> gatewayRes = httpClient.executeAndReturn(gatewayReq);
-        JsonNode gatewayJson = null;
+        this.ownEventBus = eventBus == null;
 
-        try {
-            gatewayJson = Constants.MAPPER.readTree(gatewayRes.body());
-        } catch(Exception e) {
-            e.printStackTrace();
+        if(eventBus == null) {
+            eventBus = new EventBus();
+
+            for(EventListener listener: listeners) {
+                eventBus.register(listener);
+            }
         }
-        ErrHandler.handle(httpClient, gatewayJson, gatewayRes, gatewayReq);
 
-        this.gatewayUrl = gatewayJson.get("url").asText();
-        this.recommendedShards = gatewayJson.get("shards").asInt();
+        this.eventBus = eventBus;
+        this.cache = cache == null ? new EntityCache.Builder().build() : cache;
+        this.memberRequests = new GuildMemberRequests(this);
+        this.sessionStore = sessionStore;
+        this.encoding = encoding;
+        this.backoff = new Backoff(1000, 60000);
+
+        if(shardId < 0 || shardId >= getTotalShards()) {
+            throw new IllegalArgumentException("Shard id " + shardId + " is out of range [0, " + getTotalShards() + ")");
+        }
     }
 
     /**
-     * Connect to the Discord Gateway and start running the bot**/
+     * Connect to the Discord Gateway and start running the bot. A non-daemon keep alive thread parks until
+     * {@link #stop()} is called, so the process stays alive without using CPU. If the session store has
+     * a session of this shard, it's resumed instead of identifying**/
     public final void start() {
-        this.socket = new WebsocketHandler(URI.create(gatewayUrl + "?v=10&encoding=json" + (compress ? "&compress=zlib-stream" : "")), this);
+        this.shutdownLatch = new CountDownLatch(1);
+        this.readyLatch = new CountDownLatch(1);
 
+        CountDownLatch latch = shutdownLatch;
         this.keepAliveThread = new Thread(() -> {
-            while(true) {
-                if(Thread.currentThread().isInterrupted()) {
-                    break;
-                }
+            try {
+                latch.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        });
+        }, "DiscordClient keep alive");
         keepAliveThread.start();
+
+        if(restoreSession()) {
+            restored = true;
+            session.setState(ConnectionState.RESUMING);
+            this.socket = new WebsocketHandler(getGatewayUri(session.getResumeUrl()), this);
+            socket.connect();
+        } else {
+            connect();
+        }
+    }
+
+    private void connect() {
+        session.setState(ConnectionState.CONNECTING);
+        this.socket = new WebsocketHandler(getGatewayUri(gatewayInfo.getUrl()), this);
         socket.connect();
     }
 
     /**
-     * Update bot presence**/
-    public final void updatePresence(Presence presence) {
-        ObjectNode node = Constants.MAPPER.createObjectNode();
-        node.put("op", 3);
-        node.put("d", presence.toJson());
-        String res = "";
+     * @param url Gateway or resume url
+     * @return Url with the gateway version, encoding and compression**/
+    private URI getGatewayUri(String url) {
+        return URI.create(url + "?v=10&encoding=" + encoding.getValue() + (compress ? "&compress=zlib-stream" : ""));
+    }
+
+    /**
+     * Load the saved session of this shard from the session store
+     * @return True if there is a session to resume**/
+    private boolean restoreSession() {
+        if(sessionStore == null) {
+            return false;
+        }
+
+        try {
+            SavedSession saved = sessionStore.load(shardId);
+
+            if(saved == null) {
+                return false;
+            }
+
+            session.reset();
+            session.start(saved.getSessionId(), saved.getResumeUrl());
+            session.advanceSequence(saved.getSequence());
+
+            if(debug) {
+                logger.debug("Resuming session saved {}ms ago", System.currentTimeMillis() - saved.getSavedAt());
+            }
+
+            return true;
+        } catch(Exception e) {
+            logger.error("Can't load saved session of shard {}!", shardId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Save the session of this shard to the session store
+     * @return True if the session was saved**/
+    private boolean saveSession() {
+        if(sessionStore == null || !session.isResumable()) {
+            return false;
+        }
+
         try {
-            res = Constants.MAPPER.writeValueAsString(node);
+            sessionStore.save(shardId, new SavedSession(session.getSessionId(), session.getResumeUrl(), session.getSequence(), System.currentTimeMillis()));
+            return true;
         } catch(Exception e) {
-            e.printStackTrace();
+            logger.error("Can't save session of shard {}!", shardId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Forget the saved session, it was invalidated by Discord**/
+    final void removeSavedSession() {
+        if(sessionStore == null) {
+            return;
+        }
+
+        try {
+            sessionStore.remove(shardId);
+        } catch(Exception e) {
+            logger.error("Can't remove saved session of shard {}!", shardId, e);
+        }
+    }
+
+    /**
+     * Block the current thread until the client is stopped**/
+    public final void awaitShutdown() throws InterruptedException {
+        CountDownLatch latch = shutdownLatch;
+
+        if(latch != null) {
+            latch.await();
+        }
+    }
+
+    /**
+     * Block the current thread until the client receives the READY (or RESUMED) event
+     * @param timeout Maximum time to wait
+     * @param unit Time unit of the timeout
+     * @return False if the timeout elapsed before the client became ready**/
+    public final boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        CountDownLatch latch = readyLatch;
+
+        if(latch == null) {
+            throw new IllegalStateException("Client isn't started");
+        }
+
+        return latch.await(timeout, unit);
+    }
+
+    /**
+     * Called when the session is resumed. Warns if the session was restored from the session store and the cache has
+     * no guilds, because they aren't sent on resume**/
+    final void checkRestoredCache() {
+        if(!restored) {
+            return;
+        }
+
+        restored = false;
+
+        if(cache.getGuildPolicy().isEnabled() && cache.getGuildCount() == 0) {
+            logger.warn("Shard {} resumed a saved session with an empty cache!Guilds aren't sent on resume, fetch them with the REST API or delete the saved session to identify", shardId);
+        }
+    }
+
+    final void markReady() {
+        backoff.reset();
+        CountDownLatch latch = readyLatch;
+
+        if(latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Update bot presence. Updates are rate limited with other gateway sends, if several updates are waiting
+     * for the limit only the latest one is sent**/
+    public final void updatePresence(Presence presence) {
+        // The frame is serialized once per presence change, resending the same presence doesn't allocate
+        socket.sendPresence(presence.toPayload(encoding));
+    }
+
+    /**
+     * @return Identify frame (op 2) in the encoding of the client (UTF-8 json or etf). Everything in it is fixed
+     * when the client is built, so it's serialized on the first identify and reused by later ones**/
+    final byte[] getIdentifyPayload() {
+        byte[] res = identifyPayload;
+
+        if(res == null) {
+            ObjectNode node = Constants.MAPPER.createObjectNode();
+            node.put("op", 2);
+
+            ObjectNode identify = Constants.MAPPER.createObjectNode();
+            identify.put("token", token);
+
+            ObjectNode properties = Constants.MAPPER.createObjectNode();
+            properties.put("os", System.getProperty("os.name"));
+            properties.put("browser", "Discordium");
+            properties.put("device", "Discordium");
+
+            identify.set("properties", properties);
+            // Payload compression isn't used, zlib-stream compresses the whole transport instead
+            identify.put("compress", false);
+
+            ArrayNode arr = Constants.MAPPER.createArrayNode();
+            arr.add(shardId);
+            arr.add(getTotalShards());
+
+            identify.set("shard", arr);
+
+            long code = 0;
+            for(DiscordIntent intent: intents) {
+                code += intent.getCode();
+            }
+
+            identify.put("intents", code);
+
+            ObjectNode presence = Constants.MAPPER.createObjectNode();
+            ArrayNode a = Constants.MAPPER.createArrayNode();
+            for(Activity el: activities) {
+                a.add(el.toJson());
+            }
+            presence.set("activities", a);
+            presence.put("status", status.getValue());
+            presence.putNull("since");
+            presence.put("afk", false);
+
+            identify.set("presence", presence);
+            node.set("d", identify);
+
+            try {
+                res = encoding == GatewayEncoding.ETF ? EtfEncoder.encode(node) : Constants.MAPPER.writeValueAsBytes(node);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            identifyPayload = res;
         }
 
-        socket.send(res);
+        return res;
+    }
+
+    /**
+     * Request guild members over the gateway (op 8). Members are streamed as chunks arrive and added to the cache
+     * according to the request. The request is sent when the publisher is subscribed, it accepts one subscriber
+     * @param request Request parameters
+     * @return Publisher of member objects, completed after the last chunk**/
+    public final Flow.Publisher<JsonNode> requestGuildMembers(MemberRequest request) {
+        return memberRequests.request(request);
+    }
+
+    /**
+     * Request guild members whose username starts with the query
+     * @param guildId Guild id
+     * @param query Username prefix, empty string for all members (needs the GUILD_MEMBERS intent)
+     * @param limit Maximum number of members, 0 for no limit (only with an empty query)
+     * @return Publisher of member objects, completed after the last chunk**/
+    public final Flow.Publisher<JsonNode> requestGuildMembers(long guildId, String query, int limit) {
+        return requestGuildMembers(new MemberRequest.Builder(guildId).setQuery(query).setLimit(limit).build());
+    }
+
+    /**
+     * Request guild members by user ids
+     * @param guildId Guild id
+     * @param userIds Ids of the users (up to 100)
+     * @return Publisher of member objects, completed after the last chunk**/
+    public final Flow.Publisher<JsonNode> requestGuildMembers(long guildId, long... userIds) {
+        return requestGuildMembers(new MemberRequest.Builder(guildId).setUserIds(userIds).build());
+    }
+
+    /**
+     * @return Pending Request Guild Members requests of this connection**/
+    public final GuildMemberRequests getMemberRequests() {
+        return memberRequests;
     }
 
     /**
-     * @return Unmodifiable list of event listeners**/
+     * @return Unmodifiable list of event listeners added when the client was built**/
     public final List<EventListener> getEventListeners() {
         return Collections.unmodifiableList(listeners);
     }
 
+    /**
+     * @return Event bus used to subscribe to gateway events at runtime**/
+    public final EventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * @return Guilds, channels, roles and members received from the gateway**/
+    public final EntityCache getCache() {
+        return cache;
+    }
+
     public final DiscordStatus getStatus() {
         return status;
     }
@@ -297,7 +754,47 @@ public class DiscordClient {
     }
 
     public final int getRecommendedShardCount() {
-        return recommendedShards;
+        return gatewayInfo.getShards();
+    }
+
+    /**
+     * @return Id of the shard this client connects as**/
+    public final int getShardId() {
+        return shardId;
+    }
+
+    /**
+     * @return Total number of shards sent in identify (1 if sharding is disabled)**/
+    public final int getTotalShards() {
+        if(!shardingEnabled) {
+            return 1;
+        }
+
+        return shardCount == 0 ? gatewayInfo.getShards() : shardCount;
+    }
+
+    /**
+     * @return Result of the GET /gateway/bot request**/
+    public final GatewayInfo getGatewayInfo() {
+        return gatewayInfo;
+    }
+
+    /**
+     * @return Scheduler pacing identifies of this client**/
+    public final IdentifyScheduler getIdentifyScheduler() {
+        return identifyScheduler;
+    }
+
+    /**
+     * @return Http client used for REST requests**/
+    public final SimpleHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return Typed REST operations over the http client of this client**/
+    public final RestApi getRestApi() {
+        return restApi;
     }
 
     public final boolean isShardingEnabled() {
@@ -315,11 +812,23 @@ public class DiscordClient {
     }
 
     public final int getLastSequence() {
-        return lastSeq;
+        return session.getSequence();
     }
 
     public final String getSessionId() {
-        return sessionId;
+        return session.getSessionId();
+    }
+
+    /**
+     * @return Gateway session state (sequence, session id, resume url and connection state)**/
+    public final GatewaySession getSession() {
+        return session;
+    }
+
+    /**
+     * @return Current gateway connection state**/
+    public final ConnectionState getState() {
+        return session.getState();
     }
 
     public final String getToken() {
@@ -327,7 +836,13 @@ public class DiscordClient {
     }
 
     public final boolean isReconnecting() {
-        return reconnecting;
+        return session.getState() == ConnectionState.RESUMING;
+    }
+
+    /**
+     * @return Encoding of gateway payloads**/
+    public final GatewayEncoding getEncoding() {
+        return encoding;
     }
 
     public final boolean isDebug() {
@@ -335,39 +850,119 @@ public class DiscordClient {
     }
 
     /**
-     * @return Current delay between sending ping and receiving pong (in milliseconds)**/
+     * @return Last delay between sending a heartbeat and receiving its ACK (in milliseconds) or -1 if no heartbeat was acknowledged yet**/
     public final int getPing() {
-        return ping.get();
+        return (int) latency.getLast();
     }
 
     /**
-     * @param failed If true, client will be restarted otherwise reconnect to the Discord gateway by resume url and send Resume event**/
+     * @return Rolling window of heartbeat round trips (min, average, p99)**/
+    public final LatencyTracker getLatency() {
+        return latency;
+    }
+
+    /**
+     * @param failed If true, client will be restarted otherwise reconnect to the Discord gateway by resume url and send Resume event.
+     *               A session that can't be resumed is always restarted**/
     public void reconnect(boolean failed) {
-        if(!failed) {
+        if(!failed && session.isResumable()) {
+            WebsocketHandler old = this.socket;
+
+            session.setState(ConnectionState.RESUMING);
+            this.socket = new WebsocketHandler(getGatewayUri(session.getResumeUrl()), this);
+
             try {
-                this.socket.close();
+                // Not 1000 or 1001, otherwise Discord invalidates the session
+                old.stopHeartbeat();
+                old.close(4000, "Reconnect");
             } catch(Exception e) {
-                e.printStackTrace();
+                logger.error("Can't close old connection!", e);
             }
 
-            reconnecting = true;
-            this.socket = new WebsocketHandler(URI.create(resumeUrl), this);
             socket.connect();
         } else {
-            this.stop();
-            this.start();
+            this.disconnect();
+            this.connect();
         }
     }
 
     /**
-     * Shutdown heartbeat thread executor, interrupt keep alive thread and close Discord gateway connection with exit code 1001**/
+     * Reconnect after the connection was lost, the attempt is delayed by the backoff. Nothing is done if the client
+     * is stopped or a reconnect is already waiting
+     * @param resume Whether the session can be resumed. If false, the session is dropped and a new one is identified**/
+    final void scheduleReconnect(boolean resume) {
+        ConnectionState state = session.getState();
+
+        if(state == ConnectionState.DISCONNECTED || state == ConnectionState.BACKOFF || !session.compareAndSetState(state, ConnectionState.BACKOFF)) {
+            return;
+        }
+
+        if(!resume) {
+            session.reset();
+            removeSavedSession();
+        }
+
+        long delay = backoff.next();
+        logger.warn("Gateway connection lost!{} after {}ms (attempt {})", session.isResumable() ? "Resuming" : "Identifying", delay, backoff.getAttempt());
+
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+            // The client may be stopped while waiting
+            if(session.compareAndSetState(ConnectionState.BACKOFF, ConnectionState.CONNECTING)) {
+                reconnect(false);
+            }
+        });
+    }
+
+    /**
+     * @return Backoff of reconnect attempts, reset when the connection is ready**/
+    public final Backoff getBackoff() {
+        return backoff;
+    }
+
+    /**
+     * Stop heartbeating, release keep alive thread and close Discord gateway connection with exit code 1001.
+     * If a session store is set, the session is saved and the connection is closed with 4000, so Discord keeps
+     * the session for resuming. Worker threads of the event dispatcher and the identify scheduler are stopped, unless
+     * they were set on the builder (the ones shared between shards are stopped by their {@link ShardManager})**/
     public final void stop() {
+        // Heartbeats are stopped first, so the saved sequence isn't sent after saving
+        if(socket != null) {
+            socket.stopHeartbeat();
+        }
 
-        if(!socket.isClosed()) {
-            socket.close(1001, "Close");
+        disconnect(saveSession() ? 4000 : 1001);
+
+        if(ownEventBus) {
+            eventBus.getDispatcher().shutdown();
+        }
+
+        if(ownIdentifyScheduler) {
+            identifyScheduler.shutdown();
         }
 
-        this.keepAliveThread.interrupt();
-        heartbeatExecutor.shutdown();
+        CountDownLatch latch = shutdownLatch;
+
+        if(latch != null) {
+            latch.countDown();
+        }
+    }
+
+    private void disconnect() {
+        disconnect(1001);
+    }
+
+    /**
+     * @param code Close code. Discord invalidates the session if it's 1000 or 1001**/
+    private void disconnect(int code) {
+        // Set before closing, so the close of this connection isn't taken for a lost connection
+        session.setState(ConnectionState.DISCONNECTED);
+
+        if(socket != null) {
+            socket.stopHeartbeat();
+
+            if(!socket.isClosed()) {
+                socket.close(code, "Close");
+            }
+        }
     }
 }
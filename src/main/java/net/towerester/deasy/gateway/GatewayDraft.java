@@ -0,0 +1,95 @@
+package net.towerester.deasy.gateway;
+
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.Framedata;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Websocket draft that hands text frames to the listener as UTF-8 bytes instead of decoding them to a string.
+ * Fragmented text messages are joined in a buffer reused between messages, other frames are processed by the default draft.
+ * Text isn't validated as UTF-8 here, invalid input is reported by the json parser**/
+final class GatewayDraft extends Draft_6455 {
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Receiver of text messages, implemented by the websocket client that uses the draft**/
+    interface Listener {
+        /**
+         * @param buffer Buffer with the UTF-8 text of the message, only valid during the call
+         * @param offset Offset of the message in the buffer
+         * @param length Length of the message**/
+        void onText(byte[] buffer, int offset, int length);
+    }
+
+    private byte[] text;
+    private int textLength;
+    private boolean fragmented;
+
+    GatewayDraft() {
+        this.text = null;
+        this.textLength = 0;
+        this.fragmented = false;
+    }
+
+    @Override
+    public void processFrame(WebSocketImpl webSocket, Framedata frame) throws InvalidDataException {
+        if(webSocket.getWebSocketListener() instanceof Listener listener && accept(frame, listener)) {
+            return;
+        }
+
+        super.processFrame(webSocket, frame);
+    }
+
+    /**
+     * Read a text frame or a continuation of a fragmented text message
+     * @return False if the frame isn't a part of a text message and must be processed by the default draft**/
+    boolean accept(Framedata frame, Listener listener) {
+        Opcode opcode = frame.getOpcode();
+
+        if(opcode != Opcode.TEXT && !(opcode == Opcode.CONTINUOUS && fragmented)) {
+            return false;
+        }
+
+        ByteBuffer payload = frame.getPayloadData();
+
+        if(opcode == Opcode.TEXT && frame.isFin() && payload.hasArray()) {
+            // Whole message in one frame, read in place
+            fragmented = false;
+            listener.onText(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            return true;
+        }
+
+        if(opcode == Opcode.TEXT) {
+            textLength = 0;
+        }
+
+        int size = payload.remaining();
+
+        if(text == null) {
+            text = new byte[Math.max(INITIAL_BUFFER_SIZE, size)];
+        } else if(textLength + size > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + size));
+        }
+
+        payload.get(text, textLength, size);
+        textLength += size;
+        fragmented = !frame.isFin();
+
+        if(!fragmented) {
+            listener.onText(text, 0, textLength);
+        }
+
+        return true;
+    }
+
+    @Override
+    public Draft copyInstance() {
+        return new GatewayDraft();
+    }
+}
@@ -0,0 +1,22 @@
+package net.towerester.deasy.gateway;
+
+/**
+ * Encoding of gateway payloads**/
+public enum GatewayEncoding {
+    JSON("json"),
+    /**
+     * Erlang external term format in binary frames. Smaller on the wire and cheaper to decode than json text**/
+    ETF("etf");
+
+    private final String value;
+
+    GatewayEncoding(String value) {
+        this.value = value;
+    }
+
+    /**
+     * @return Value of the encoding query parameter**/
+    public String getValue() {
+        return value;
+    }
+}
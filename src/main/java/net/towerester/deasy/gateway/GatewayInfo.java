@@ -0,0 +1,101 @@
+package net.towerester.deasy.gateway;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.towerester.deasy.rest.Routes;
+import net.towerester.deasy.utils.ErrHandler;
+import net.towerester.deasy.utils.SimpleHttpClient;
+
+import java.net.http.HttpResponse;
+
+/**
+ * Result of the GET /gateway/bot request**/
+public class GatewayInfo {
+    private final String url;
+    private final int shards;
+    private final int sessionStartTotal;
+    private final int sessionStartRemaining;
+    private final long sessionStartResetAfter;
+    private final int maxConcurrency;
+
+    /**
+     * @param url Gateway url
+     * @param shards Recommended number of shards**/
+    public GatewayInfo(String url, int shards) {
+        this(url, shards, 1000, 1000, 0, 1);
+    }
+
+    /**
+     * @param url Gateway url
+     * @param shards Recommended number of shards
+     * @param sessionStartTotal Total number of session starts the bot is allowed per reset period
+     * @param sessionStartRemaining Remaining number of session starts
+     * @param sessionStartResetAfter Number of milliseconds after which the session start limit resets
+     * @param maxConcurrency Number of identify requests allowed per 5 seconds**/
+    public GatewayInfo(String url, int shards, int sessionStartTotal, int sessionStartRemaining, long sessionStartResetAfter, int maxConcurrency) {
+        this.url = url;
+        this.shards = shards;
+        this.sessionStartTotal = sessionStartTotal;
+        this.sessionStartRemaining = sessionStartRemaining;
+        this.sessionStartResetAfter = sessionStartResetAfter;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Request gateway information for the bot
+     * @param httpClient Http client with bot authorization
+     * @return Gateway information**/
+    public static GatewayInfo fetch(SimpleHttpClient httpClient) {
+        SimpleHttpClient.Request gatewayReq = Routes.GET_GATEWAY_BOT.compile().toRequest().build();
+        HttpResponse<JsonNode> gatewayRes = httpClient.executeJson(gatewayReq);
+        JsonNode gatewayJson = gatewayRes.body();
+
+        ErrHandler.handle(httpClient, gatewayJson, gatewayRes, gatewayReq);
+
+        JsonNode limit = gatewayJson.path("session_start_limit");
+
+        return new GatewayInfo(
+                gatewayJson.get("url").asText(),
+                gatewayJson.get("shards").asInt(),
+                limit.path("total").asInt(1000),
+                limit.path("remaining").asInt(1000),
+                limit.path("reset_after").asLong(0),
+                limit.path("max_concurrency").asInt(1)
+        );
+    }
+
+    /**
+     * @return Gateway url**/
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return Recommended number of shards**/
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * @return Total number of session starts the bot is allowed per reset period**/
+    public int getSessionStartTotal() {
+        return sessionStartTotal;
+    }
+
+    /**
+     * @return Remaining number of session starts at the time of the request**/
+    public int getSessionStartRemaining() {
+        return sessionStartRemaining;
+    }
+
+    /**
+     * @return Number of milliseconds after which the session start limit resets**/
+    public long getSessionStartResetAfter() {
+        return sessionStartResetAfter;
+    }
+
+    /**
+     * @return Number of identify requests allowed per 5 seconds**/
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+}
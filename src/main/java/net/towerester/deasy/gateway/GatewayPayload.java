@@ -0,0 +1,311 @@
+package net.towerester.deasy.gateway;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.NullNode;
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.entities.Entities;
+import net.towerester.deasy.gateway.etf.EtfDecoder;
+import net.towerester.deasy.utils.Snowflake;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Gateway payload read with a streaming parser. Only op, s and t are read eagerly, the d object is skipped
+ * and only its position in the source is remembered, so the tree is built only if {@link #getData()} is called.
+ * The payload references the source buffer, so the data must be read (or the payload {@link #detach() detached})
+ * before the buffer is reused for the next message.
+ * Payloads of the etf encoding are read the same way, the d term is skipped and decoded on demand**/
+public class GatewayPayload {
+    private final int op;
+    private final int sequence;
+    private final String type;
+    private final byte[] bytes;
+    private final String text;
+    private final int dataOffset;
+    private final int dataLength;
+    private final boolean etf;
+    private volatile JsonNode data;
+
+    private GatewayPayload(int op, int sequence, String type, byte[] bytes, String text, int dataOffset, int dataLength, JsonNode data, boolean etf) {
+        this.op = op;
+        this.sequence = sequence;
+        this.type = type;
+        this.bytes = bytes;
+        this.text = text;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+        this.data = data;
+        this.etf = etf;
+    }
+
+    /**
+     * @param message Json text of the payload
+     * @return Parsed payload**/
+    public static GatewayPayload parse(String message) throws IOException {
+        try(JsonParser parser = Constants.MAPPER.getFactory().createParser(message)) {
+            return parse(parser, null, message, 0);
+        }
+    }
+
+    /**
+     * @param buffer Buffer with UTF-8 json of the payload
+     * @param offset Offset of the payload in the buffer
+     * @param length Length of the payload
+     * @return Parsed payload**/
+    public static GatewayPayload parse(byte[] buffer, int offset, int length) throws IOException {
+        try(JsonParser parser = Constants.MAPPER.getFactory().createParser(buffer, offset, length)) {
+            return parse(parser, buffer, null, offset);
+        }
+    }
+
+    private static GatewayPayload parse(JsonParser parser, byte[] bytes, String text, int offset) throws IOException {
+        if(parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Gateway payload must be a json object");
+        }
+
+        int op = -1;
+        int sequence = -1;
+        String type = null;
+        int dataOffset = -1;
+        int dataLength = 0;
+        JsonNode data = NullNode.getInstance();
+
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            switch (name) {
+                case "op" -> op = parser.getIntValue();
+                case "s" -> sequence = token == JsonToken.VALUE_NULL ? -1 : parser.getIntValue();
+                case "t" -> type = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                case "d" -> {
+                    if(token.isStructStart()) {
+                        long start = getOffset(parser, true);
+                        parser.skipChildren();
+                        long end = getOffset(parser, false);
+
+                        dataOffset = offset + (int) start;
+                        dataLength = (int) (end - start);
+                        data = null;
+                    } else {
+                        // Scalar data (heartbeat ACK, invalid session) is cheap to read right away
+                        data = parser.readValueAsTree();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        return new GatewayPayload(op, sequence, type, bytes, text, dataOffset, dataLength, data, false);
+    }
+
+    /**
+     * @param buffer Buffer with the etf term of the payload (starting with the version byte)
+     * @param offset Offset of the payload in the buffer
+     * @param length Length of the payload
+     * @return Parsed payload**/
+    public static GatewayPayload parseEtf(byte[] buffer, int offset, int length) throws IOException {
+        EtfDecoder decoder = EtfDecoder.open(buffer, offset, length);
+        int size = decoder.readMapHeader();
+
+        int op = -1;
+        int sequence = -1;
+        String type = null;
+        int dataOffset = -1;
+        int dataLength = 0;
+        JsonNode data = NullNode.getInstance();
+
+        for(int i = 0; i < size; i++) {
+            String name = decoder.readKey();
+
+            switch (name) {
+                case "op" -> op = decoder.readValue().asInt();
+                case "s" -> {
+                    JsonNode value = decoder.readValue();
+                    sequence = value.isNull() ? -1 : value.asInt();
+                }
+                case "t" -> {
+                    JsonNode value = decoder.readValue();
+                    type = value.isNull() ? null : value.asText();
+                }
+                case "d" -> {
+                    if(decoder.isStructStart()) {
+                        int start = decoder.position();
+                        decoder.skip();
+
+                        dataOffset = start;
+                        dataLength = decoder.position() - start;
+                        data = null;
+                    } else {
+                        data = decoder.readValue();
+                    }
+                }
+                default -> decoder.skip();
+            }
+        }
+
+        // A compressed term is inflated into a new array, the offsets point into it
+        return new GatewayPayload(op, sequence, type, decoder.array(), null, dataOffset, dataLength, data, true);
+    }
+
+    private static long getOffset(JsonParser parser, boolean token) {
+        if(token) {
+            return parser.getTokenLocation().getByteOffset() != -1 ? parser.getTokenLocation().getByteOffset() : parser.getTokenLocation().getCharOffset();
+        }
+
+        return parser.getCurrentLocation().getByteOffset() != -1 ? parser.getCurrentLocation().getByteOffset() : parser.getCurrentLocation().getCharOffset();
+    }
+
+    /**
+     * @return Gateway opcode**/
+    public int getOp() {
+        return op;
+    }
+
+    /**
+     * @return Sequence number of the dispatch or -1 if the payload has no sequence**/
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Dispatch event name or null if the payload isn't a dispatch**/
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Copy the d field out of the source buffer, so the payload can be read after the buffer is reused.
+     * Only the bytes of d are copied, the tree isn't built
+     * @return Payload that doesn't reference the source buffer, this payload if it doesn't reference one**/
+    public GatewayPayload detach() {
+        if(data != null || bytes == null) {
+            return this;
+        }
+
+        byte[] copy = Arrays.copyOfRange(bytes, dataOffset, dataOffset + dataLength);
+
+        return new GatewayPayload(op, sequence, type, copy, null, 0, dataLength, null, etf);
+    }
+
+    /**
+     * Read a snowflake field of the d object without building the tree. Nested objects are skipped by the parser
+     * @param field Field name
+     * @param fallback Field read if the first one is missing or null
+     * @return Snowflake or 0 if neither field is present**/
+    public long getDataSnowflake(String field, String fallback) throws IOException {
+        JsonNode tree = data;
+
+        if(tree != null) {
+            if(tree.hasNonNull(field)) {
+                return Snowflake.parse(tree, field);
+            }
+
+            return fallback != null && tree.hasNonNull(fallback) ? Snowflake.parse(tree, fallback) : 0;
+        }
+
+        long res = 0;
+
+        if(etf) {
+            EtfDecoder decoder = EtfDecoder.openTerm(bytes, dataOffset, dataLength);
+
+            if(!decoder.isMap()) {
+                return 0;
+            }
+
+            int size = decoder.readMapHeader();
+
+            for(int i = 0; i < size; i++) {
+                String name = decoder.readKey();
+
+                if(name.equals(field) || name.equals(fallback)) {
+                    JsonNode value = decoder.readValue();
+
+                    if(!value.isNull()) {
+                        long id = value.isTextual() ? Snowflake.parse(value.asText()) : value.asLong();
+
+                        if(name.equals(field)) {
+                            return id;
+                        }
+
+                        res = id;
+                    }
+                } else {
+                    decoder.skip();
+                }
+            }
+
+            return res;
+        }
+
+        try(JsonParser parser = bytes != null ? Constants.MAPPER.getFactory().createParser(bytes, dataOffset, dataLength) : Constants.MAPPER.getFactory().createParser(text.substring(dataOffset, dataOffset + dataLength))) {
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                return 0;
+            }
+
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+
+                if((name.equals(field) || name.equals(fallback)) && token != JsonToken.VALUE_NULL) {
+                    long id = token == JsonToken.VALUE_STRING ? Snowflake.parse(parser.getText()) : parser.getLongValue();
+
+                    if(name.equals(field)) {
+                        return id;
+                    }
+
+                    res = id;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Read the d field of the payload. The tree is built on the first call
+     * @return Event data**/
+    public JsonNode getData() throws IOException {
+        // Handlers of a detached payload may call this from several threads, at worst the tree is built twice
+        JsonNode res = data;
+
+        if(res == null) {
+            if(etf) {
+                res = EtfDecoder.decodeTerm(bytes, dataOffset, dataLength);
+            } else if(bytes != null) {
+                res = Constants.MAPPER.readTree(bytes, dataOffset, dataLength);
+            } else {
+                res = Constants.MAPPER.readTree(text.substring(dataOffset, dataOffset + dataLength));
+            }
+
+            data = res;
+        }
+
+        return res;
+    }
+
+    /**
+     * Read the d field of the payload as a typed entity. Json is read from the source without building a tree,
+     * unless the tree was built already or the payload is etf
+     * @param reader Reader of the entity, see {@link Entities}
+     * @return Entity or null if the data is null**/
+    public <T> T getData(ObjectReader reader) throws IOException {
+        JsonNode tree = data;
+
+        if(tree != null || etf) {
+            return Entities.read(reader, tree != null ? tree : getData());
+        }
+
+        if(bytes != null) {
+            return reader.readValue(bytes, dataOffset, dataLength);
+        }
+
+        return reader.readValue(text.substring(dataOffset, dataOffset + dataLength));
+    }
+}
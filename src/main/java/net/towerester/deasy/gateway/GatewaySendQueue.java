@@ -0,0 +1,289 @@
+package net.towerester.deasy.gateway;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Outbound frames of one gateway connection. Discord closes the connection (4008) after 120 sends in 60 seconds,
+ * so the times of the last 120 sends are kept and frames over the limit wait in the queue.
+ * Heartbeats, identify and resume use a priority lane: they are sent before queued frames and
+ * {@link #RESERVED} sends of every window are kept for them. Presence updates are coalesced,
+ * only the latest pending update is sent. Frames are in the encoding of the connection (UTF-8 json or etf),
+ * a frame that is sent right away is written from the caller's array without a copy**/
+public class GatewaySendQueue {
+    private static final Logger logger = LoggerFactory.getLogger(GatewaySendQueue.class);
+    public static final int LIMIT = 120;
+    public static final long WINDOW = 60000;
+    /**
+     * Sends of a window only the priority lane can use**/
+    public static final int RESERVED = 6;
+
+    private final Sender sender;
+    private final LongSupplier clock;
+    private final ReentrantLock lock;
+    // Times of the last LIMIT sends, next points to the oldest one
+    private final long[] sends;
+    private final Deque<Frame> priority;
+    private final Deque<Frame> normal;
+    private int next;
+    private Frame pendingPresence;
+    private boolean drainScheduled;
+    private boolean closed;
+    private long sentCount;
+    private long coalescedCount;
+
+    /**
+     * Writes a frame to the socket. Called with the queue lock held, so writes of one connection never overlap**/
+    @FunctionalInterface
+    public interface Sender {
+        /**
+         * @param payload Array with the encoded frame, only valid during the call
+         * @param length Length of the frame in the array**/
+        void send(byte[] payload, int length);
+    }
+
+    private static class Frame {
+        private byte[] payload;
+        private final boolean presence;
+
+        private Frame(byte[] payload, boolean presence) {
+            this.payload = payload;
+            this.presence = presence;
+        }
+    }
+
+    /**
+     * @param sender Writes a frame to the socket**/
+    public GatewaySendQueue(Sender sender) {
+        this(sender, System::currentTimeMillis);
+    }
+
+    GatewaySendQueue(Sender sender, LongSupplier clock) {
+        this.sender = sender;
+        this.clock = clock;
+        this.lock = new ReentrantLock();
+        this.sends = new long[LIMIT];
+        this.priority = new ArrayDeque<>();
+        this.normal = new ArrayDeque<>();
+        this.next = 0;
+        this.pendingPresence = null;
+        this.drainScheduled = false;
+        this.closed = false;
+        this.sentCount = 0;
+        this.coalescedCount = 0;
+
+        // No sends yet, every slot of the window is free
+        Arrays.fill(sends, Long.MIN_VALUE / 2);
+    }
+
+    /**
+     * Send a frame of the priority lane (heartbeat, identify, resume)**/
+    public void sendPriority(String payload) {
+        sendPriority(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send a frame of the priority lane. The array is kept if the frame has to wait, so it must not be modified
+     * @param payload UTF-8 json of the frame**/
+    public void sendPriority(byte[] payload) {
+        lock.lock();
+        try {
+            priority.add(new Frame(payload, false));
+            drain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send a frame of the priority lane from a reused buffer. If nothing waits before it, the frame is written
+     * from the buffer directly, otherwise it's copied to the queue
+     * @param buffer Buffer with the UTF-8 json of the frame, it can be reused when the method returns
+     * @param length Length of the frame in the buffer**/
+    public void sendPriority(byte[] buffer, int length) {
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+
+            if(!closed && priority.isEmpty() && availableAt(0) <= now) {
+                write(buffer, length, now);
+            } else {
+                priority.add(new Frame(Arrays.copyOf(buffer, length), false));
+                drain();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send a frame after the frames queued before it**/
+    public void send(String payload) {
+        send(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send a frame after the frames queued before it. The array is kept if the frame has to wait, so it must not be modified
+     * @param payload UTF-8 json of the frame**/
+    public void send(byte[] payload) {
+        lock.lock();
+        try {
+            normal.add(new Frame(payload, false));
+            drain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send a presence update. If a previous update is still queued, it's replaced by this one**/
+    public void sendPresence(String payload) {
+        sendPresence(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send a presence update. If a previous update is still queued, it's replaced by this one.
+     * The array is kept if the update has to wait, so it must not be modified (see {@link net.towerester.deasy.gateway.entities.Presence#toPayload()})
+     * @param payload UTF-8 json of the update**/
+    public void sendPresence(byte[] payload) {
+        lock.lock();
+        try {
+            if(pendingPresence != null) {
+                pendingPresence.payload = payload;
+                coalescedCount++;
+            } else {
+                pendingPresence = new Frame(payload, true);
+                normal.add(pendingPresence);
+            }
+
+            drain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop queued frames, the connection is closed**/
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            priority.clear();
+            normal.clear();
+            pendingPresence = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of frames waiting for the rate limit**/
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return priority.size() + normal.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of frames sent by this connection**/
+    public long getSentCount() {
+        lock.lock();
+        try {
+            return sentCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of presence updates replaced by a newer one before they were sent**/
+    public long getCoalescedCount() {
+        lock.lock();
+        try {
+            return coalescedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send as many queued frames as the rate limit allows and schedule the rest. Must be called with the lock held**/
+    void drain() {
+        if(closed) {
+            priority.clear();
+            normal.clear();
+            return;
+        }
+
+        long now = clock.getAsLong();
+
+        while(!priority.isEmpty() && availableAt(0) <= now) {
+            write(priority.poll().payload, now);
+        }
+
+        while(priority.isEmpty() && !normal.isEmpty() && availableAt(RESERVED) <= now) {
+            Frame frame = normal.poll();
+
+            if(frame.presence) {
+                pendingPresence = null;
+            }
+
+            write(frame.payload, now);
+        }
+
+        if((!priority.isEmpty() || !normal.isEmpty()) && !drainScheduled) {
+            long delay = (priority.isEmpty() ? availableAt(RESERVED) : availableAt(0)) - now;
+            drainScheduled = true;
+
+            if(normal.size() + priority.size() == 1) {
+                logger.warn("Gateway send limit reached!Queued frames are sent after {}ms", delay);
+            }
+
+            CompletableFuture.delayedExecutor(Math.max(1, delay), TimeUnit.MILLISECONDS).execute(() -> {
+                lock.lock();
+                try {
+                    drainScheduled = false;
+                    drain();
+                } finally {
+                    lock.unlock();
+                }
+            });
+        }
+    }
+
+    /**
+     * @param reserved Number of the most recent window slots that can't be used
+     * @return Time when a send of the lane is allowed**/
+    private long availableAt(int reserved) {
+        // The send reserved + 1 places before the newest must be out of the window
+        return sends[(next + reserved) % LIMIT] + WINDOW;
+    }
+
+    private void write(byte[] payload, long now) {
+        write(payload, payload.length, now);
+    }
+
+    private void write(byte[] payload, int length, long now) {
+        sends[next] = now;
+        next = (next + 1) % LIMIT;
+        sentCount++;
+
+        try {
+            sender.send(payload, length);
+        } catch(Exception e) {
+            logger.error("Can't send gateway frame!", e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package net.towerester.deasy.gateway;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * State of a gateway session shared between {@link DiscordClient} and its {@link WebsocketHandler}.
+ * Sequence and connection state are updated with VarHandle atomics, so the gateway thread never takes a lock
+ * and readers on other threads (heartbeat, listeners) always see the latest values**/
+public class GatewaySession {
+    private static final VarHandle SEQUENCE;
+    private static final VarHandle STATE;
+
+    private volatile int sequence;
+    private volatile String sessionId;
+    private volatile String resumeUrl;
+    private volatile ConnectionState state;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            SEQUENCE = lookup.findVarHandle(GatewaySession.class, "sequence", int.class);
+            STATE = lookup.findVarHandle(GatewaySession.class, "state", ConnectionState.class);
+        } catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public GatewaySession() {
+        this.sequence = 0;
+        this.state = ConnectionState.DISCONNECTED;
+    }
+
+    /**
+     * Store the sequence of a received dispatch. The sequence only moves forward
+     * @param sequence Sequence number of the dispatch
+     * @return False if the sequence isn't newer than the last one**/
+    public boolean advanceSequence(int sequence) {
+        int current;
+
+        do {
+            current = (int) SEQUENCE.getVolatile(this);
+
+            if(sequence <= current) {
+                return false;
+            }
+        } while(!SEQUENCE.compareAndSet(this, current, sequence));
+
+        return true;
+    }
+
+    /**
+     * @return Sequence number of the last received dispatch or 0 if nothing was received yet**/
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Forget the session. Used when the session is invalidated and a new identify is required**/
+    public void reset() {
+        SEQUENCE.setVolatile(this, 0);
+        this.sessionId = null;
+        this.resumeUrl = null;
+    }
+
+    /**
+     * Store the session created by the READY event
+     * @param sessionId Session id used for resuming
+     * @param resumeUrl Gateway url used for resuming**/
+    public void start(String sessionId, String resumeUrl) {
+        this.sessionId = sessionId;
+        this.resumeUrl = resumeUrl;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getResumeUrl() {
+        return resumeUrl;
+    }
+
+    /**
+     * @return Whether the session can be resumed**/
+    public boolean isResumable() {
+        return sessionId != null && resumeUrl != null;
+    }
+
+    public ConnectionState getState() {
+        return state;
+    }
+
+    public void setState(ConnectionState state) {
+        STATE.setVolatile(this, state);
+    }
+
+    /**
+     * Change the state only if it wasn't changed by another thread
+     * @return True if the state was changed**/
+    public boolean compareAndSetState(ConnectionState expected, ConnectionState state) {
+        return STATE.compareAndSet(this, expected, state);
+    }
+}
@@ -0,0 +1,273 @@
+package net.towerester.deasy.gateway;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.utils.Snowflake;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request Guild Members (op 8) requests of one connection. Every request gets a nonce, GUILD_MEMBERS_CHUNK
+ * events are matched to requests by it and their members are streamed to the request's publisher.
+ * Requests are paced, so member requests never take more than half of the gateway send limit**/
+public class GuildMemberRequests {
+    private static final Logger logger = LoggerFactory.getLogger(GuildMemberRequests.class);
+    /**
+     * Minimum interval between two requests. The gateway allows 120 sends per minute**/
+    public static final long REQUEST_INTERVAL = 1000;
+    /**
+     * A request fails if no chunk is received for this time**/
+    public static final long CHUNK_TIMEOUT = 30000;
+    /**
+     * Chunks hold up to 1000 members, so a whole chunk fits into the subscriber buffer**/
+    private static final int BUFFER_SIZE = 1024;
+    /**
+     * Maximum time the websocket thread waits for space in the subscriber buffer. If the subscriber is still behind, the request fails**/
+    public static final long SUBMIT_TIMEOUT = 100;
+
+    private final DiscordClient client;
+    private final Map<String, Pending> pending;
+    private final AtomicLong nonces;
+    private long nextSendAt;
+
+    private static class Pending {
+        private final MemberRequest request;
+        private final String nonce;
+        private final SubmissionPublisher<JsonNode> publisher;
+        private volatile long lastChunkAt;
+
+        private Pending(MemberRequest request, String nonce) {
+            this.request = request;
+            this.nonce = nonce;
+            this.publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), BUFFER_SIZE);
+            this.lastChunkAt = System.currentTimeMillis();
+        }
+    }
+
+    public GuildMemberRequests(DiscordClient client) {
+        this.client = client;
+        this.pending = new ConcurrentHashMap<>();
+        this.nonces = new AtomicLong();
+        this.nextSendAt = 0;
+    }
+
+    /**
+     * Publisher of one request. The request is queued when it's subscribed, so no chunk arrives before there is a subscriber**/
+    private class RequestPublisher implements Flow.Publisher<JsonNode> {
+        private final MemberRequest request;
+        private final AtomicBoolean subscribed;
+
+        private RequestPublisher(MemberRequest request) {
+            this.request = request;
+            this.subscribed = new AtomicBoolean();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super JsonNode> subscriber) {
+            if(!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("Member request can be subscribed only once"));
+                return;
+            }
+
+            Pending res = new Pending(request, Long.toString(nonces.incrementAndGet(), 36));
+            res.publisher.subscribe(subscriber);
+            pending.put(res.nonce, res);
+
+            schedule(res, 0);
+            watch(res);
+        }
+    }
+
+    /**
+     * Create the request. It's sent when the publisher is subscribed, members are published as GUILD_MEMBERS_CHUNK
+     * events arrive, the publisher is completed after the last chunk, or completed exceptionally if the request
+     * can't be sent or chunks stop arriving. The publisher accepts only one subscriber
+     * @param request Request parameters
+     * @return Publisher of member objects**/
+    public Flow.Publisher<JsonNode> request(MemberRequest request) {
+        return new RequestPublisher(request);
+    }
+
+    /**
+     * @return Whether the dispatch event is used by pending requests**/
+    public boolean isHandled(String eventName) {
+        return !pending.isEmpty() && (eventName.equals("GUILD_MEMBERS_CHUNK") || eventName.equals("RATE_LIMITED"));
+    }
+
+    /**
+     * @param data GUILD_MEMBERS_CHUNK event data
+     * @return Whether the members of the chunk should be cached (chunks of unknown requests are cached).
+     * The member policy of the cache still applies, with voice members only the cached members are refreshed**/
+    public boolean isCached(JsonNode data) {
+        Pending request = getRequest(data);
+        return request == null || request.request.isCache();
+    }
+
+    /**
+     * Stream members of a chunk to the request it belongs to. Called on the websocket thread
+     * @param data GUILD_MEMBERS_CHUNK event data**/
+    public void handleChunk(JsonNode data) {
+        Pending request = getRequest(data);
+
+        if(request == null) {
+            return;
+        }
+
+        request.lastChunkAt = System.currentTimeMillis();
+
+        for(JsonNode member: data.path("members")) {
+            // Waits only if the subscriber is more than a chunk behind, a subscriber that doesn't catch up fails the request
+            if(request.publisher.offer(member, SUBMIT_TIMEOUT, TimeUnit.MILLISECONDS, (subscriber, item) -> false) < 0) {
+                fail(request, new IllegalStateException("Subscriber can't keep up with the members of guild " + request.request.getGuildId()));
+                return;
+            }
+        }
+
+        if(data.path("chunk_index").asInt() >= data.path("chunk_count").asInt() - 1) {
+            pending.remove(request.nonce);
+
+            if(data.has("not_found") && data.get("not_found").size() > 0 && client.isDebug()) {
+                logger.debug("Members weren't found in guild {}: {}", request.request.getGuildId(), data.get("not_found"));
+            }
+
+            request.publisher.close();
+        }
+    }
+
+    /**
+     * Retry a request rejected by the gateway rate limit
+     * @param data RATE_LIMITED event data**/
+    public void handleRateLimited(JsonNode data) {
+        JsonNode meta = data.path("meta");
+        Pending request = meta.has("nonce") ? pending.get(meta.get("nonce").asText()) : null;
+
+        if(request == null) {
+            return;
+        }
+
+        long retryAfter = (long) (data.path("retry_after").asDouble() * 1000);
+        logger.warn("Member request for guild {} is rate limited!Retrying after {}ms", request.request.getGuildId(), retryAfter);
+
+        schedule(request, retryAfter);
+    }
+
+    /**
+     * @return Number of requests waiting for chunks**/
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private Pending getRequest(JsonNode data) {
+        return data.has("nonce") ? pending.get(data.get("nonce").asText()) : null;
+    }
+
+    private void schedule(Pending request, long minDelay) {
+        long delay;
+
+        synchronized(this) {
+            long now = System.currentTimeMillis();
+            long sendAt = Math.max(now + minDelay, nextSendAt);
+
+            nextSendAt = sendAt + REQUEST_INTERVAL;
+            delay = sendAt - now;
+        }
+
+        request.lastChunkAt = System.currentTimeMillis() + delay;
+        delayed(delay).execute(() -> send(request));
+    }
+
+    private void send(Pending request) {
+        if(!pending.containsKey(request.nonce)) {
+            return;
+        }
+
+        WebsocketHandler socket = client.getSocket() instanceof WebsocketHandler handler ? handler : null;
+
+        if(socket == null || !socket.isOpen()) {
+            fail(request, new IllegalStateException("Client isn't connected"));
+            return;
+        }
+
+        try {
+            socket.send(Constants.MAPPER.writeValueAsString(toJson(request)));
+        } catch(Exception e) {
+            fail(request, e);
+        }
+    }
+
+    private void watch(Pending request) {
+        delayed(CHUNK_TIMEOUT).execute(() -> {
+            if(pending.get(request.nonce) != request) {
+                return;
+            }
+
+            long idle = System.currentTimeMillis() - request.lastChunkAt;
+
+            if(idle >= CHUNK_TIMEOUT) {
+                fail(request, new TimeoutException("No member chunks received for " + idle + "ms"));
+            } else {
+                watch(request);
+            }
+        });
+    }
+
+    private void fail(Pending request, Throwable error) {
+        if(pending.remove(request.nonce, request)) {
+            request.publisher.closeExceptionally(error);
+        }
+    }
+
+    private ObjectNode toJson(Pending request) {
+        MemberRequest params = request.request;
+        ObjectNode data = Constants.MAPPER.createObjectNode();
+
+        data.put("guild_id", Snowflake.of(params.getGuildId()).toString());
+
+        if(params.getUserIds() != null) {
+            ArrayNode ids = data.putArray("user_ids");
+
+            for(long id: params.getUserIds()) {
+                ids.add(Snowflake.of(id).toString());
+            }
+        } else {
+            data.put("query", params.getQuery());
+            data.put("limit", params.getLimit());
+        }
+
+        data.put("presences", params.isPresences());
+        data.put("nonce", request.nonce);
+
+        ObjectNode node = Constants.MAPPER.createObjectNode();
+        node.put("op", 8);
+        node.set("d", data);
+
+        return node;
+    }
+
+    private static Executor delayed(long delay) {
+        return CompletableFuture.delayedExecutor(Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,95 @@
+package net.towerester.deasy.gateway;
+
+import net.towerester.deasy.gateway.etf.Etf;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Heartbeat frame (op 1) written from a fixed prefix and the sequence into a reused buffer,
+ * so sending a heartbeat doesn't build a json tree or a string. With json the sequence is written as digits,
+ * with etf as an integer term. Not thread safe, the caller serializes writes**/
+final class HeartbeatPayload {
+    private static final byte[] PREFIX = "{\"op\":1,\"d\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    // Map of 2 pairs with binary keys: "op" => 1, "d" => sequence
+    private static final byte[] ETF_PREFIX = {
+            (byte) Etf.VERSION, Etf.MAP, 0, 0, 0, 2,
+            Etf.BINARY, 0, 0, 0, 2, 'o', 'p', Etf.SMALL_INTEGER, 1,
+            Etf.BINARY, 0, 0, 0, 1, 'd'
+    };
+    private static final byte[] ETF_NIL = {Etf.SMALL_ATOM_UTF8, 3, 'n', 'i', 'l'};
+
+    private final boolean etf;
+    // Prefix and up to 10 digits of an int and the closing brace, or the prefix and a 5 byte term
+    private final byte[] buffer;
+
+    HeartbeatPayload() {
+        this(false);
+    }
+
+    /**
+     * @param etf Write etf terms instead of json**/
+    HeartbeatPayload(boolean etf) {
+        this.etf = etf;
+        this.buffer = etf ? new byte[ETF_PREFIX.length + 5] : new byte[PREFIX.length + 11];
+
+        byte[] prefix = etf ? ETF_PREFIX : PREFIX;
+        System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+    }
+
+    /**
+     * @param sequence Last received sequence or 0 if no dispatch was received yet (sent as null)
+     * @return Length of the frame in {@link #getBuffer()}**/
+    int write(int sequence) {
+        return etf ? writeEtf(sequence) : writeJson(sequence);
+    }
+
+    private int writeJson(int sequence) {
+        int pos = PREFIX.length;
+
+        if(sequence <= 0) {
+            System.arraycopy(NULL, 0, buffer, pos, NULL.length);
+            pos += NULL.length;
+        } else {
+            int digits = 1;
+            for(int i = sequence; i >= 10; i /= 10) {
+                digits++;
+            }
+
+            pos += digits;
+            for(int i = sequence, j = pos - 1; j >= PREFIX.length; i /= 10, j--) {
+                buffer[j] = (byte) ('0' + i % 10);
+            }
+        }
+
+        buffer[pos++] = '}';
+
+        return pos;
+    }
+
+    private int writeEtf(int sequence) {
+        int pos = ETF_PREFIX.length;
+
+        if(sequence <= 0) {
+            System.arraycopy(ETF_NIL, 0, buffer, pos, ETF_NIL.length);
+            pos += ETF_NIL.length;
+        } else if(sequence <= 255) {
+            buffer[pos++] = Etf.SMALL_INTEGER;
+            buffer[pos++] = (byte) sequence;
+        } else {
+            buffer[pos++] = Etf.INTEGER;
+            buffer[pos++] = (byte) (sequence >>> 24);
+            buffer[pos++] = (byte) (sequence >>> 16);
+            buffer[pos++] = (byte) (sequence >>> 8);
+            buffer[pos++] = (byte) sequence;
+        }
+
+        return pos;
+    }
+
+    /**
+     * @return Buffer with the last written frame**/
+    byte[] getBuffer() {
+        return buffer;
+    }
+}
@@ -0,0 +1,48 @@
+package net.towerester.deasy.gateway;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One timer thread sending heartbeats for every gateway connection of the process. Heartbeat tasks only
+ * enqueue a small payload, so a single thread serves any number of shards**/
+public class HeartbeatScheduler {
+    private static final HeartbeatScheduler INSTANCE = new HeartbeatScheduler();
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private HeartbeatScheduler() {
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "HeartbeatScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return Scheduler shared by all connections**/
+    public static HeartbeatScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start heartbeating. As Discord requires, the first heartbeat is sent after heartbeat_interval * jitter
+     * (random value from 0 to 1), the next ones every heartbeat_interval
+     * @param heartbeat Task sending a heartbeat
+     * @param interval Heartbeat interval in milliseconds
+     * @return Future used to stop heartbeating when the connection is closed**/
+    public ScheduledFuture<?> schedule(Runnable heartbeat, long interval) {
+        long jitter = (long) (interval * ThreadLocalRandom.current().nextDouble());
+
+        return executor.scheduleAtFixedRate(heartbeat, jitter, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Number of scheduled heartbeat tasks**/
+    public int getTaskCount() {
+        return executor.getQueue().size();
+    }
+}
@@ -0,0 +1,154 @@
+package net.towerester.deasy.gateway;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Paces identify payloads according to session_start_limit from GET /gateway/bot. Shards are bucketed by
+ * shard_id % max_concurrency, shards of different buckets identify at the same time and shards of the same
+ * bucket identify one per {@link #IDENTIFY_INTERVAL}. When no session starts remain, identifies are delayed
+ * until the limit resets. One scheduler should be shared by all shards of the bot**/
+public class IdentifyScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(IdentifyScheduler.class);
+    public static final long IDENTIFY_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    private static final long SESSION_START_PERIOD = TimeUnit.DAYS.toMillis(1);
+
+    private final int maxConcurrency;
+    private final long[] nextIdentify;
+    private final int sessionStartTotal;
+    private int sessionStartRemaining;
+    private long sessionStartResetAt;
+    private int reservedStarts;
+    // Created on the first identify, so a shut down scheduler of a stopped client can be used again on restart
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param gatewayInfo Result of the GET /gateway/bot request with the session start limit**/
+    public IdentifyScheduler(GatewayInfo gatewayInfo) {
+        this.maxConcurrency = Math.max(1, gatewayInfo.getMaxConcurrency());
+        this.nextIdentify = new long[this.maxConcurrency];
+        this.sessionStartTotal = gatewayInfo.getSessionStartTotal();
+        this.sessionStartRemaining = gatewayInfo.getSessionStartRemaining();
+        this.sessionStartResetAt = System.currentTimeMillis() + gatewayInfo.getSessionStartResetAfter();
+        this.reservedStarts = 0;
+        this.scheduler = null;
+    }
+
+    /**
+     * Run the identify of the shard when its bucket allows it
+     * @param shardId Id of the identifying shard
+     * @param identify Task sending the identify payload
+     * @return Delay (in milliseconds) before the identify is sent**/
+    public long schedule(int shardId, Runnable identify) {
+        return schedule(shardId, () -> {
+            identify.run();
+            return true;
+        });
+    }
+
+    /**
+     * Run the identify of the shard when its bucket allows it. A session start is counted only if the identify is sent,
+     * if it isn't (the connection was closed while waiting), the start and the bucket slot are given back
+     * @param shardId Id of the identifying shard
+     * @param identify Task sending the identify payload, returns whether it was sent
+     * @return Delay (in milliseconds) before the identify is sent**/
+    public long schedule(int shardId, BooleanSupplier identify) {
+        int bucket = shardId % maxConcurrency;
+        long delay;
+        long slot;
+        ScheduledExecutorService executor;
+
+        synchronized(this) {
+            if(scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "IdentifyScheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+
+            executor = scheduler;
+            long now = System.currentTimeMillis();
+            long at = Math.max(now, nextIdentify[bucket]);
+
+            if(at >= sessionStartResetAt) {
+                sessionStartRemaining = sessionStartTotal;
+                sessionStartResetAt = at + SESSION_START_PERIOD;
+            }
+
+            // Starts of identifies that are waiting are reserved, so they aren't given to other shards
+            if(sessionStartRemaining - reservedStarts <= 0) {
+                logger.warn("No session starts remaining!Identify of shard {} is delayed for {}ms", shardId, sessionStartResetAt - now);
+
+                at = sessionStartResetAt;
+                sessionStartRemaining = sessionStartTotal;
+                sessionStartResetAt = at + SESSION_START_PERIOD;
+            }
+
+            reservedStarts++;
+            nextIdentify[bucket] = at + IDENTIFY_INTERVAL;
+            slot = at;
+            delay = at - now;
+        }
+
+        Runnable task = () -> {
+            boolean sent = false;
+
+            try {
+                sent = identify.getAsBoolean();
+            } finally {
+                release(bucket, slot, sent);
+            }
+        };
+
+        try {
+            if(delay == 0) {
+                executor.execute(task);
+            } else {
+                executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+            }
+        } catch(RejectedExecutionException e) {
+            logger.warn("Scheduler was shut down, identify of shard {} isn't sent", shardId);
+            release(bucket, slot, false);
+        }
+
+        return delay;
+    }
+
+    private synchronized void release(int bucket, long slot, boolean sent) {
+        reservedStarts--;
+
+        if(sent) {
+            sessionStartRemaining--;
+        } else if(nextIdentify[bucket] == slot + IDENTIFY_INTERVAL) {
+            // No later identify took the next slot of the bucket, so it's free again
+            nextIdentify[bucket] = slot;
+        }
+    }
+
+    /**
+     * Stop the scheduler thread. Identifies that are waiting aren't sent and their session starts are given back.
+     * The next {@link #schedule(int, BooleanSupplier)} starts a new thread**/
+    public synchronized void shutdown() {
+        if(scheduler != null) {
+            reservedStarts -= scheduler.shutdownNow().size();
+            scheduler = null;
+        }
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return Number of session starts left before identifies are delayed, starts of waiting identifies aren't included**/
+    public synchronized int getSessionStartRemaining() {
+        return sessionStartRemaining - reservedStarts;
+    }
+}
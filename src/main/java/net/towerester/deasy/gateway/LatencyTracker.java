@@ -0,0 +1,91 @@
+package net.towerester.deasy.gateway;
+
+import java.util.Arrays;
+
+/**
+ * Rolling window of gateway heartbeat round trips (heartbeat sent to heartbeat ACK received)**/
+public class LatencyTracker {
+    public static final int WINDOW_SIZE = 64;
+
+    private final long[] samples;
+    private int count;
+    private int next;
+    private long last;
+
+    public LatencyTracker() {
+        this.samples = new long[WINDOW_SIZE];
+        this.count = 0;
+        this.next = 0;
+        this.last = -1;
+    }
+
+    /**
+     * @param latency Round trip time in milliseconds**/
+    public synchronized void record(long latency) {
+        samples[next] = latency;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        last = latency;
+    }
+
+    /**
+     * @return Last round trip time in milliseconds or -1 if no heartbeat was acknowledged yet**/
+    public synchronized long getLast() {
+        return last;
+    }
+
+    /**
+     * @return Minimal round trip time in the window or -1 if there are no samples**/
+    public synchronized long getMin() {
+        if(count == 0) {
+            return -1;
+        }
+
+        long min = Long.MAX_VALUE;
+        for(int i = 0; i < count; i++) {
+            min = Math.min(min, samples[i]);
+        }
+
+        return min;
+    }
+
+    /**
+     * @return Average round trip time in the window or -1 if there are no samples**/
+    public synchronized double getAverage() {
+        if(count == 0) {
+            return -1;
+        }
+
+        long sum = 0;
+        for(int i = 0; i < count; i++) {
+            sum += samples[i];
+        }
+
+        return (double) sum / count;
+    }
+
+    /**
+     * @param percentile Percentile from 0 to 100
+     * @return Round trip time in the window at the given percentile or -1 if there are no samples**/
+    public synchronized long getPercentile(double percentile) {
+        if(count == 0) {
+            return -1;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+
+        int idx = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(idx, count - 1))];
+    }
+
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    /**
+     * @return Number of samples in the window**/
+    public synchronized int getSampleCount() {
+        return count;
+    }
+}
@@ -0,0 +1,120 @@
+package net.towerester.deasy.gateway;
+
+import java.util.Arrays;
+
+/**
+ * Parameters of a Request Guild Members (op 8) request. Members are requested either by a username prefix
+ * (an empty query with limit 0 requests all members, needs the GUILD_MEMBERS intent) or by user ids**/
+public class MemberRequest {
+    private final long guildId;
+    private final String query;
+    private final int limit;
+    private final long[] userIds;
+    private final boolean presences;
+    private final boolean cache;
+
+    public static class Builder {
+        private final long guildId;
+        private String query;
+        private int limit;
+        private long[] userIds;
+        private boolean presences;
+        private boolean cache;
+
+        /**
+         * @param guildId Id of the guild to request members of**/
+        public Builder(long guildId) {
+            this.guildId = guildId;
+            this.query = "";
+            this.limit = 0;
+            this.userIds = null;
+            this.presences = false;
+            this.cache = true;
+        }
+
+        /**
+         * @param query Username prefix, empty string for all members**/
+        public Builder setQuery(String query) {
+            this.query = query;
+            this.userIds = null;
+            return this;
+        }
+
+        /**
+         * @param limit Maximum number of members, 0 for no limit (only with an empty query)**/
+        public Builder setLimit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * @param userIds Ids of the users to request (up to 100), replaces the query**/
+        public Builder setUserIds(long... userIds) {
+            if(userIds.length > 100) {
+                throw new IllegalArgumentException("Up to 100 user ids can be requested at once");
+            }
+
+            this.userIds = userIds;
+            this.query = null;
+            return this;
+        }
+
+        /**
+         * @param presences Whether to receive presences of the members (needs the GUILD_PRESENCES intent)**/
+        public Builder setPresences(boolean presences) {
+            this.presences = presences;
+            return this;
+        }
+
+        /**
+         * @param cache Whether received members are added to the entity cache (according to its member policy). Default is true.
+         * With the voice members policy, chunks only refresh members that are cached already**/
+        public Builder setCache(boolean cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * @return Built MemberRequest**/
+        public MemberRequest build() {
+            return new MemberRequest(guildId, query, limit, userIds, presences, cache);
+        }
+    }
+
+    public MemberRequest(long guildId, String query, int limit, long[] userIds, boolean presences, boolean cache) {
+        this.guildId = guildId;
+        this.query = query;
+        this.limit = limit;
+        this.userIds = userIds == null ? null : Arrays.copyOf(userIds, userIds.length);
+        this.presences = presences;
+        this.cache = cache;
+    }
+
+    public long getGuildId() {
+        return guildId;
+    }
+
+    /**
+     * @return Username prefix or null if members are requested by ids**/
+    public String getQuery() {
+        return query;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return Requested user ids or null if members are requested by a query**/
+    public long[] getUserIds() {
+        return userIds == null ? null : Arrays.copyOf(userIds, userIds.length);
+    }
+
+    public boolean isPresences() {
+        return presences;
+    }
+
+    public boolean isCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,312 @@
+package net.towerester.deasy.gateway;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.towerester.deasy.cache.EntityCache;
+import net.towerester.deasy.gateway.events.EventBus;
+import net.towerester.deasy.utils.SimpleHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs several gateway shards in one process. Every shard is a separate {@link DiscordClient} with its own
+ * connection, all shards share one http client (and so one rate limiter) and the gateway information**/
+public class ShardManager {
+    private static final Logger logger = LoggerFactory.getLogger(ShardManager.class);
+
+    private final Map<Integer, DiscordClient> shards;
+    private final int totalShards;
+    private final SimpleHttpClient httpClient;
+    private final GatewayInfo gatewayInfo;
+    private final EventBus eventBus;
+    private final EntityCache cache;
+    private final ScheduledExecutorService starter;
+
+    public static class Builder {
+        private final DiscordClient.Builder template;
+        private int totalShards;
+        private List<Integer> shardIds;
+
+        /**
+         * @param template Builder with the settings used for every shard (token, intents, listeners, etc...)**/
+        public Builder(DiscordClient.Builder template) {
+            this.template = template;
+            this.totalShards = 0;
+            this.shardIds = new ArrayList<>();
+        }
+
+        /**
+         * @param totalShards Total number of shards of the bot. If value is 0, use recommended shard count(default)**/
+        public Builder setTotalShards(int totalShards) {
+            this.totalShards = totalShards;
+            return this;
+        }
+
+        /**
+         * Run only the given shards in this process (for multi-process deployments). By default all shards are run
+         * @param shardIds Ids of the shards**/
+        public Builder setShardIds(List<Integer> shardIds) {
+            this.shardIds = new ArrayList<>(shardIds);
+            return this;
+        }
+
+        /**
+         * Run only the given shards in this process (for multi-process deployments). By default all shards are run
+         * @param shardIds Ids of the shards**/
+        public Builder setShardIds(Integer... shardIds) {
+            this.shardIds = new ArrayList<>(Arrays.asList(shardIds));
+            return this;
+        }
+
+        /**
+         * @return Built ShardManager**/
+        public ShardManager build() {
+            // The template isn't changed, so it can be reused
+            DiscordClient.Builder shard = template.copy();
+            SimpleHttpClient httpClient = shard.buildHttpClient();
+            GatewayInfo gatewayInfo = GatewayInfo.fetch(httpClient);
+            int total = totalShards == 0 ? gatewayInfo.getShards() : totalShards;
+            Map<Integer, DiscordClient> shards = new TreeMap<>();
+
+            EventBus eventBus = shard.buildEventBus();
+            EntityCache cache = shard.buildCache();
+
+            shard.setShardingEnabled(true)
+                    .setShardCount(total)
+                    .setGatewayInfo(gatewayInfo)
+                    .setIdentifyScheduler(new IdentifyScheduler(gatewayInfo))
+                    .setEventBus(eventBus)
+                    .setCache(cache);
+
+            List<Integer> ids = shardIds;
+            if(ids.isEmpty()) {
+                ids = new ArrayList<>();
+
+                for(int i = 0; i < total; i++) {
+                    ids.add(i);
+                }
+            }
+
+            for(int id: ids) {
+                shards.put(id, shard.setShardId(id).build());
+            }
+
+            return new ShardManager(shards, total, httpClient, gatewayInfo, eventBus, cache);
+        }
+    }
+
+    /**
+     * @param shards Shard clients by shard id
+     * @param totalShards Total number of shards of the bot
+     * @param httpClient Http client shared by the shards
+     * @param gatewayInfo Result of the GET /gateway/bot request
+     * @param eventBus Event bus shared by the shards
+     * @param cache Entity cache shared by the shards**/
+    public ShardManager(Map<Integer, DiscordClient> shards, int totalShards, SimpleHttpClient httpClient, GatewayInfo gatewayInfo, EventBus eventBus, EntityCache cache) {
+        this.shards = Collections.unmodifiableMap(new TreeMap<>(shards));
+        this.totalShards = totalShards;
+        this.httpClient = httpClient;
+        this.gatewayInfo = gatewayInfo;
+        this.eventBus = eventBus;
+        this.cache = cache;
+        this.starter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ShardManager starter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Connect all shards. Identifies are paced by the shared {@link IdentifyScheduler} (bucketed by max_concurrency),
+     * so connections are opened at once and this method doesn't block. If the session start limit is too low for
+     * all shards, the remaining session starts are used at once and only the other shards wait until the limit resets**/
+    public void start() {
+        int remaining = Math.max(0, gatewayInfo.getSessionStartRemaining());
+        long resetAfter = gatewayInfo.getSessionStartResetAfter();
+
+        if(remaining < shards.size()) {
+            logger.warn("Only {} session starts remaining for {} shards!Starting {} shards after {}ms", remaining, shards.size(), shards.size() - remaining, resetAfter);
+        }
+
+        int started = 0;
+
+        for(DiscordClient shard: shards.values()) {
+            long delay = started++ < remaining ? 0 : resetAfter;
+
+            starter.schedule(() -> {
+                logger.info("Starting shard {}/{}", shard.getShardId(), totalShards);
+                shard.start();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop all shards, the identify scheduler and the event dispatcher they share**/
+    public void stop() {
+        starter.shutdownNow();
+
+        for(DiscordClient shard: shards.values()) {
+            shard.stop();
+            // The scheduler is shared, shutting it down again does nothing
+            shard.getIdentifyScheduler().shutdown();
+        }
+
+        eventBus.getDispatcher().shutdown();
+    }
+
+    /**
+     * Block the current thread until all shards are ready
+     * @param timeout Maximum time to wait
+     * @param unit Time unit of the timeout
+     * @return False if the timeout elapsed before all shards became ready**/
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for(DiscordClient shard: shards.values()) {
+            long left = deadline - System.nanoTime();
+
+            while(shard.getSocket() == null && left > 0) {
+                // The shard wasn't started by the starter yet
+                Thread.sleep(Math.min(100, TimeUnit.NANOSECONDS.toMillis(left) + 1));
+                left = deadline - System.nanoTime();
+            }
+
+            if(left <= 0 || !shard.awaitReady(left, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Block the current thread until all shards are stopped**/
+    public void awaitShutdown() throws InterruptedException {
+        for(DiscordClient shard: shards.values()) {
+            shard.awaitShutdown();
+        }
+    }
+
+    /**
+     * @return Shard with the given id or null if it isn't run by this manager**/
+    public DiscordClient getShard(int shardId) {
+        return shards.get(shardId);
+    }
+
+    /**
+     * @return Shard that receives events of the guild or null if it isn't run by this manager**/
+    public DiscordClient getShardForGuild(long guildId) {
+        return shards.get(getShardId(guildId, totalShards));
+    }
+
+    /**
+     * Request guild members on the shard that receives events of the guild. Requests are paced per shard connection
+     * @param request Request parameters
+     * @return Publisher of member objects, completed after the last chunk**/
+    public Flow.Publisher<JsonNode> requestGuildMembers(MemberRequest request) {
+        DiscordClient shard = getShardForGuild(request.getGuildId());
+
+        if(shard == null) {
+            throw new IllegalArgumentException("Shard of guild " + request.getGuildId() + " isn't run by this manager");
+        }
+
+        return shard.requestGuildMembers(request);
+    }
+
+    /**
+     * @return Unmodifiable collection of shards run by this manager**/
+    public Collection<DiscordClient> getShards() {
+        return shards.values();
+    }
+
+    /**
+     * @return Connection state of every shard by shard id**/
+    public Map<Integer, ConnectionState> getStates() {
+        Map<Integer, ConnectionState> res = new TreeMap<>();
+
+        for(Map.Entry<Integer, DiscordClient> entry: shards.entrySet()) {
+            res.put(entry.getKey(), entry.getValue().getState());
+        }
+
+        return res;
+    }
+
+    /**
+     * @return Number of shards in the READY state**/
+    public int getReadyCount() {
+        int count = 0;
+
+        for(DiscordClient shard: shards.values()) {
+            if(shard.getState() == ConnectionState.READY) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return Average of the last heartbeat round trips of all shards (in milliseconds) or -1 if no shard has one yet**/
+    public double getAveragePing() {
+        long sum = 0;
+        int count = 0;
+
+        for(DiscordClient shard: shards.values()) {
+            if(shard.getPing() >= 0) {
+                sum += shard.getPing();
+                count++;
+            }
+        }
+
+        return count == 0 ? -1 : (double) sum / count;
+    }
+
+    /**
+     * @return Total number of shards of the bot (including shards run by other processes)**/
+    public int getTotalShards() {
+        return totalShards;
+    }
+
+    /**
+     * @return Http client shared by the shards**/
+    public SimpleHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return Event bus shared by the shards, subscriptions receive events of every shard**/
+    public EventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * @return Entity cache shared by the shards, holds entities of every shard**/
+    public EntityCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return Result of the GET /gateway/bot request**/
+    public GatewayInfo getGatewayInfo() {
+        return gatewayInfo;
+    }
+
+    /**
+     * @param guildId Guild id
+     * @param totalShards Total number of shards
+     * @return Id of the shard that receives events of the guild**/
+    public static int getShardId(long guildId, int totalShards) {
+        return (int) ((guildId >>> 22) % totalShards);
+    }
+}
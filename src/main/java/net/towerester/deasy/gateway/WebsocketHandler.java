@@ -1,99 +1,163 @@
 package net.towerester.deasy.gateway;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import net.towerester.deasy.Constants;
-import net.towerester.deasy.gateway.entities.Activity;
-import net.towerester.deasy.gateway.entities.DiscordIntent;
-import net.towerester.deasy.gateway.entities.DiscordStatus;
-import net.towerester.deasy.gateway.events.EventListener;
+import net.towerester.deasy.entities.Entities;
+import net.towerester.deasy.entities.Ready;
+import net.towerester.deasy.gateway.etf.EtfEncoder;
+import net.towerester.deasy.gateway.events.DispatchEvent;
+import net.towerester.deasy.gateway.events.EventBus;
 import net.towerester.deasy.gateway.events.HelloEvent;
 import net.towerester.deasy.gateway.events.ReadyEvent;
-import org.java_websocket.WebSocket;
 import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ServerHandshake;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
+import java.io.IOException;
 import java.net.URI;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
 
-public class WebsocketHandler extends WebSocketClient {
+public class WebsocketHandler extends WebSocketClient implements GatewayDraft.Listener {
     private final DiscordClient client;
-    private volatile long currentTime;
+    private volatile long heartbeatSentAt;
+    private volatile boolean heartbeatAcked;
+    private volatile ScheduledFuture<?> heartbeat;
+    private final ZlibStreamDecoder decoder;
+    private final GatewaySendQueue sendQueue;
+    private final HeartbeatPayload heartbeatPayload;
+    private final TextFrame frame;
+    private final BinaryFrame binaryFrame;
+    private final boolean etf;
     private static final Logger logger = LoggerFactory.getLogger(WebsocketHandler.class);
 
     public WebsocketHandler(URI serverUri, DiscordClient client) {
-        super(serverUri);
+        super(serverUri, new GatewayDraft());
         this.client = client;
+        this.decoder = client.isCompress() ? new ZlibStreamDecoder() : null;
+        this.etf = client.getEncoding() == GatewayEncoding.ETF;
+        this.heartbeatPayload = new HeartbeatPayload(etf);
+        this.frame = new TextFrame();
+        this.binaryFrame = new BinaryFrame();
+        this.sendQueue = new GatewaySendQueue(this::write);
     }
 
-    private void identify() {
-        ObjectNode node = Constants.MAPPER.createObjectNode();
-        node.put("op", 2);
+    /**
+     * Write a frame from the array, a text frame with json or a binary frame with etf. Called by the send queue
+     * with its lock held, so the frame objects are reused. Payloads are queued in the encoding of the connection already**/
+    private void write(byte[] payload, int length) {
+        DataFrame res = etf ? binaryFrame : frame;
 
-        ObjectNode identify = Constants.MAPPER.createObjectNode();
-        identify.put("token", client.getToken());
-
-        ObjectNode properties = Constants.MAPPER.createObjectNode();
-        properties.put("os", System.getProperty("os.name"));
-        properties.put("browser", "Discordium");
-        properties.put("device", "Discordium");
+        res.setPayload(ByteBuffer.wrap(payload, 0, length));
+        // The draft copies the payload into the masked output buffer, the array can be reused after the call
+        sendFrame(res);
+    }
 
-        identify.put("properties", properties);
-        identify.put("compress", client.isCompress());
+    /**
+     * Queue a json frame, it's sent when the gateway send limit allows. With the etf encoding it's converted
+     * to a term once, when it's queued**/
+    @Override
+    public void send(String text) {
+        if(!etf) {
+            sendQueue.send(text);
+            return;
+        }
 
-        ArrayNode arr = Constants.MAPPER.createArrayNode();
-        arr.add(0);
-        if(!client.isShardingEnabled()) {
-            arr.add(1);
-        } else {
-            if(client.getShardCount() == 0) {
-                arr.add(client.getRecommendedShardCount());
-            } else {
-                arr.add(client.getShardCount());
-            }
+        try {
+            sendQueue.send(EtfEncoder.encode(Constants.MAPPER.readTree(text)));
+        } catch(IOException e) {
+            logger.error("Can't encode payload as etf!", e);
         }
+    }
+
+    /**
+     * Queue a presence update, replacing the update that is still waiting for the send limit
+     * @param payload Update in the encoding of the connection, see {@link net.towerester.deasy.gateway.entities.Presence#toPayload(GatewayEncoding)}**/
+    public void sendPresence(byte[] payload) {
+        sendQueue.sendPresence(payload);
+    }
 
-        identify.put("shard", arr);
+    /**
+     * @return Outbound frame queue of this connection**/
+    public GatewaySendQueue getSendQueue() {
+        return sendQueue;
+    }
 
-        int code = 0;
-        for(DiscordIntent intent: client.getIntents()) {
-            code += intent.getCode();
+    /**
+     * @return Whether the identify was sent, it isn't if the connection was closed while it was waiting**/
+    private boolean identify() {
+        if(!isOpen()) {
+            logger.warn("Connection was closed before identify");
+            return false;
         }
 
-        identify.put("intents", code);
+        client.getSession().reset();
+        client.getSession().setState(ConnectionState.IDENTIFYING);
 
-        ObjectNode presence = Constants.MAPPER.createObjectNode();
-        ArrayNode a = Constants.MAPPER.createArrayNode();
-        for(Activity el: client.getActivities()) {
-            a.add(el.toJson());
+        sendQueue.sendPriority(client.getIdentifyPayload());
+
+        if(client.isDebug()) {
+            logger.debug("Sent identify packet!");
         }
-        presence.put("activities", a);
-        presence.put("status", (client.getStatus() == DiscordStatus.ONLINE ? "online" : (client.getStatus() == DiscordStatus.OFFLINE ? "offline" : (client.getStatus() == DiscordStatus.INVISIBLE ? "invisible" : (client.getStatus() == DiscordStatus.IDLE ? "idle" : "dnd")))));
-        presence.putNull("since");
-        presence.put("afk", false);
 
-        identify.put("presence", presence);
-        node.put("d", identify);
+        return true;
+    }
 
-        String res = "";
-        try {
-            res = Constants.MAPPER.writeValueAsString(node);
-        } catch(Exception e) {
-           logger.error("Can't write json!", e);
+    private void startHeartbeat(int heartbeatInterval) {
+        stopHeartbeat();
+
+        heartbeatAcked = true;
+        heartbeat = HeartbeatScheduler.getInstance().schedule(() -> {
+            if(!heartbeatAcked) {
+                // No ACK since the last heartbeat, the connection is a zombie
+                logger.warn("Heartbeat wasn't acknowledged!Reconnecting...");
+                stopHeartbeat();
+
+                if(client.getSocket() == this) {
+                    client.reconnect(false);
+                }
+
+                return;
+            }
+
+            heartbeatAcked = false;
+            sendHeartbeat();
+        }, heartbeatInterval);
+    }
+
+    /**
+     * Stop heartbeating on this connection**/
+    void stopHeartbeat() {
+        ScheduledFuture<?> current = heartbeat;
+
+        if(current != null) {
+            current.cancel(false);
+            heartbeat = null;
+        }
+    }
+
+    private void sendHeartbeat() {
+        if(!isOpen()) {
+            return;
         }
 
-        client.getSocket().send(res);
+        heartbeatSentAt = System.nanoTime();
+
+        // Heartbeats come from the scheduler and from op 1 requests of the reader thread
+        synchronized(heartbeatPayload) {
+            int length = heartbeatPayload.write(client.getLastSequence());
+            sendQueue.sendPriority(heartbeatPayload.getBuffer(), length);
+        }
 
         if(client.isDebug()) {
-            logger.debug("Sent identify packet!\nCalculated intents: {}", code);
+            logger.debug("Sent heartbeat");
         }
     }
 
@@ -113,98 +177,187 @@ public class WebsocketHandler extends WebSocketClient {
             body.put("seq", client.getLastSequence());
 
             node.put("d", body);
-            String res = "";
+
             try {
-                res = Constants.MAPPER.writeValueAsString(node);
+                sendQueue.sendPriority(etf ? EtfEncoder.encode(node) : Constants.MAPPER.writeValueAsBytes(node));
             } catch(Exception e) {
-                logger.error("Can't write json!", e);
+                logger.error("Can't write resume payload!", e);
             }
-
-            client.getSocket().send(res);
         }
     }
 
+    /**
+     * Text messages are read by {@link #onText(byte[], int, int)}, this is only called if another draft is used**/
     @Override
     public void onMessage(String message) {
-        currentTime = System.currentTimeMillis();
-        client.getSocket().sendPing();
-
         if(client.isDebug()) {
             logger.debug("Received websocket message: \n\t{}", message);
         }
 
-        JsonNode json = null;
+        GatewayPayload payload = null;
+        try {
+            payload = GatewayPayload.parse(message);
+        } catch(Exception e) {
+            logger.error("Can't read json!", e);
+        }
+
+        handle(payload);
+    }
+
+    /**
+     * Read a text message from the UTF-8 bytes of the frame, without decoding it to a string first**/
+    @Override
+    public void onText(byte[] buffer, int offset, int length) {
+        if(client.isDebug()) {
+            logger.debug("Received websocket message: \n\t{}", new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+
+        GatewayPayload payload = null;
         try {
-            json = Constants.MAPPER.readTree(message);
+            payload = GatewayPayload.parse(buffer, offset, length);
         } catch(Exception e) {
             logger.error("Can't read json!", e);
         }
 
-        if(json == null) {
+        handle(payload);
+    }
+
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        if(decoder == null && !etf) {
+            logger.warn("Received binary message, but compression is disabled");
+            return;
+        }
+
+        GatewayPayload payload = null;
+        try {
+            if(decoder == null) {
+                // Uncompressed etf, the frame is read in place
+                if(!bytes.hasArray()) {
+                    ByteBuffer copy = ByteBuffer.allocate(bytes.remaining());
+                    copy.put(bytes).flip();
+                    bytes = copy;
+                }
+
+                payload = GatewayPayload.parseEtf(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            } else {
+                if(!decoder.decode(bytes)) {
+                    return;
+                }
+
+                if(etf) {
+                    payload = GatewayPayload.parseEtf(decoder.getBuffer(), 0, decoder.getLength());
+                } else {
+                    if(client.isDebug()) {
+                        logger.debug("Received websocket message: \n\t{}", new String(decoder.getBuffer(), 0, decoder.getLength(), StandardCharsets.UTF_8));
+                    }
+
+                    payload = GatewayPayload.parse(decoder.getBuffer(), 0, decoder.getLength());
+                }
+            }
+
+            if(etf && client.isDebug()) {
+                logger.debug("Received websocket message: op {}, t {}, s {}", payload.getOp(), payload.getType(), payload.getSequence());
+            }
+        } catch(DataFormatException e) {
+            // The zlib stream can't be recovered, every next frame would fail too
+            logger.error("Corrupt zlib stream!Reconnecting...", e);
+            client.reconnect(false);
+            return;
+        } catch(Exception e) {
+            logger.error("Can't decompress or read {}!", etf ? "etf" : "json", e);
+        }
+
+        handle(payload);
+    }
+
+    /**
+     * @return Whether the data of the dispatch event is needed. Data of other events is skipped without building a tree**/
+    private boolean isHandled(String eventName) {
+        return eventName.equals("READY") || eventName.equals("RESUMED") || client.getCache().isHandled(eventName) || client.getMemberRequests().isHandled(eventName) || client.getEventBus().hasSubscribers(eventName);
+    }
+
+    private void handle(GatewayPayload payload) {
+        if(payload == null) {
             logger.warn("Event json is null");
             return;
         }
 
-        int op = json.get("op").asInt();
-        String eventName = "";
-        if(!json.get("t").isNull()) {
-            eventName = json.get("t").asText();
+        try {
+            handlePayload(payload);
+        } catch(IOException e) {
+            logger.error("Can't read event data!", e);
         }
+    }
+
+    private void handlePayload(GatewayPayload payload) throws IOException {
+        int op = payload.getOp();
+        String eventName = payload.getType() == null ? "" : payload.getType();
 
         switch (op) {
             case 0 -> {
-                if(!json.get("s").isNull()) {
+                // Dispatches replayed by a resume that were processed already are dropped, so none is delivered twice
+                if(payload.getSequence() != -1 && !client.getSession().advanceSequence(payload.getSequence())) {
+                    if(client.isDebug()) {
+                        logger.debug("Dropped {} with old sequence {}", eventName, payload.getSequence());
+                    }
+
+                    return;
+                }
+
+                if(!isHandled(eventName)) {
+                    return;
+                }
+
+                GuildMemberRequests memberRequests = client.getMemberRequests();
+                boolean memberRequest = memberRequests.isHandled(eventName);
+
+                // The cache is updated before handlers are called, so they see the new state
+                if(client.getCache().isHandled(eventName) && (!memberRequest || memberRequests.isCached(payload.getData()))) {
                     try {
-                        Field f = client.getClass().getDeclaredField("lastSeq");
-                        f.setAccessible(true);
-                        f.set(client, json.get("s").asInt());
-                    } catch(Exception e) {
-                        logger.error("Can't access lastSeq variable!", e);
+                        client.getCache().handle(eventName, payload.getData());
+                    } catch(RuntimeException e) {
+                        logger.error("Can't update cache from {} event!", eventName, e);
+                    }
+                }
+
+                if(memberRequest) {
+                    if(eventName.equals("RATE_LIMITED")) {
+                        memberRequests.handleRateLimited(payload.getData());
+                    } else {
+                        memberRequests.handleChunk(payload.getData());
                     }
                 }
             }
             case 10 -> {
                 // Hello event
-                int heartbeatInterval = json.get("d").get("heartbeat_interval").asInt();
-
-                try {
-                    Field f = client.getClass().getDeclaredField("heartbeatExecutor");
-                    f.setAccessible(true);
-                    f.set(client, Executors.newScheduledThreadPool(1));
-
-                    ((ScheduledExecutorService) f.get(client)).scheduleAtFixedRate(() -> {
-                        ObjectNode node = Constants.MAPPER.createObjectNode();
-                        node.put("op", 1);
-
-                        if(client.getLastSequence() == 0) {
-                            node.putNull("d");
-                        } else {
-                            node.put("d", client.getLastSequence());
-                        }
-
-                        String res = "";
-                        try {
-                            res = Constants.MAPPER.writeValueAsString(node);
-                        } catch(Exception e) {
-                            logger.error("Can't write json!", e);
-                        }
-
-                        client.getSocket().send(res);
-
-                        if(client.isDebug()) {
-                            logger.debug("Sent heartbeat");
-                        }
-                    }, 0, (heartbeatInterval - 2000), TimeUnit.MILLISECONDS);
-                } catch(Exception e) {
-                    logger.error("Can't access heartbeat executor variable!", e);
-                }
+                int heartbeatInterval = payload.getData().get("heartbeat_interval").asInt();
+
+                startHeartbeat(heartbeatInterval);
 
-                for(EventListener listener: client.getEventListeners()) {
-                    listener.onHello(new HelloEvent(client, heartbeatInterval));
+                if(client.getEventBus().hasSubscribers(EventBus.HELLO)) {
+                    client.getEventBus().publish(EventBus.HELLO, new HelloEvent(client, heartbeatInterval));
                 }
 
                 if(!client.isReconnecting()) {
-                    identify();
+                    long delay = client.getIdentifyScheduler().schedule(client.getShardId(), this::identify);
+
+                    if(client.isDebug() && delay > 0) {
+                        logger.debug("Identify is delayed for {}ms", delay);
+                    }
+                }
+            }
+            case 1 -> {
+                // Heartbeat request event
+                sendHeartbeat();
+            }
+            case 11 -> {
+                // Heartbeat ACK event
+                heartbeatAcked = true;
+                long sentAt = heartbeatSentAt;
+
+                if(sentAt != 0) {
+                    client.getLatency().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentAt));
                 }
             }
             case 7 -> {
@@ -214,50 +367,32 @@ public class WebsocketHandler extends WebSocketClient {
                     logger.debug("Received reconnect event!Reconnecting...");
                 }
 
-                reconnect();
+                // Discord asks to resume right away, no backoff
+                client.reconnect(false);
             }
             case 9 -> {
                 // Invalid session event
-                boolean canReconnect = json.get("d").asBoolean();
+                boolean canReconnect = payload.getData().asBoolean();
 
                 logger.warn("Received invalid session event!");
-                if(canReconnect) {
-                    logger.debug("Trying to reconnect...");
-                    client.reconnect(false);
-                } else {
-                    if(client.isReconnecting()) {
-                        logger.debug("Reconnect was unsuccessfully");
-                        logger.debug("Restarting client...");
-                        client.reconnect(true);
-                    } else {
-                        logger.error("Stopping currently active client...");
-                        client.stop();
-                    }
-                }
+                stopHeartbeat();
+
+                // A new identify must wait a few seconds, the backoff delay covers it
+                client.scheduleReconnect(canReconnect);
             }
         }
 
-        JsonNode body = json.get("d");
         switch (eventName) {
             case "READY" -> {
-                int apiVersion = body.get("v").asInt();
-                String sessionId = body.get("session_id").asText();
-                String resumeUrl = body.get("resume_gateway_url").asText();
-
-                try {
-                    Field sessionIdF = client.getClass().getDeclaredField("sessionId");
-                    sessionIdF.setAccessible(true);
-                    sessionIdF.set(client, sessionId);
-
-                    Field resumeUrlF = client.getClass().getDeclaredField("resumeUrl");
-                    resumeUrlF.setAccessible(true);
-                    resumeUrlF.set(client, resumeUrl);
-                } catch(Exception e) {
-                    logger.error("Can't access sessionId and resumeUrl variables!", e);
-                }
+                // READY carries the unavailable guilds and private channels, subscribers build the tree if they need it
+                Ready ready = payload.getData(Entities.READY);
+
+                client.getSession().start(ready.sessionId(), ready.resumeGatewayUrl());
+                client.getSession().setState(ConnectionState.READY);
+                client.markReady();
 
-                for(EventListener listener: client.getEventListeners()) {
-                    listener.onReady(new ReadyEvent(client, apiVersion, sessionId, resumeUrl));
+                if(client.getEventBus().hasSubscribers(EventBus.READY)) {
+                    client.getEventBus().publish(EventBus.READY, new ReadyEvent(client, payload.detach(), ready.v(), ready.sessionId(), ready.resumeGatewayUrl()));
                 }
             }
             case "RESUMED" -> {
@@ -266,41 +401,58 @@ public class WebsocketHandler extends WebSocketClient {
                         logger.debug("Successfully reconnected!");
                     }
 
-                    try {
-                        Field f = client.getClass().getDeclaredField("reconnecting");
-                        f.setAccessible(true);
-                        f.set(client, false);
-                    } catch(Exception e) {
-                        logger.error("Can't access reconnecting variable!", e);
-                    }
+                    client.getSession().setState(ConnectionState.READY);
+                    client.markReady();
+                    client.checkRestoredCache();
+                }
+
+                publish(payload, eventName);
+            }
+            default -> {
+                if(op == 0) {
+                    publish(payload, eventName);
                 }
             }
         }
     }
 
-    @Override
-    public void onClose(int code, String reason, boolean remote) {
-        if(!reason.equals("Close")) {
-            logger.error("Closed websocket connection!\nErr code: {}\nReason: {}", code, reason);
-            client.stop();
+    private void publish(GatewayPayload payload, String eventName) throws IOException {
+        if(client.getEventBus().hasSubscribers(eventName)) {
+            // The payload may reference the buffer reused for the next message, handlers get a copy of the raw data
+            GatewayPayload data = payload.detach();
+            // Id of the guild the event belongs to or 0, used to keep events of one guild in order
+            long guildId = data.getDataSnowflake("guild_id", eventName.startsWith("GUILD_") ? "id" : null);
+
+            client.getEventBus().publish(guildId, eventName, new DispatchEvent(client, eventName, data, guildId));
         }
     }
 
     @Override
-    public void onError(Exception ex) {
+    public void onClose(int code, String reason, boolean remote) {
+        stopHeartbeat();
+        sendQueue.close();
 
+        if(decoder != null) {
+            decoder.close();
+        }
+
+        if(client.getSocket() != this || client.getState() == ConnectionState.DISCONNECTED) {
+            // Old connection replaced by a reconnect or the client was stopped
+            return;
+        }
+
+        switch (CloseAction.of(code)) {
+            case RESUME -> client.scheduleReconnect(true);
+            case IDENTIFY -> client.scheduleReconnect(false);
+            case STOP -> {
+                logger.error("Closed websocket connection!\nErr code: {}\nReason: {}", code, reason);
+                client.stop();
+            }
+        }
     }
 
     @Override
-    public void onWebsocketPong(WebSocket conn, Framedata f) {
-        long curr = System.currentTimeMillis();
+    public void onError(Exception ex) {
 
-        try {
-            Field pingF = client.getClass().getDeclaredField("ping");
-            pingF.setAccessible(true);
-            ((AtomicInteger) pingF.get(client)).set((int) (curr - currentTime));
-        } catch(Exception e) {
-            logger.error("Can't access ping variable!", e);
-        }
     }
 }
@@ -0,0 +1,114 @@
+package net.towerester.deasy.gateway;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decoder for the zlib-stream transport compression of the Discord gateway. The whole connection is one zlib stream,
+ * so a single Inflater is kept for the connection lifetime. A message may be split into several binary frames,
+ * it is complete when the received data ends with the zlib flush suffix (00 00 FF FF).
+ * Input and output buffers are reused between messages and only grow when a bigger message arrives.
+ * A corrupt stream can't be recovered, after a {@link DataFormatException} the connection must be replaced**/
+public class ZlibStreamDecoder {
+    private static final int ZLIB_SUFFIX = 0x0000FFFF;
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private final Inflater inflater;
+    private byte[] input;
+    private int inputLength;
+    private byte[] output;
+    private int outputLength;
+
+    public ZlibStreamDecoder() {
+        this.inflater = new Inflater();
+        this.input = new byte[INITIAL_BUFFER_SIZE];
+        this.inputLength = 0;
+        this.output = new byte[INITIAL_BUFFER_SIZE * 4];
+        this.outputLength = 0;
+    }
+
+    /**
+     * Append a binary frame to the stream and decompress it if the message is complete
+     * @param frame Binary frame received from the gateway
+     * @return True if the message is complete and can be read with {@link #getBuffer()} and {@link #getLength()}
+     * @throws DataFormatException If the stream is corrupt, the decoder can't be used after it**/
+    public boolean decode(ByteBuffer frame) throws DataFormatException {
+        int size = frame.remaining();
+
+        if(inputLength + size > input.length) {
+            input = grow(input, inputLength, inputLength + size);
+        }
+
+        frame.get(input, inputLength, size);
+        inputLength += size;
+
+        if(inputLength < 4 || getSuffix() != ZLIB_SUFFIX) {
+            return false;
+        }
+
+        try {
+            inflater.setInput(input, 0, inputLength);
+            outputLength = 0;
+
+            while(true) {
+                if(outputLength == output.length) {
+                    output = grow(output, outputLength, output.length * 2);
+                }
+
+                int read = inflater.inflate(output, outputLength, output.length - outputLength);
+                outputLength += read;
+
+                if(read == 0) {
+                    if(inflater.needsDictionary()) {
+                        throw new DataFormatException("Zlib stream requires a preset dictionary");
+                    }
+
+                    if(outputLength < output.length) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            // A corrupt message isn't kept, so it doesn't grow the buffer with the next frames
+            inputLength = 0;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Number of received bytes of an incomplete message**/
+    int getPendingLength() {
+        return inputLength;
+    }
+
+    /**
+     * @return Buffer with the last decompressed message. It is reused, so the content is valid only until the next decode call**/
+    public byte[] getBuffer() {
+        return output;
+    }
+
+    /**
+     * @return Length of the last decompressed message**/
+    public int getLength() {
+        return outputLength;
+    }
+
+    /**
+     * Release native resources of the inflater. The decoder can't be used after this**/
+    public void close() {
+        inflater.end();
+    }
+
+    private int getSuffix() {
+        return ((input[inputLength - 4] & 0xFF) << 24) | ((input[inputLength - 3] & 0xFF) << 16) | ((input[inputLength - 2] & 0xFF) << 8) | (input[inputLength - 1] & 0xFF);
+    }
+
+    private static byte[] grow(byte[] buffer, int length, int minCapacity) {
+        byte[] res = new byte[Math.max(minCapacity, buffer.length * 2)];
+        System.arraycopy(buffer, 0, res, 0, length);
+
+        return res;
+    }
+}
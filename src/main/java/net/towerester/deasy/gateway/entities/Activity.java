@@ -32,12 +32,24 @@ public class Activity {
     public ObjectNode toJson() {
         ObjectNode node = Constants.MAPPER.createObjectNode();
         node.put("name", name);
-        node.put("type", (type == Type.PLAYING ? 0 : (type == Type.STREAMING ? 1 : (type == Type.LISTENING ? 2 : (type == Type.WATCHING ? 3 : 5)))));
+        node.put("type", type.getCode());
 
         return node;
     }
 
     public static enum Type {
-        PLAYING, STREAMING, LISTENING, WATCHING, COMPETING;
+        PLAYING(0), STREAMING(1), LISTENING(2), WATCHING(3), COMPETING(5);
+
+        private final int code;
+
+        Type(int code) {
+            this.code = code;
+        }
+
+        /**
+         * @return Activity type as it's written in gateway payloads**/
+        public int getCode() {
+            return code;
+        }
     }
 }
@@ -1,5 +1,17 @@
 package net.towerester.deasy.gateway.entities;
 
 public enum DiscordStatus {
-    ONLINE, OFFLINE, INVISIBLE, IDLE, DO_NOT_DISTURB
+    ONLINE("online"), OFFLINE("offline"), INVISIBLE("invisible"), IDLE("idle"), DO_NOT_DISTURB("dnd");
+
+    private final String value;
+
+    DiscordStatus(String value) {
+        this.value = value;
+    }
+
+    /**
+     * @return Status as it's written in gateway payloads**/
+    public String getValue() {
+        return value;
+    }
 }
@@ -3,7 +3,11 @@ package net.towerester.deasy.gateway.entities;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import net.towerester.deasy.Constants;
+import net.towerester.deasy.gateway.GatewayEncoding;
+import net.towerester.deasy.gateway.etf.EtfEncoder;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -11,10 +15,15 @@ import java.util.List;
 public class Presence {
     private final List<Activity> activities;
     private DiscordStatus status;
+    // Serialized op 3 frames, dropped when the presence changes
+    private volatile byte[] payload;
+    private volatile byte[] etfPayload;
 
     public Presence() {
         this.status = DiscordStatus.ONLINE;
         this.activities = new ArrayList<>();
+        this.payload = null;
+        this.etfPayload = null;
     }
 
     /**
@@ -33,12 +42,16 @@ public class Presence {
      * Add activity to list**/
     public final void addActivity(Activity activity) {
         this.activities.add(activity);
+        this.payload = null;
+        this.etfPayload = null;
     }
 
     /**
      * Set Online Status for Presence**/
     public final void setStatus(DiscordStatus status) {
         this.status = status;
+        this.payload = null;
+        this.etfPayload = null;
     }
 
     /**
@@ -53,9 +66,47 @@ public class Presence {
         }
 
         node.put("activities", arr);
-        node.put("status", (status == DiscordStatus.ONLINE ? "online" : (status == DiscordStatus.OFFLINE ? "offline" : (status == DiscordStatus.INVISIBLE ? "invisible" : (status == DiscordStatus.IDLE ? "idle" : "dnd")))));
+        node.put("status", status.getValue());
         node.put("afk", false);
 
         return node;
     }
+
+    /**
+     * Presence update frame (op 3) as UTF-8 json. The frame is serialized once and reused until the presence changes,
+     * so the returned array must not be modified
+     * @return Serialized presence update**/
+    public final byte[] toPayload() {
+        return toPayload(GatewayEncoding.JSON);
+    }
+
+    /**
+     * Presence update frame (op 3) in the encoding of the connection. Frames of both encodings are cached
+     * until the presence changes, so the returned array must not be modified
+     * @param encoding Encoding of the connection
+     * @return Serialized presence update**/
+    public final byte[] toPayload(GatewayEncoding encoding) {
+        boolean etf = encoding == GatewayEncoding.ETF;
+        byte[] res = etf ? etfPayload : payload;
+
+        if(res == null) {
+            ObjectNode node = Constants.MAPPER.createObjectNode();
+            node.put("op", 3);
+            node.set("d", toJson());
+
+            try {
+                res = etf ? EtfEncoder.encode(node) : Constants.MAPPER.writeValueAsBytes(node);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if(etf) {
+                etfPayload = res;
+            } else {
+                payload = res;
+            }
+        }
+
+        return res;
+    }
 }
@@ -0,0 +1,28 @@
+package net.towerester.deasy.gateway.etf;
+
+/**
+ * Tags of the Erlang external term format used by the gateway with encoding=etf**/
+public final class Etf {
+    public static final int VERSION = 131;
+    public static final int NEW_FLOAT = 70;
+    public static final int COMPRESSED = 80;
+    public static final int SMALL_INTEGER = 97;
+    public static final int INTEGER = 98;
+    public static final int FLOAT = 99;
+    public static final int ATOM = 100;
+    public static final int SMALL_TUPLE = 104;
+    public static final int LARGE_TUPLE = 105;
+    public static final int NIL = 106;
+    public static final int STRING = 107;
+    public static final int LIST = 108;
+    public static final int BINARY = 109;
+    public static final int SMALL_BIG = 110;
+    public static final int LARGE_BIG = 111;
+    public static final int SMALL_ATOM = 115;
+    public static final int MAP = 116;
+    public static final int ATOM_UTF8 = 118;
+    public static final int SMALL_ATOM_UTF8 = 119;
+
+    private Etf() {
+    }
+}
@@ -0,0 +1,404 @@
+package net.towerester.deasy.gateway.etf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader of the Erlang external term format, terms are converted to the json trees the json encoding produces:
+ * maps to objects, lists and tuples to arrays, binaries and atoms to strings, nil, true and false atoms
+ * to null and booleans. Snowflakes arrive as integers instead of strings, {@link JsonNode#asText()}
+ * and {@link net.towerester.deasy.utils.Snowflake#parse(JsonNode, String)} read both.
+ * Lists of small integers are sent as STRING_EXT by Erlang, they are read as arrays of numbers too.
+ * The decoder reads a heap buffer in place, {@link #position()} is an index in {@link #array()}**/
+public class EtfDecoder {
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final int KEY_CACHE_SIZE = 1024;
+    private static final int KEY_MAX_LENGTH = 32;
+    // Map keys repeat in every payload, they are shared instead of creating a string per key.
+    // Racy writes are harmless, a slot either has a complete string or a miss creates one again
+    private static final String[] KEYS = new String[KEY_CACHE_SIZE];
+
+    private final ByteBuffer buffer;
+
+    private EtfDecoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @param data Buffer with the term, starting with the version byte
+     * @param offset Offset of the term in the buffer
+     * @param length Length of the term
+     * @return Decoded term**/
+    public static JsonNode decode(byte[] data, int offset, int length) throws IOException {
+        return open(data, offset, length).readValue();
+    }
+
+    /**
+     * @param data Binary frame with the term, starting with the version byte
+     * @return Decoded term**/
+    public static JsonNode decode(ByteBuffer data) throws IOException {
+        return open(data).readValue();
+    }
+
+    /**
+     * Decode a term without the version byte, for example a part of a term remembered by {@link #position()}
+     * @param data Buffer with the term
+     * @param offset Offset of the term in the buffer
+     * @param length Length of the term
+     * @return Decoded term**/
+    public static JsonNode decodeTerm(byte[] data, int offset, int length) throws IOException {
+        return openTerm(data, offset, length).readValue();
+    }
+
+    /**
+     * Open a term without the version byte, to read a part of a term remembered by {@link #position()} step by step
+     * @param data Buffer with the term
+     * @param offset Offset of the term in the buffer
+     * @param length Length of the term
+     * @return Decoder positioned at the term**/
+    public static EtfDecoder openTerm(byte[] data, int offset, int length) {
+        return new EtfDecoder(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Read the version byte and inflate the term if it's compressed
+     * @param data Buffer with the term
+     * @param offset Offset of the term in the buffer
+     * @param length Length of the term
+     * @return Decoder positioned at the first term**/
+    public static EtfDecoder open(byte[] data, int offset, int length) throws IOException {
+        EtfDecoder decoder = new EtfDecoder(ByteBuffer.wrap(data, offset, length));
+
+        if(decoder.readTag() != Etf.VERSION) {
+            throw new IOException("Unsupported term format version");
+        }
+
+        if(decoder.peekTag() == Etf.COMPRESSED) {
+            return decoder.inflate();
+        }
+
+        return decoder;
+    }
+
+    /**
+     * @param data Binary frame with the term. A direct buffer is copied to the heap
+     * @return Decoder positioned at the first term**/
+    public static EtfDecoder open(ByteBuffer data) throws IOException {
+        if(data.hasArray()) {
+            return open(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+
+        byte[] copy = new byte[data.remaining()];
+        data.get(copy);
+
+        return open(copy, 0, copy.length);
+    }
+
+    private EtfDecoder inflate() throws IOException {
+        buffer.get();
+        int size = buffer.getInt();
+        byte[] res = new byte[size];
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(buffer.array(), buffer.position(), buffer.remaining());
+
+            if(inflater.inflate(res) != size) {
+                throw new IOException("Compressed term is truncated");
+            }
+        } catch(DataFormatException e) {
+            throw new IOException("Can't inflate compressed term", e);
+        } finally {
+            inflater.end();
+        }
+
+        return new EtfDecoder(ByteBuffer.wrap(res));
+    }
+
+    /**
+     * @return Buffer the decoder reads**/
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    /**
+     * @return Index of the next term in {@link #array()}**/
+    public int position() {
+        return buffer.position();
+    }
+
+    /**
+     * @return Tag of the next term**/
+    public int peekTag() {
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    /**
+     * @return Whether the next term is a map**/
+    public boolean isMap() {
+        return peekTag() == Etf.MAP;
+    }
+
+    /**
+     * @return Whether the next term is a map, a list or a tuple**/
+    public boolean isStructStart() {
+        int tag = peekTag();
+
+        return tag == Etf.MAP || tag == Etf.LIST || tag == Etf.NIL || tag == Etf.STRING || tag == Etf.SMALL_TUPLE || tag == Etf.LARGE_TUPLE;
+    }
+
+    /**
+     * @return Number of key-value pairs of the map that is the next term**/
+    public int readMapHeader() throws IOException {
+        int tag = readTag();
+
+        if(tag != Etf.MAP) {
+            throw new IOException("Expected map, got tag " + tag);
+        }
+
+        return buffer.getInt();
+    }
+
+    /**
+     * @return Map key as a string. Keys are atoms or binaries, other terms are converted to their text**/
+    public String readKey() throws IOException {
+        return switch (peekTag()) {
+            case Etf.ATOM, Etf.ATOM_UTF8, Etf.SMALL_ATOM, Etf.SMALL_ATOM_UTF8, Etf.BINARY -> {
+                int tag = readTag();
+                yield readKey(tag == Etf.BINARY ? buffer.getInt() : readAtomLength(tag), tag == Etf.ATOM || tag == Etf.SMALL_ATOM);
+            }
+            default -> readValue().asText();
+        };
+    }
+
+    /**
+     * @return Next term**/
+    public JsonNode readValue() throws IOException {
+        int tag = readTag();
+
+        switch (tag) {
+            case Etf.SMALL_INTEGER -> {
+                return NODES.numberNode(buffer.get() & 0xFF);
+            }
+            case Etf.INTEGER -> {
+                return NODES.numberNode(buffer.getInt());
+            }
+            case Etf.NEW_FLOAT -> {
+                return NODES.numberNode(buffer.getDouble());
+            }
+            case Etf.FLOAT -> {
+                // Old float format, the value is a 31 bytes long zero padded string
+                return NODES.numberNode(Double.parseDouble(readString(31, true).trim()));
+            }
+            case Etf.ATOM, Etf.ATOM_UTF8, Etf.SMALL_ATOM, Etf.SMALL_ATOM_UTF8 -> {
+                // Atoms are a small set (nil, booleans, event names), they are shared like keys
+                String atom = readKey(readAtomLength(tag), tag == Etf.ATOM || tag == Etf.SMALL_ATOM);
+
+                return switch (atom) {
+                    case "nil", "null" -> NODES.nullNode();
+                    case "true" -> NODES.booleanNode(true);
+                    case "false" -> NODES.booleanNode(false);
+                    default -> NODES.textNode(atom);
+                };
+            }
+            case Etf.BINARY -> {
+                return NODES.textNode(readString(buffer.getInt(), false));
+            }
+            case Etf.SMALL_BIG, Etf.LARGE_BIG -> {
+                return readBig(tag == Etf.SMALL_BIG ? buffer.get() & 0xFF : buffer.getInt());
+            }
+            case Etf.NIL -> {
+                return NODES.arrayNode(0);
+            }
+            case Etf.STRING -> {
+                int length = buffer.getShort() & 0xFFFF;
+                ArrayNode arr = NODES.arrayNode(length);
+
+                for(int i = 0; i < length; i++) {
+                    arr.add(buffer.get() & 0xFF);
+                }
+
+                return arr;
+            }
+            case Etf.LIST, Etf.SMALL_TUPLE, Etf.LARGE_TUPLE -> {
+                int length = tag == Etf.SMALL_TUPLE ? buffer.get() & 0xFF : buffer.getInt();
+                ArrayNode arr = NODES.arrayNode(length);
+
+                for(int i = 0; i < length; i++) {
+                    arr.add(readValue());
+                }
+
+                if(tag == Etf.LIST) {
+                    // Proper lists end with NIL, the tail of an improper list is added as the last element
+                    if(peekTag() == Etf.NIL) {
+                        buffer.get();
+                    } else {
+                        arr.add(readValue());
+                    }
+                }
+
+                return arr;
+            }
+            case Etf.MAP -> {
+                int size = buffer.getInt();
+                ObjectNode node = NODES.objectNode();
+
+                for(int i = 0; i < size; i++) {
+                    String key = readKey();
+                    node.set(key, readValue());
+                }
+
+                return node;
+            }
+            default -> throw new IOException("Unsupported term tag " + tag);
+        }
+    }
+
+    /**
+     * Move past the next term without decoding it**/
+    public void skip() throws IOException {
+        int tag = readTag();
+
+        switch (tag) {
+            case Etf.SMALL_INTEGER -> move(1);
+            case Etf.INTEGER -> move(4);
+            case Etf.NEW_FLOAT -> move(8);
+            case Etf.FLOAT -> move(31);
+            case Etf.ATOM, Etf.ATOM_UTF8, Etf.SMALL_ATOM, Etf.SMALL_ATOM_UTF8 -> move(readAtomLength(tag));
+            case Etf.BINARY -> move(buffer.getInt());
+            case Etf.SMALL_BIG -> move((buffer.get() & 0xFF) + 1);
+            case Etf.LARGE_BIG -> move(buffer.getInt() + 1);
+            case Etf.NIL -> {
+            }
+            case Etf.STRING -> move(buffer.getShort() & 0xFFFF);
+            case Etf.LIST, Etf.SMALL_TUPLE, Etf.LARGE_TUPLE -> {
+                int length = tag == Etf.SMALL_TUPLE ? buffer.get() & 0xFF : buffer.getInt();
+
+                for(int i = 0; i < length; i++) {
+                    skip();
+                }
+
+                if(tag == Etf.LIST) {
+                    skip();
+                }
+            }
+            case Etf.MAP -> {
+                int size = buffer.getInt();
+
+                for(int i = 0; i < size * 2; i++) {
+                    skip();
+                }
+            }
+            default -> throw new IOException("Unsupported term tag " + tag);
+        }
+    }
+
+    private int readTag() throws IOException {
+        if(!buffer.hasRemaining()) {
+            throw new IOException("Unexpected end of term");
+        }
+
+        return buffer.get() & 0xFF;
+    }
+
+    private int readAtomLength(int tag) {
+        return tag == Etf.SMALL_ATOM || tag == Etf.SMALL_ATOM_UTF8 ? buffer.get() & 0xFF : buffer.getShort() & 0xFFFF;
+    }
+
+    private String readString(int length, boolean latin1) {
+        String res = new String(buffer.array(), buffer.position(), length, latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        move(length);
+
+        return res;
+    }
+
+    private String readKey(int length, boolean latin1) {
+        if(length > KEY_MAX_LENGTH) {
+            return readString(length, latin1);
+        }
+
+        byte[] array = buffer.array();
+        int start = buffer.position();
+        int hash = 0;
+
+        for(int i = start; i < start + length; i++) {
+            if(array[i] < 0) {
+                // Not ascii, the bytes can't be compared with the chars of a cached key
+                return readString(length, latin1);
+            }
+
+            hash = hash * 31 + array[i];
+        }
+
+        int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+        String key = KEYS[slot];
+
+        if(key == null || !matches(key, array, start, length)) {
+            key = new String(array, start, length, StandardCharsets.US_ASCII);
+            KEYS[slot] = key;
+        }
+
+        move(length);
+
+        return key;
+    }
+
+    private static boolean matches(String key, byte[] array, int start, int length) {
+        if(key.length() != length) {
+            return false;
+        }
+
+        for(int i = 0; i < length; i++) {
+            if(key.charAt(i) != array[start + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private JsonNode readBig(int length) {
+        boolean negative = buffer.get() != 0;
+
+        if(length <= 8) {
+            long magnitude = 0;
+
+            for(int i = 0; i < length; i++) {
+                magnitude |= (buffer.get() & 0xFFL) << (8 * i);
+            }
+
+            if(magnitude >= 0) {
+                return NODES.numberNode(negative ? -magnitude : magnitude);
+            }
+
+            // Doesn't fit into a signed long (the highest bit is set)
+            BigInteger res = new BigInteger(Long.toUnsignedString(magnitude));
+
+            return NODES.numberNode(negative ? res.negate() : res);
+        }
+
+        // Little endian magnitude, BigInteger needs big endian
+        byte[] bytes = new byte[length + 1];
+
+        for(int i = 0; i < length; i++) {
+            bytes[length - i] = buffer.get();
+        }
+
+        BigInteger res = new BigInteger(bytes);
+
+        return NODES.numberNode(negative ? res.negate() : res);
+    }
+
+    private void move(int length) {
+        buffer.position(buffer.position() + length);
+    }
+}
@@ -0,0 +1,174 @@
+package net.towerester.deasy.gateway.etf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writer of the Erlang external term format for outbound gateway payloads. Objects are written as maps
+ * with binary keys, arrays as lists, strings as binaries, null and booleans as atoms and numbers
+ * as the smallest fitting integer term or a float**/
+public class EtfEncoder {
+    private static final byte[] NIL = "nil".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private final boolean atomKeys;
+    private byte[] buffer;
+    private int length;
+
+    private EtfEncoder(boolean atomKeys) {
+        this.atomKeys = atomKeys;
+        this.buffer = new byte[256];
+        this.length = 0;
+    }
+
+    /**
+     * @param node Json tree of the payload
+     * @return Term with the version byte**/
+    public static byte[] encode(JsonNode node) throws IOException {
+        return encode(node, false);
+    }
+
+    /**
+     * @param node Json tree of the payload
+     * @param atomKeys Write map keys as atoms, like the gateway does in inbound payloads
+     * @return Term with the version byte**/
+    static byte[] encode(JsonNode node, boolean atomKeys) throws IOException {
+        EtfEncoder encoder = new EtfEncoder(atomKeys);
+        encoder.put(Etf.VERSION);
+        encoder.write(node);
+
+        return Arrays.copyOf(encoder.buffer, encoder.length);
+    }
+
+    private void write(JsonNode node) throws IOException {
+        switch (node.getNodeType()) {
+            case OBJECT -> {
+                put(Etf.MAP);
+                putInt(node.size());
+
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while(fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    byte[] key = field.getKey().getBytes(StandardCharsets.UTF_8);
+
+                    if(atomKeys && key.length <= 255) {
+                        writeAtom(key);
+                    } else {
+                        writeBinary(key);
+                    }
+
+                    write(field.getValue());
+                }
+            }
+            case ARRAY -> {
+                if(!node.isEmpty()) {
+                    put(Etf.LIST);
+                    putInt(node.size());
+
+                    for(JsonNode el: node) {
+                        write(el);
+                    }
+                }
+
+                put(Etf.NIL);
+            }
+            case STRING -> writeBinary(node.textValue().getBytes(StandardCharsets.UTF_8));
+            case BINARY -> writeBinary(node.binaryValue());
+            case BOOLEAN -> writeAtom(node.booleanValue() ? TRUE : FALSE);
+            case NULL, MISSING -> writeAtom(NIL);
+            case NUMBER -> {
+                if(!node.isIntegralNumber()) {
+                    put(Etf.NEW_FLOAT);
+                    putLong(Double.doubleToLongBits(node.doubleValue()));
+                } else if(node.canConvertToInt()) {
+                    writeInt(node.intValue());
+                } else if(node.canConvertToLong()) {
+                    writeBig(BigInteger.valueOf(node.longValue()));
+                } else {
+                    writeBig(node.bigIntegerValue());
+                }
+            }
+            default -> throw new IOException("Can't write " + node.getNodeType() + " as a term");
+        }
+    }
+
+    private void writeInt(int value) {
+        if(value >= 0 && value <= 255) {
+            put(Etf.SMALL_INTEGER);
+            put(value);
+        } else {
+            put(Etf.INTEGER);
+            putInt(value);
+        }
+    }
+
+    private void writeBig(BigInteger value) {
+        // Sign byte and little endian magnitude
+        byte[] magnitude = value.abs().toByteArray();
+        int start = magnitude[0] == 0 ? 1 : 0;
+        int size = magnitude.length - start;
+
+        if(size <= 255) {
+            put(Etf.SMALL_BIG);
+            put(size);
+        } else {
+            put(Etf.LARGE_BIG);
+            putInt(size);
+        }
+
+        put(value.signum() < 0 ? 1 : 0);
+
+        for(int i = magnitude.length - 1; i >= start; i--) {
+            put(magnitude[i]);
+        }
+    }
+
+    private void writeBinary(byte[] value) {
+        put(Etf.BINARY);
+        putInt(value.length);
+        putBytes(value);
+    }
+
+    private void writeAtom(byte[] name) {
+        put(Etf.SMALL_ATOM_UTF8);
+        put(name.length);
+        putBytes(name);
+    }
+
+    private void put(int value) {
+        ensure(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        ensure(4);
+        buffer[length++] = (byte) (value >>> 24);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    private void putBytes(byte[] value) {
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, length, value.length);
+        length += value.length;
+    }
+
+    private void ensure(int size) {
+        if(length + size > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + size));
+        }
+    }
+}
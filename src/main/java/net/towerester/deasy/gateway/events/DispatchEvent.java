@@ -0,0 +1,89 @@
+package net.towerester.deasy.gateway.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import net.towerester.deasy.entities.Entities;
+import net.towerester.deasy.gateway.DiscordClient;
+import net.towerester.deasy.gateway.GatewayPayload;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Gateway dispatch (op 0) event. Used as is for dispatches without a dedicated event class.
+ * Events published by the gateway carry the raw data of the payload: the json tree is built on the first {@link #getData()} call,
+ * {@link #getData(ObjectReader)} reads an entity from the raw data without building the tree**/
+public class DispatchEvent extends BaseEvent {
+    private final String eventName;
+    private final int sequence;
+    private final GatewayPayload payload;
+    private final JsonNode data;
+    private final long guildId;
+
+    public DispatchEvent(DiscordClient client, String eventName, int sequence, JsonNode data) {
+        this(client, eventName, sequence, data, 0);
+    }
+
+    /**
+     * @param guildId Id of the guild the event belongs to or 0**/
+    public DispatchEvent(DiscordClient client, String eventName, int sequence, JsonNode data, long guildId) {
+        this(client, eventName, sequence, null, data, guildId);
+    }
+
+    /**
+     * @param payload Detached payload of the dispatch, see {@link GatewayPayload#detach()}
+     * @param guildId Id of the guild the event belongs to or 0**/
+    public DispatchEvent(DiscordClient client, String eventName, GatewayPayload payload, long guildId) {
+        this(client, eventName, payload.getSequence(), payload, null, guildId);
+    }
+
+    private DispatchEvent(DiscordClient client, String eventName, int sequence, GatewayPayload payload, JsonNode data, long guildId) {
+        super(client);
+        this.eventName = eventName;
+        this.sequence = sequence;
+        this.payload = payload;
+        this.data = data;
+        this.guildId = guildId;
+    }
+
+    /**
+     * @return Dispatch event name (MESSAGE_CREATE, GUILD_CREATE, etc...)**/
+    public String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * @return Sequence number of the dispatch**/
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Event data (d field of the payload), built on the first call if the event carries raw data**/
+    public JsonNode getData() {
+        if(payload == null) {
+            return data;
+        }
+
+        try {
+            return payload.getData();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read the event data as a typed entity, e.g. {@code event.getData(Entities.MESSAGE)} for MESSAGE_CREATE.
+     * Json data is read from the raw bytes, unless the tree was built already
+     * @param reader Reader of the entity, see {@link Entities}
+     * @return Entity or null if the data is null**/
+    public <T> T getData(ObjectReader reader) throws IOException {
+        return payload == null ? Entities.read(reader, data) : payload.getData(reader);
+    }
+
+    /**
+     * @return Id of the guild the event belongs to or 0 if the event isn't a guild event. See {@link net.towerester.deasy.utils.Snowflake}**/
+    public long getGuildId() {
+        return guildId;
+    }
+}
@@ -0,0 +1,10 @@
+package net.towerester.deasy.gateway.events;
+
+/**
+ * Where event handlers are run
+ * INLINE - on the websocket reader thread (handlers must be fast)
+ * POOL - on a fixed pool of worker threads
+ * VIRTUAL_THREADS - on a new virtual thread per event lane (falls back to a cached thread pool before Java 21)**/
+public enum DispatchMode {
+    INLINE, POOL, VIRTUAL_THREADS
+}
@@ -0,0 +1,167 @@
+package net.towerester.deasy.gateway.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Event dispatch table keyed by gateway event name. Subscriptions are stored copy-on-write, so publishing and
+ * {@link #hasSubscribers(String)} never lock, and events nobody is subscribed to can be dropped before their data is parsed.
+ * Handlers are run by the {@link EventDispatcher} of the bus**/
+public class EventBus {
+    private static final Logger logger = LoggerFactory.getLogger(EventBus.class);
+    public static final String HELLO = "HELLO";
+    public static final String READY = "READY";
+
+    private static final Map<Class<? extends BaseEvent>, String> EVENT_NAMES = Map.of(
+            HelloEvent.class, HELLO,
+            ReadyEvent.class, READY
+    );
+
+    private volatile Map<String, Subscription<?>[]> table;
+    private final EventDispatcher dispatcher;
+
+    /**
+     * Bus running handlers on the publishing thread**/
+    public EventBus() {
+        this(new EventDispatcher());
+    }
+
+    /**
+     * @param dispatcher Dispatcher running the handlers**/
+    public EventBus(EventDispatcher dispatcher) {
+        this.table = Map.of();
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Subscribe to an event with a dedicated event class
+     * @param type Event class (ReadyEvent, HelloEvent, etc...)
+     * @param handler Event handler
+     * @return Subscription used to unsubscribe**/
+    public <T extends BaseEvent> Subscription<T> subscribe(Class<T> type, Consumer<? super T> handler) {
+        String eventName = EVENT_NAMES.get(type);
+
+        if(eventName == null) {
+            throw new IllegalArgumentException("Event " + type.getSimpleName() + " has no event name, subscribe by name instead");
+        }
+
+        return add(new Subscription<>(this, eventName, type, handler));
+    }
+
+    /**
+     * Subscribe to a gateway dispatch by its name
+     * @param eventName Dispatch event name (MESSAGE_CREATE, GUILD_CREATE, etc...)
+     * @param handler Event handler
+     * @return Subscription used to unsubscribe**/
+    public Subscription<DispatchEvent> subscribe(String eventName, Consumer<? super DispatchEvent> handler) {
+        if(eventName.equals(HELLO)) {
+            throw new IllegalArgumentException("HELLO isn't a dispatch event, subscribe with HelloEvent.class instead");
+        }
+
+        return add(new Subscription<>(this, eventName, DispatchEvent.class, handler));
+    }
+
+    /**
+     * Subscribe every method of the listener that is overridden
+     * @param listener Event listener**/
+    public void register(EventListener listener) {
+        if(isOverridden(listener, "onHello", HelloEvent.class)) {
+            subscribe(HelloEvent.class, listener::onHello);
+        }
+
+        if(isOverridden(listener, "onReady", ReadyEvent.class)) {
+            subscribe(ReadyEvent.class, listener::onReady);
+        }
+    }
+
+    /**
+     * Remove the subscription from the bus**/
+    public synchronized void unsubscribe(Subscription<?> subscription) {
+        Subscription<?>[] current = table.get(subscription.getEventName());
+
+        if(current == null) {
+            return;
+        }
+
+        Subscription<?>[] res = Arrays.stream(current).filter(el -> el != subscription).toArray(Subscription<?>[]::new);
+        Map<String, Subscription<?>[]> copy = new HashMap<>(table);
+
+        if(res.length == 0) {
+            copy.remove(subscription.getEventName());
+        } else {
+            copy.put(subscription.getEventName(), res);
+        }
+
+        this.table = copy;
+    }
+
+    /**
+     * @return Whether anything is subscribed to the event**/
+    public boolean hasSubscribers(String eventName) {
+        return table.containsKey(eventName);
+    }
+
+    /**
+     * Call all handlers subscribed to the event, in order with other events without a guild
+     * @param eventName Event name
+     * @param event Event passed to handlers**/
+    public void publish(String eventName, BaseEvent event) {
+        publish(0, eventName, event);
+    }
+
+    /**
+     * Call all handlers subscribed to the event. Exceptions of handlers are logged and don't stop other handlers
+     * @param key Ordering key (guild id or 0), handlers of events with the same key are called in the publishing order
+     * @param eventName Event name
+     * @param event Event passed to handlers**/
+    public void publish(long key, String eventName, BaseEvent event) {
+        Subscription<?>[] subscriptions = table.get(eventName);
+
+        if(subscriptions == null) {
+            return;
+        }
+
+        dispatcher.dispatch(key, () -> call(eventName, subscriptions, event));
+    }
+
+    /**
+     * @return Dispatcher running the handlers**/
+    public EventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    private static void call(String eventName, Subscription<?>[] subscriptions, BaseEvent event) {
+        for(Subscription<?> subscription: subscriptions) {
+            try {
+                subscription.accept(event);
+            } catch(Exception e) {
+                logger.error("Exception in {} event handler!", eventName, e);
+            }
+        }
+    }
+
+    private synchronized <T extends BaseEvent> Subscription<T> add(Subscription<T> subscription) {
+        Subscription<?>[] current = table.getOrDefault(subscription.getEventName(), new Subscription<?>[0]);
+        Subscription<?>[] res = Arrays.copyOf(current, current.length + 1);
+        res[current.length] = subscription;
+
+        Map<String, Subscription<?>[]> copy = new HashMap<>(table);
+        copy.put(subscription.getEventName(), res);
+        this.table = copy;
+
+        return subscription;
+    }
+
+    private static boolean isOverridden(EventListener listener, String method, Class<?> eventType) {
+        try {
+            return listener.getClass().getMethod(method, eventType).getDeclaringClass() != EventListener.class;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package net.towerester.deasy.gateway.events;
+
+import net.towerester.deasy.utils.LongObjectMap;
+import net.towerester.deasy.utils.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs event handlers off the websocket reader thread. Events are split into lanes by an ordering key (the guild id),
+ * events of one lane run one after another in the order they were received, different lanes run in parallel.
+ * The number of queued events is bounded: when the queue is full, {@link #dispatch(long, Runnable)} blocks the reader thread
+ * until handlers catch up, so a slow handler slows down reading instead of filling the memory. The reader thread waits
+ * for the block timeout at most, after that the event is dropped, so stuck handlers don't stop the connection from
+ * reading heartbeat acks and reconnect requests**/
+public class EventDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(EventDispatcher.class);
+    /**
+     * Maximum number of events run by a lane before its thread is given to other lanes**/
+    private static final int LANE_BATCH = 64;
+    /**
+     * Number of lane map stripes, each guarded by its own lock, so workers finishing different lanes don't contend**/
+    private static final int STRIPES = 16;
+    /**
+     * Default maximum time the reader thread waits for space in a full queue**/
+    public static final long DEFAULT_BLOCK_TIMEOUT = 5000;
+
+    private final DispatchMode mode;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int queueSize;
+    private final long blockTimeout;
+    private final LongObjectMap<Lane>[] lanes;
+    private final ReentrantLock[] locks;
+    private final AtomicInteger queued;
+    private final AtomicInteger peakQueued;
+    private final AtomicLong blocked;
+    private final AtomicLong dropped;
+    private final AtomicLong dispatched;
+
+    private static class Lane {
+        private final long key;
+        private final int stripe;
+        private final Queue<Runnable> tasks;
+        // Guarded by the lock of the stripe
+        private boolean scheduled;
+
+        private Lane(long key, int stripe) {
+            this.key = key;
+            this.stripe = stripe;
+            this.tasks = new ConcurrentLinkedQueue<>();
+            this.scheduled = false;
+        }
+    }
+
+    /**
+     * Dispatcher running handlers on the calling thread**/
+    public EventDispatcher() {
+        this(DispatchMode.INLINE, 1, 1);
+    }
+
+    /**
+     * @param mode Where handlers are run
+     * @param threads Number of worker threads (used only in POOL mode)
+     * @param queueSize Maximum number of events waiting for handlers**/
+    public EventDispatcher(DispatchMode mode, int threads, int queueSize) {
+        this(mode, threads, queueSize, DEFAULT_BLOCK_TIMEOUT);
+    }
+
+    /**
+     * @param mode Where handlers are run
+     * @param threads Number of worker threads (used only in POOL mode)
+     * @param queueSize Maximum number of events waiting for handlers
+     * @param blockTimeout Maximum time in milliseconds the reader thread waits when the queue is full, the event is dropped after it**/
+    public EventDispatcher(DispatchMode mode, int threads, int queueSize, long blockTimeout) {
+        if(threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Thread count and queue size must be positive");
+        }
+
+        this.mode = mode;
+        this.queueSize = queueSize;
+        this.blockTimeout = blockTimeout;
+        this.permits = new Semaphore(queueSize);
+        this.lanes = newStripes();
+        this.locks = new ReentrantLock[STRIPES];
+
+        for(int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.queued = new AtomicInteger();
+        this.peakQueued = new AtomicInteger();
+        this.blocked = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.dispatched = new AtomicLong();
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = switch (mode) {
+            case INLINE -> null;
+            case POOL -> Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "EventDispatcher-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            case VIRTUAL_THREADS -> VirtualThreads.newExecutor("EventDispatcher");
+        };
+    }
+
+    /**
+     * Run the task after the previous tasks with the same key
+     * @param key Ordering key, events for the same guild must use the guild id
+     * @param task Task calling event handlers**/
+    public void dispatch(long key, Runnable task) {
+        if(executor == null) {
+            run(task);
+            return;
+        }
+
+        if(!permits.tryAcquire()) {
+            blocked.incrementAndGet();
+            logger.warn("Event queue is full ({} events)!Waiting for handlers...", queueSize);
+
+            try {
+                if(!permits.tryAcquire(blockTimeout, TimeUnit.MILLISECONDS)) {
+                    dropped.incrementAndGet();
+                    logger.error("Handlers didn't catch up in {}ms, event is dropped", blockTimeout);
+                    return;
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+                logger.error("Interrupted while waiting for the event queue, event is dropped");
+                return;
+            }
+        }
+
+        peakQueued.accumulateAndGet(queued.incrementAndGet(), Math::max);
+
+        Lane start = null;
+        int stripe = stripe(key);
+
+        locks[stripe].lock();
+        try {
+            Lane lane = lanes[stripe].get(key);
+
+            if(lane == null) {
+                lane = new Lane(key, stripe);
+                lanes[stripe].put(key, lane);
+            }
+
+            lane.tasks.add(task);
+
+            if(!lane.scheduled) {
+                lane.scheduled = true;
+                start = lane;
+            }
+        } finally {
+            locks[stripe].unlock();
+        }
+
+        if(start != null) {
+            submit(start);
+        }
+    }
+
+    private void submit(Lane lane) {
+        try {
+            executor.execute(() -> drain(lane));
+        } catch(RejectedExecutionException e) {
+            logger.error("Event dispatcher is shut down, dropping {} events", lane.tasks.size());
+            locks[lane.stripe].lock();
+            try {
+                lanes[lane.stripe].remove(lane.key);
+            } finally {
+                locks[lane.stripe].unlock();
+            }
+
+            while(lane.tasks.poll() != null) {
+                release();
+            }
+        }
+    }
+
+    private void drain(Lane lane) {
+        try {
+            for(int i = 0; i < LANE_BATCH; i++) {
+                Runnable task = lane.tasks.poll();
+
+                if(task == null) {
+                    break;
+                }
+
+                release();
+                run(task);
+            }
+        } finally {
+            // An error thrown by a handler kills the worker, the lane is rescheduled or removed anyway, so it isn't stuck
+            finish(lane);
+        }
+    }
+
+    private void finish(Lane lane) {
+        // Only the draining thread polls the lane, new tasks are added under the lock of its stripe
+        boolean more;
+
+        locks[lane.stripe].lock();
+        try {
+            more = !lane.tasks.isEmpty();
+
+            if(!more) {
+                lane.scheduled = false;
+                lanes[lane.stripe].remove(lane.key);
+            }
+        } finally {
+            locks[lane.stripe].unlock();
+        }
+
+        if(more) {
+            submit(lane);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LongObjectMap<Lane>[] newStripes() {
+        LongObjectMap<Lane>[] stripes = (LongObjectMap<Lane>[]) new LongObjectMap<?>[STRIPES];
+
+        for(int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongObjectMap<>();
+        }
+
+        return stripes;
+    }
+
+    /**
+     * Snowflakes differ in the low (increment) and the high (timestamp) bits, both are mixed into the stripe index**/
+    private static int stripe(long key) {
+        long h = key ^ (key >>> 22) ^ (key >>> 41);
+        return (int) h & (STRIPES - 1);
+    }
+
+    private void release() {
+        queued.decrementAndGet();
+        permits.release();
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch(Exception e) {
+            logger.error("Exception in event handler!", e);
+        } finally {
+            dispatched.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop worker threads. Events already queued are still handled**/
+    public void shutdown() {
+        if(executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return Where handlers are run**/
+    public DispatchMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return Maximum number of events waiting for handlers**/
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return Number of events waiting for handlers**/
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * @return Largest number of events that were waiting for handlers at once**/
+    public int getPeakQueuedCount() {
+        return peakQueued.get();
+    }
+
+    /**
+     * @return How many times the reader thread was blocked because the queue was full**/
+    public long getBlockedCount() {
+        return blocked.get();
+    }
+
+    /**
+     * @return Number of events dropped because the queue stayed full for the block timeout**/
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return Number of events handled**/
+    public long getDispatchedCount() {
+        return dispatched.get();
+    }
+}
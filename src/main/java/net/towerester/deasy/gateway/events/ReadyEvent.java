@@ -1,14 +1,33 @@
 package net.towerester.deasy.gateway.events;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import net.towerester.deasy.gateway.DiscordClient;
+import net.towerester.deasy.gateway.GatewayPayload;
 
-public class ReadyEvent extends BaseEvent {
+public class ReadyEvent extends DispatchEvent {
     private final int apiVersion;
     private final String sessionId;
     private final String resumeUrl;
 
+    /**
+     * Event without the sequence and the data of READY
+     * @deprecated Use {@link #ReadyEvent(DiscordClient, GatewayPayload, int, String, String)}, events created by this constructor have no data**/
+    @Deprecated
     public ReadyEvent(DiscordClient client, int apiVersion, String sessionId, String resumeUrl) {
-        super(client);
+        this(client, 0, (JsonNode) null, apiVersion, sessionId, resumeUrl);
+    }
+
+    public ReadyEvent(DiscordClient client, int sequence, JsonNode data, int apiVersion, String sessionId, String resumeUrl) {
+        super(client, EventBus.READY, sequence, data);
+        this.apiVersion = apiVersion;
+        this.sessionId = sessionId;
+        this.resumeUrl = resumeUrl;
+    }
+
+    /**
+     * @param payload Detached payload of READY, see {@link GatewayPayload#detach()}**/
+    public ReadyEvent(DiscordClient client, GatewayPayload payload, int apiVersion, String sessionId, String resumeUrl) {
+        super(client, EventBus.READY, payload, 0);
         this.apiVersion = apiVersion;
         this.sessionId = sessionId;
         this.resumeUrl = resumeUrl;
@@ -0,0 +1,39 @@
+package net.towerester.deasy.gateway.events;
+
+import java.util.function.Consumer;
+
+/**
+ * Handler subscribed to one event name of an {@link EventBus}**/
+public class Subscription<T extends BaseEvent> {
+    private final EventBus bus;
+    private final String eventName;
+    private final Class<T> type;
+    private final Consumer<? super T> handler;
+
+    Subscription(EventBus bus, String eventName, Class<T> type, Consumer<? super T> handler) {
+        this.bus = bus;
+        this.eventName = eventName;
+        this.type = type;
+        this.handler = handler;
+    }
+
+    /**
+     * Remove the handler from the bus**/
+    public void unsubscribe() {
+        bus.unsubscribe(this);
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    void accept(BaseEvent event) {
+        if(type.isInstance(event)) {
+            handler.accept(type.cast(event));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.towerester.deasy.gateway.session;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.towerester.deasy.Constants;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores every session in a json file of the directory (session-{shard id}.json). Files are written to a temporary
+ * file first and moved in place, so a process killed while saving leaves the previous session intact**/
+public class FileSessionStore implements SessionStore {
+    private final Path directory;
+
+    /**
+     * @param directory Directory of the session files, created if it doesn't exist**/
+    public FileSessionStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void save(int shardId, SavedSession session) throws IOException {
+        Files.createDirectories(directory);
+
+        ObjectNode node = Constants.MAPPER.createObjectNode();
+        node.put("session_id", session.getSessionId());
+        node.put("resume_url", session.getResumeUrl());
+        node.put("seq", session.getSequence());
+        node.put("saved_at", session.getSavedAt());
+
+        Path tmp = directory.resolve(getFileName(shardId) + ".tmp");
+        Files.write(tmp, Constants.MAPPER.writeValueAsBytes(node));
+        Files.move(tmp, getFile(shardId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public SavedSession load(int shardId) throws IOException {
+        Path file = getFile(shardId);
+
+        if(!Files.exists(file)) {
+            return null;
+        }
+
+        JsonNode node = Constants.MAPPER.readTree(Files.readAllBytes(file));
+
+        if(!node.hasNonNull("session_id") || !node.hasNonNull("resume_url")) {
+            throw new IOException("Session file " + file + " is damaged");
+        }
+
+        return new SavedSession(node.get("session_id").asText(), node.get("resume_url").asText(), node.path("seq").asInt(), node.path("saved_at").asLong());
+    }
+
+    @Override
+    public void remove(int shardId) throws IOException {
+        Files.deleteIfExists(getFile(shardId));
+    }
+
+    /**
+     * @return File of the shard session**/
+    public Path getFile(int shardId) {
+        return directory.resolve(getFileName(shardId));
+    }
+
+    private static String getFileName(int shardId) {
+        return "session-" + shardId + ".json";
+    }
+}
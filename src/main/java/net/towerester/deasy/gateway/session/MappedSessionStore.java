@@ -0,0 +1,134 @@
+package net.towerester.deasy.gateway.session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stores the sessions of all shards in one memory-mapped file with a fixed size slot per shard id.
+ * Saving is a few stores into the mapping, so thousands of shards are saved on shutdown without a file per shard.
+ * Written pages belong to the OS page cache, they reach the disk even if the process is killed right after saving.
+ * A slot is marked as empty while it's written, so a torn write is read as no session**/
+public class MappedSessionStore implements SessionStore, Closeable {
+    public static final int SLOT_SIZE = 512;
+
+    private static final int SAVED = 0;
+    private static final int SEQUENCE = 4;
+    private static final int SAVED_AT = 8;
+    private static final int SESSION_ID = 16;
+    private static final int RESUME_URL = 144;
+    private static final int SESSION_ID_MAX = RESUME_URL - SESSION_ID - 2;
+    private static final int RESUME_URL_MAX = SLOT_SIZE - RESUME_URL - 2;
+
+    private final FileChannel channel;
+    private final ReentrantLock lock;
+    private MappedByteBuffer buffer;
+    private int capacity;
+
+    /**
+     * @param file File of the store, created if it doesn't exist
+     * @param shards Expected number of shards, the file grows if a bigger shard id is saved**/
+    public MappedSessionStore(Path file, int shards) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.lock = new ReentrantLock();
+        this.capacity = 0;
+
+        map((int) Math.max(shards, channel.size() / SLOT_SIZE));
+    }
+
+    @Override
+    public void save(int shardId, SavedSession session) throws IOException {
+        byte[] sessionId = session.getSessionId().getBytes(StandardCharsets.UTF_8);
+        byte[] resumeUrl = session.getResumeUrl().getBytes(StandardCharsets.UTF_8);
+
+        if(sessionId.length > SESSION_ID_MAX || resumeUrl.length > RESUME_URL_MAX) {
+            throw new IOException("Session of shard " + shardId + " doesn't fit into a slot");
+        }
+
+        lock.lock();
+        try {
+            if(shardId >= capacity) {
+                map(Math.max(shardId + 1, capacity * 2));
+            }
+
+            int slot = shardId * SLOT_SIZE;
+
+            buffer.putInt(slot + SAVED, 0);
+            buffer.putInt(slot + SEQUENCE, session.getSequence());
+            buffer.putLong(slot + SAVED_AT, session.getSavedAt());
+            putString(slot + SESSION_ID, sessionId);
+            putString(slot + RESUME_URL, resumeUrl);
+            buffer.putInt(slot + SAVED, 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public SavedSession load(int shardId) {
+        lock.lock();
+        try {
+            if(shardId >= capacity) {
+                return null;
+            }
+
+            int slot = shardId * SLOT_SIZE;
+
+            if(buffer.getInt(slot + SAVED) != 1) {
+                return null;
+            }
+
+            return new SavedSession(getString(slot + SESSION_ID), getString(slot + RESUME_URL), buffer.getInt(slot + SEQUENCE), buffer.getLong(slot + SAVED_AT));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(int shardId) {
+        lock.lock();
+        try {
+            if(shardId < capacity) {
+                buffer.putInt(shardId * SLOT_SIZE + SAVED, 0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the mapping to the disk and close the file**/
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void map(int slots) throws IOException {
+        // Mapping beyond the end of the file extends it with zeros, so new slots are empty
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * SLOT_SIZE);
+        this.capacity = slots;
+    }
+
+    private void putString(int offset, byte[] value) {
+        buffer.putShort(offset, (short) value.length);
+        buffer.put(offset + 2, value);
+    }
+
+    private String getString(int offset) {
+        byte[] value = new byte[buffer.getShort(offset)];
+        buffer.get(offset + 2, value);
+
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,40 @@
+package net.towerester.deasy.gateway.session;
+
+/**
+ * Gateway session state needed for resuming**/
+public final class SavedSession {
+    private final String sessionId;
+    private final String resumeUrl;
+    private final int sequence;
+    private final long savedAt;
+
+    /**
+     * @param sessionId Session id from the READY event
+     * @param resumeUrl Gateway url used for resuming
+     * @param sequence Sequence number of the last received dispatch
+     * @param savedAt Time of saving (epoch milliseconds)**/
+    public SavedSession(String sessionId, String resumeUrl, int sequence, long savedAt) {
+        this.sessionId = sessionId;
+        this.resumeUrl = resumeUrl;
+        this.sequence = sequence;
+        this.savedAt = savedAt;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getResumeUrl() {
+        return resumeUrl;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Time of saving (epoch milliseconds)**/
+    public long getSavedAt() {
+        return savedAt;
+    }
+}
@@ -0,0 +1,24 @@
+package net.towerester.deasy.gateway.session;
+
+import java.io.IOException;
+
+/**
+ * Storage of gateway sessions between process restarts. The client saves its session when it's stopped and
+ * a new process started with the same store resumes the session instead of identifying, so it doesn't use
+ * the identify quota and doesn't receive the state of all guilds again. Sessions are stored per shard id**/
+public interface SessionStore {
+    /**
+     * @param shardId Shard id of the session
+     * @param session Session to save, replaces the saved session of the shard**/
+    void save(int shardId, SavedSession session) throws IOException;
+
+    /**
+     * @param shardId Shard id of the session
+     * @return Saved session of the shard or null if there isn't one**/
+    SavedSession load(int shardId) throws IOException;
+
+    /**
+     * Forget the saved session of the shard, for example after Discord invalidated it
+     * @param shardId Shard id of the session**/
+    void remove(int shardId) throws IOException;
+}
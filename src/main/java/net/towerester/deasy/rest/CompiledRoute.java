@@ -0,0 +1,71 @@
+package net.towerester.deasy.rest;
+
+import net.towerester.deasy.utils.SimpleHttpClient;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Route with its parameters filled. Carries the rate limit route key and the major parameter,
+ * so the rate limiter doesn't parse the path of the request**/
+public final class CompiledRoute {
+    private final Route route;
+    private final String path;
+    private final String majorParameter;
+
+    CompiledRoute(Route route, String path, String majorParameter) {
+        this.route = route;
+        this.path = path;
+        this.majorParameter = majorParameter;
+    }
+
+    /**
+     * Add a query parameter. Query parameters don't change the rate limit bucket
+     * @param name Parameter name
+     * @param value Parameter value
+     * @return New compiled route with the parameter**/
+    public CompiledRoute withQuery(String name, Object value) {
+        String encoded = URLEncoder.encode(String.valueOf(value), StandardCharsets.UTF_8);
+
+        return new CompiledRoute(route, path + (path.indexOf('?') == -1 ? '?' : '&') + name + "=" + encoded, majorParameter);
+    }
+
+    /**
+     * @return Request builder with the method, the path and the rate limit route of the compiled route**/
+    public SimpleHttpClient.Request.Builder toRequest() {
+        return new SimpleHttpClient.Request.Builder(path, route.getMethod()).setRoute(route.getRouteKey(), majorParameter);
+    }
+
+    public Route getRoute() {
+        return route;
+    }
+
+    /**
+     * @return HTTP method**/
+    public String getMethod() {
+        return route.getMethod();
+    }
+
+    /**
+     * @return Path relative to the base url**/
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return Rate limit route key**/
+    public String getRouteKey() {
+        return route.getRouteKey();
+    }
+
+    /**
+     * @return Major parameter (channel id, guild id or webhook id with token) or empty string**/
+    public String getMajorParameter() {
+        return majorParameter;
+    }
+
+    @Override
+    public String toString() {
+        return route.getMethod() + " " + path;
+    }
+}
@@ -0,0 +1,223 @@
+package net.towerester.deasy.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.entities.Channel;
+import net.towerester.deasy.entities.Entities;
+import net.towerester.deasy.entities.Guild;
+import net.towerester.deasy.entities.Member;
+import net.towerester.deasy.entities.Message;
+import net.towerester.deasy.entities.Role;
+import net.towerester.deasy.entities.User;
+import net.towerester.deasy.utils.SimpleHttpClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typed operations of the Discord REST API. Requests are built from {@link Routes}, so they carry their rate limit route,
+ * and responses are read into entities. Identical GET requests made while one is in flight share its response.
+ * Futures are completed with {@link RestException} if the response status isn't 2xx**/
+public class RestApi {
+    private static final ObjectReader CHANNELS = Entities.listReader(Channel.class);
+    private static final ObjectReader ROLES = Entities.listReader(Role.class);
+    private static final ObjectReader MESSAGES = Entities.listReader(Message.class);
+
+    private final SimpleHttpClient httpClient;
+    private final Map<String, CompletableFuture<JsonNode>> inFlight;
+
+    /**
+     * @param httpClient Http client with the Discord base url and bot authorization**/
+    public RestApi(SimpleHttpClient httpClient) {
+        this.httpClient = httpClient;
+        this.inFlight = new ConcurrentHashMap<>();
+    }
+
+    public CompletableFuture<User> getCurrentUser() {
+        return execute(Routes.GET_CURRENT_USER.compile(), null, Entities.USER);
+    }
+
+    public CompletableFuture<User> getUser(long userId) {
+        return execute(Routes.GET_USER.compile(userId), null, Entities.USER);
+    }
+
+    /**
+     * @return Guild without channels and members, use the other methods to get them**/
+    public CompletableFuture<Guild> getGuild(long guildId) {
+        return execute(Routes.GET_GUILD.compile(guildId), null, Entities.GUILD);
+    }
+
+    public CompletableFuture<List<Channel>> getGuildChannels(long guildId) {
+        return execute(Routes.GET_GUILD_CHANNELS.compile(guildId), null, CHANNELS);
+    }
+
+    public CompletableFuture<List<Role>> getGuildRoles(long guildId) {
+        return execute(Routes.GET_GUILD_ROLES.compile(guildId), null, ROLES);
+    }
+
+    public CompletableFuture<Member> getMember(long guildId, long userId) {
+        return execute(Routes.GET_GUILD_MEMBER.compile(guildId, userId), null, Entities.MEMBER);
+    }
+
+    public CompletableFuture<Void> addMemberRole(long guildId, long userId, long roleId) {
+        return executeVoid(Routes.ADD_GUILD_MEMBER_ROLE.compile(guildId, userId, roleId), null);
+    }
+
+    public CompletableFuture<Void> removeMemberRole(long guildId, long userId, long roleId) {
+        return executeVoid(Routes.REMOVE_GUILD_MEMBER_ROLE.compile(guildId, userId, roleId), null);
+    }
+
+    public CompletableFuture<Channel> getChannel(long channelId) {
+        return execute(Routes.GET_CHANNEL.compile(channelId), null, Entities.CHANNEL);
+    }
+
+    public CompletableFuture<Message> getMessage(long channelId, long messageId) {
+        return execute(Routes.GET_MESSAGE.compile(channelId, messageId), null, Entities.MESSAGE);
+    }
+
+    /**
+     * @param limit Max number of messages (1-100)
+     * @return Last messages of the channel, newest first**/
+    public CompletableFuture<List<Message>> getMessages(long channelId, int limit) {
+        return execute(Routes.GET_MESSAGES.compile(channelId).withQuery("limit", limit), null, MESSAGES);
+    }
+
+    public CompletableFuture<Message> sendMessage(long channelId, String content) {
+        return sendMessage(channelId, Constants.MAPPER.createObjectNode().put("content", content));
+    }
+
+    /**
+     * @param message Message json (content, embeds, components, etc...)**/
+    public CompletableFuture<Message> sendMessage(long channelId, JsonNode message) {
+        return execute(Routes.CREATE_MESSAGE.compile(channelId), message, Entities.MESSAGE);
+    }
+
+    public CompletableFuture<Message> editMessage(long channelId, long messageId, String content) {
+        return editMessage(channelId, messageId, Constants.MAPPER.createObjectNode().put("content", content));
+    }
+
+    /**
+     * @param message Json with the changed fields of the message**/
+    public CompletableFuture<Message> editMessage(long channelId, long messageId, JsonNode message) {
+        return execute(Routes.EDIT_MESSAGE.compile(channelId, messageId), message, Entities.MESSAGE);
+    }
+
+    public CompletableFuture<Void> deleteMessage(long channelId, long messageId) {
+        return executeVoid(Routes.DELETE_MESSAGE.compile(channelId, messageId), null);
+    }
+
+    /**
+     * @param emoji Unicode emoji or name:id of a custom emoji**/
+    public CompletableFuture<Void> addReaction(long channelId, long messageId, String emoji) {
+        return executeVoid(Routes.ADD_REACTION.compile(channelId, messageId, emoji), null);
+    }
+
+    /**
+     * @param emoji Unicode emoji or name:id of a custom emoji**/
+    public CompletableFuture<Void> removeReaction(long channelId, long messageId, String emoji) {
+        return executeVoid(Routes.REMOVE_OWN_REACTION.compile(channelId, messageId, emoji), null);
+    }
+
+    public CompletableFuture<Void> triggerTyping(long channelId) {
+        return executeVoid(Routes.TRIGGER_TYPING.compile(channelId), null);
+    }
+
+    /**
+     * Execute a request and read the response into an entity
+     * @param route Compiled route
+     * @param body Json body or null
+     * @param reader Reader of the entity, see {@link Entities}
+     * @return Future with the entity**/
+    public <T> CompletableFuture<T> execute(CompiledRoute route, JsonNode body, ObjectReader reader) {
+        return execute(route, body).thenApply(json -> read(reader, json));
+    }
+
+    /**
+     * Execute a request without a response entity (204 No Content routes)
+     * @param route Compiled route
+     * @param body Json body or null
+     * @return Future completed when the request succeeded**/
+    public CompletableFuture<Void> executeVoid(CompiledRoute route, JsonNode body) {
+        return execute(route, body).thenApply(json -> null);
+    }
+
+    /**
+     * Execute a request. A GET request without a body joins the identical request in flight, if there's one.
+     * The json of a joined request is shared between the callers and must not be modified
+     * @param route Compiled route
+     * @param body Json body or null
+     * @return Future with the response json (a missing node if the response had no body)**/
+    public CompletableFuture<JsonNode> execute(CompiledRoute route, JsonNode body) {
+        if(body != null || !route.getMethod().equals("GET")) {
+            return send(route, body);
+        }
+
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        CompletableFuture<JsonNode> running = inFlight.putIfAbsent(route.getPath(), future);
+
+        if(running != null) {
+            return running.copy();
+        }
+
+        send(route, null).whenComplete((json, e) -> {
+            inFlight.remove(route.getPath(), future);
+
+            if(e == null) {
+                future.complete(json);
+            } else {
+                future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+        });
+
+        // Callers get copies, so one of them can't complete or cancel the shared future
+        return future.copy();
+    }
+
+    /**
+     * @return Number of distinct GET requests in flight**/
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public SimpleHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    private CompletableFuture<JsonNode> send(CompiledRoute route, JsonNode body) {
+        SimpleHttpClient.Request.Builder builder = route.toRequest();
+
+        if(body != null) {
+            try {
+                builder.addHeader("Content-Type", "application/json");
+                builder.setBody(HttpRequest.BodyPublishers.ofByteArray(Constants.MAPPER.writeValueAsBytes(body)));
+            } catch(IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        } else {
+            builder.setBody(HttpRequest.BodyPublishers.noBody());
+        }
+
+        return httpClient.executeJsonAsync(builder.build()).thenApply(response -> {
+            if(response.statusCode() < 200 || response.statusCode() >= 300) {
+                throw new RestException(route, response.statusCode(), response.body());
+            }
+
+            return response.body();
+        });
+    }
+
+    private static <T> T read(ObjectReader reader, JsonNode json) {
+        try {
+            return Entities.read(reader, json);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
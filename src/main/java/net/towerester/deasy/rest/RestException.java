@@ -0,0 +1,51 @@
+package net.towerester.deasy.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Error response of the REST API. Futures of {@link RestApi} are completed with it when the status isn't 2xx**/
+public class RestException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    // Routes and json trees aren't serializable, a deserialized exception keeps only the message, the status and the code
+    private final transient CompiledRoute route;
+    private final int status;
+    private final int code;
+    private final transient JsonNode body;
+
+    /**
+     * @param route Route of the failed request
+     * @param status HTTP status
+     * @param body Error json (a missing node if the response had no body)**/
+    public RestException(CompiledRoute route, int status, JsonNode body) {
+        super(route + " failed with status " + status + (body.has("message") ? ": " + body.get("message").asText() : ""));
+        this.route = route;
+        this.status = status;
+        this.code = body.path("code").asInt(0);
+        this.body = body;
+    }
+
+    /**
+     * @return Route of the failed request (null if the exception was deserialized)**/
+    public CompiledRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * @return HTTP status**/
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Discord JSON error code or 0 if the response doesn't contain it**/
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return Error json, with field errors of invalid form bodies (null if the exception was deserialized)**/
+    public JsonNode getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,161 @@
+package net.towerester.deasy.rest;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * REST route: HTTP method and a path template like "/channels/{channel.id}/messages/{message.id}".
+ * The template is parsed once, so compiling a route only joins its literal parts with the parameters.
+ * The rate limit route key and the position of the major parameter are known from the template as well**/
+public final class Route {
+    private final String method;
+    private final String template;
+    private final String[] literals;
+    private final String[] parameters;
+    private final String routeKey;
+    private final int majorIndex;
+    private final int majorLength;
+
+    /**
+     * @param method HTTP method
+     * @param template Path template relative to the base url, parameters are written in braces**/
+    public Route(String method, String template) {
+        this.method = method;
+        this.template = template;
+
+        List<String> literals = new ArrayList<>();
+        List<String> parameters = new ArrayList<>();
+        int start = 0;
+
+        while(true) {
+            int open = template.indexOf('{', start);
+
+            if(open == -1) {
+                literals.add(template.substring(start));
+                break;
+            }
+
+            int close = template.indexOf('}', open);
+
+            if(close == -1) {
+                throw new IllegalArgumentException("Unclosed parameter in route " + template);
+            }
+
+            literals.add(template.substring(start, open));
+            parameters.add(template.substring(open + 1, close));
+            start = close + 1;
+        }
+
+        this.literals = literals.toArray(new String[0]);
+        this.parameters = parameters.toArray(new String[0]);
+        this.routeKey = buildRouteKey();
+
+        // The first channel, guild or webhook id is the major parameter, a webhook token belongs to it
+        int majorIndex = -1;
+        int majorLength = 0;
+
+        for(int i = 0; i < this.parameters.length && majorIndex == -1; i++) {
+            String literal = this.literals[i];
+
+            if(literal.endsWith("/channels/") || literal.endsWith("/guilds/")) {
+                majorIndex = i;
+                majorLength = 1;
+            } else if(literal.endsWith("/webhooks/")) {
+                majorIndex = i;
+                majorLength = i + 1 < this.parameters.length && this.literals[i + 1].equals("/") ? 2 : 1;
+            }
+        }
+
+        this.majorIndex = majorIndex;
+        this.majorLength = majorLength;
+    }
+
+    /**
+     * Fill the parameters of the template. Strings are URL-encoded, other values are written with toString
+     * @param params Parameter values in the order of the template
+     * @return Compiled route**/
+    public CompiledRoute compile(Object... params) {
+        if(params.length != parameters.length) {
+            throw new IllegalArgumentException("Route " + template + " expects " + parameters.length + " parameters, got " + params.length);
+        }
+
+        String[] values = new String[params.length];
+        StringBuilder path = new StringBuilder(template.length() + params.length * 20);
+
+        for(int i = 0; i < params.length; i++) {
+            values[i] = encode(params[i]);
+            path.append(literals[i]).append(values[i]);
+        }
+
+        path.append(literals[params.length]);
+
+        String majorParameter = "";
+
+        if(majorIndex != -1) {
+            majorParameter = majorLength == 2 ? values[majorIndex] + "/" + values[majorIndex + 1] : values[majorIndex];
+        }
+
+        return new CompiledRoute(this, path.toString(), majorParameter);
+    }
+
+    /**
+     * @return HTTP method**/
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return Path template**/
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return Number of parameters of the template**/
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    /**
+     * @return Rate limit route key, the same as {@link net.towerester.deasy.utils.RateLimiter#getRouteKey(String, String)} gives for compiled paths**/
+    public String getRouteKey() {
+        return routeKey;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + template;
+    }
+
+    private String buildRouteKey() {
+        StringBuilder res = new StringBuilder(method).append(" ");
+
+        for(int i = 0; i < literals.length; i++) {
+            String literal = literals[i];
+
+            if(i < parameters.length && literal.endsWith("/reactions/")) {
+                // Emoji and user of the reaction routes share one bucket
+                res.append(literal).append("{reaction}");
+                break;
+            }
+
+            res.append(literal);
+
+            if(i < parameters.length) {
+                res.append("{id}");
+            }
+        }
+
+        return res.toString();
+    }
+
+    private static String encode(Object value) {
+        if(value instanceof String text) {
+            return URLEncoder.encode(text, StandardCharsets.UTF_8).replace("+", "%20");
+        }
+
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,32 @@
+package net.towerester.deasy.rest;
+
+/**
+ * Routes of the Discord REST API used by the library. Other routes can be declared with {@link Route} the same way**/
+public final class Routes {
+    public static final Route GET_GATEWAY_BOT = new Route("GET", "/gateway/bot");
+
+    public static final Route GET_CURRENT_USER = new Route("GET", "/users/@me");
+    public static final Route GET_USER = new Route("GET", "/users/{user.id}");
+
+    public static final Route GET_GUILD = new Route("GET", "/guilds/{guild.id}");
+    public static final Route GET_GUILD_CHANNELS = new Route("GET", "/guilds/{guild.id}/channels");
+    public static final Route GET_GUILD_ROLES = new Route("GET", "/guilds/{guild.id}/roles");
+    public static final Route GET_GUILD_MEMBER = new Route("GET", "/guilds/{guild.id}/members/{user.id}");
+    public static final Route ADD_GUILD_MEMBER_ROLE = new Route("PUT", "/guilds/{guild.id}/members/{user.id}/roles/{role.id}");
+    public static final Route REMOVE_GUILD_MEMBER_ROLE = new Route("DELETE", "/guilds/{guild.id}/members/{user.id}/roles/{role.id}");
+
+    public static final Route GET_CHANNEL = new Route("GET", "/channels/{channel.id}");
+    public static final Route GET_MESSAGE = new Route("GET", "/channels/{channel.id}/messages/{message.id}");
+    public static final Route GET_MESSAGES = new Route("GET", "/channels/{channel.id}/messages");
+    public static final Route CREATE_MESSAGE = new Route("POST", "/channels/{channel.id}/messages");
+    public static final Route EDIT_MESSAGE = new Route("PATCH", "/channels/{channel.id}/messages/{message.id}");
+    public static final Route DELETE_MESSAGE = new Route("DELETE", "/channels/{channel.id}/messages/{message.id}");
+    public static final Route ADD_REACTION = new Route("PUT", "/channels/{channel.id}/messages/{message.id}/reactions/{emoji}/@me");
+    public static final Route REMOVE_OWN_REACTION = new Route("DELETE", "/channels/{channel.id}/messages/{message.id}/reactions/{emoji}/@me");
+    public static final Route TRIGGER_TYPING = new Route("POST", "/channels/{channel.id}/typing");
+
+    public static final Route EXECUTE_WEBHOOK = new Route("POST", "/webhooks/{webhook.id}/{webhook.token}");
+
+    private Routes() {
+    }
+}
@@ -6,30 +6,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.http.HttpResponse;
-import java.util.concurrent.TimeUnit;
 
 public class ErrHandler {
     private static final Logger logger = LoggerFactory.getLogger(ErrHandler.class);
 
     /**
-     * Check json and rate limits for errors. If found, an error is thrown or the exhausted status is set for the http client
+     * Check json and rate limits for errors. If found, an error is logged. Rate limits are handled by the http client itself,
+     * so a 429 response here means the request was still rate limited after all retries
      * @param client Http client
      * @param json Json for error checking
      * @param request Sent request
      * @param response Response from request execution**/
-    public static void handle(SimpleHttpClient client, JsonNode json, HttpResponse<String> response, SimpleHttpClient.Request request) {
-        if(response.headers().map().containsKey("X-RateLimit-Limit")) {
-            int remaining = Integer.parseInt(response.headers().map().get("X-RateLimit-Remaining").get(0));
-            double resetAfter = Double.parseDouble(response.headers().map().get("X-RateLimit-Reset-After").get(0));
-            String bucket = response.headers().map().get("X-RateLimit-Bucket").get(0);
-
-            if(remaining <= 0) {
-                logger.warn("Rate limit bucket {} is exhausted!Reset after: {}s", bucket, resetAfter);
-                client.setExhausted(true, (int) Math.floor(resetAfter));
-                return;
-            }
-        }
-
+    public static void handle(SimpleHttpClient client, JsonNode json, HttpResponse<?> response, SimpleHttpClient.Request request) {
         if(response.statusCode() == 429) {
             if(json.has("retry_after")) {
                 String msg = json.get("message").asText();
@@ -40,24 +28,8 @@ public class ErrHandler {
                 res.append("Exceeded a rate limit!").append("\n");
                 res.append("Message: ").append(msg).append("\n");
                 res.append("Is global: ").append(global).append("\n");
-                res.append("The request will be completed in: ").append(retryAfter).append("s").append("\n");
+                res.append("Retry after: ").append(retryAfter).append("s").append("\n");
                 logger.warn(res.toString());
-
-                new Thread(() -> {
-                    try {
-                        TimeUnit.SECONDS.sleep((long) retryAfter);
-                    } catch(Exception e) {
-                        logger.error("", e);
-                    }
-
-                    HttpResponse<String> r = client.executeAndReturn(request);
-
-                    try {
-                        ErrHandler.handle(client, Constants.MAPPER.readTree(r.body()), r, request);
-                    } catch(Exception e) {
-                        logger.error("", e);
-                    }
-                }).start();
             }
         }
 
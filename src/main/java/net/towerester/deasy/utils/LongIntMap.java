@@ -0,0 +1,166 @@
+package net.towerester.deasy.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash map with primitive long keys and int values (open addressing with linear probing), used to index
+ * records by snowflake without boxing keys or values. Not thread-safe**/
+public class LongIntMap {
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    /**
+     * Callback of {@link #forEach(Consumer)}**/
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, int value);
+    }
+
+    public LongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Number of elements the map holds without resizing**/
+    public LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.used = new boolean[capacity];
+        this.size = 0;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return Value of the key or defaultValue if there is none**/
+    public int get(long key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : values[index];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    public void put(long key, int value) {
+        int index = LongObjectMap.hash(key) & mask;
+
+        while(used[index]) {
+            if(keys[index] == key) {
+                values[index] = value;
+                return;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        used[index] = true;
+        size++;
+
+        if(size * 4 > keys.length * 3) {
+            resize(keys.length << 1);
+        }
+    }
+
+    /**
+     * @return Removed value or defaultValue if the key wasn't in the map**/
+    public int remove(long key, int defaultValue) {
+        int index = indexOf(key);
+
+        if(index < 0) {
+            return defaultValue;
+        }
+
+        int previous = values[index];
+        used[index] = false;
+        size--;
+
+        // Move the following elements of the probe chain back, so lookups don't stop at the hole
+        int hole = index;
+        int next = (index + 1) & mask;
+
+        while(used[next]) {
+            int home = LongObjectMap.hash(keys[next]) & mask;
+
+            if(((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                used[hole] = true;
+                used[next] = false;
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        return previous;
+    }
+
+    public void forEach(Consumer consumer) {
+        for(int i = 0; i < keys.length; i++) {
+            if(used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int indexOf(long key) {
+        int index = LongObjectMap.hash(key) & mask;
+
+        while(used[index]) {
+            if(keys[index] == key) {
+                return index;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.used = new boolean[capacity];
+        this.mask = capacity - 1;
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldUsed[i]) {
+                int index = LongObjectMap.hash(oldKeys[i]) & mask;
+
+                while(used[index]) {
+                    index = (index + 1) & mask;
+                }
+
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                used[index] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package net.towerester.deasy.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash map with primitive long keys (open addressing with linear probing). Keys aren't boxed and there are no
+ * entry objects, so a map of snowflakes costs two arrays instead of a node, a Long and an entry per element.
+ * Not thread-safe**/
+public class LongObjectMap<V> {
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Callback of {@link #forEach(Consumer)}**/
+    @FunctionalInterface
+    public interface Consumer<V> {
+        void accept(long key, V value);
+    }
+
+    public LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Number of elements the map holds without resizing**/
+    public LongObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.size = 0;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return Value of the key or null if there is none**/
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @param value Value, must not be null
+     * @return Previous value of the key or null**/
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if(value == null) {
+            throw new IllegalArgumentException("Value must not be null");
+        }
+
+        int index = hash(key) & mask;
+
+        while(values[index] != null) {
+            if(keys[index] == key) {
+                V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        size++;
+
+        if(size * 4 > keys.length * 3) {
+            resize(keys.length << 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Removed value or null if the key wasn't in the map**/
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexOf(key);
+
+        if(index < 0) {
+            return null;
+        }
+
+        V previous = (V) values[index];
+        values[index] = null;
+        size--;
+
+        // Move the following elements of the probe chain back, so lookups don't stop at the hole
+        int hole = index;
+        int next = (index + 1) & mask;
+
+        while(values[next] != null) {
+            int home = hash(keys[next]) & mask;
+
+            if(((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                values[next] = null;
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> consumer) {
+        for(int i = 0; i < keys.length; i++) {
+            if(values[i] != null) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Copy of the values**/
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> res = new ArrayList<>(size);
+
+        for(Object value: values) {
+            if(value != null) {
+                res.add((V) value);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * @return Copy of the keys**/
+    public long[] keys() {
+        long[] res = new long[size];
+        int count = 0;
+
+        for(int i = 0; i < keys.length; i++) {
+            if(values[i] != null) {
+                res[count++] = keys[i];
+            }
+        }
+
+        return res;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private int indexOf(long key) {
+        int index = hash(key) & mask;
+
+        while(values[index] != null) {
+            if(keys[index] == key) {
+                return index;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldValues[i] != null) {
+                int index = hash(oldKeys[i]) & mask;
+
+                while(values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    static int hash(long key) {
+        // Snowflakes keep the entropy in the middle bits, so the key is mixed before masking
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
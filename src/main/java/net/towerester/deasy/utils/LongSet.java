@@ -0,0 +1,154 @@
+package net.towerester.deasy.utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs (open addressing with linear probing), the set counterpart of {@link LongObjectMap}.
+ * Not thread-safe**/
+public class LongSet {
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public LongSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Number of elements the set holds without resizing**/
+    public LongSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+
+        this.keys = new long[capacity];
+        this.used = new boolean[capacity];
+        this.size = 0;
+        this.mask = capacity - 1;
+    }
+
+    public boolean contains(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return False if the set already contained the key**/
+    public boolean add(long key) {
+        int index = LongObjectMap.hash(key) & mask;
+
+        while(used[index]) {
+            if(keys[index] == key) {
+                return false;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        used[index] = true;
+        size++;
+
+        if(size * 4 > keys.length * 3) {
+            resize(keys.length << 1);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return False if the set didn't contain the key**/
+    public boolean remove(long key) {
+        int index = indexOf(key);
+
+        if(index < 0) {
+            return false;
+        }
+
+        used[index] = false;
+        size--;
+
+        // Move the following elements of the probe chain back, so lookups don't stop at the hole
+        int hole = index;
+        int next = (index + 1) & mask;
+
+        while(used[next]) {
+            int home = LongObjectMap.hash(keys[next]) & mask;
+
+            if(((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                used[hole] = true;
+                used[next] = false;
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Copy of the elements**/
+    public long[] toArray() {
+        long[] res = new long[size];
+        int count = 0;
+
+        for(int i = 0; i < keys.length; i++) {
+            if(used[i]) {
+                res[count++] = keys[i];
+            }
+        }
+
+        return res;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int indexOf(long key) {
+        int index = LongObjectMap.hash(key) & mask;
+
+        while(used[index]) {
+            if(keys[index] == key) {
+                return index;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+
+        this.keys = new long[capacity];
+        this.used = new boolean[capacity];
+        this.mask = capacity - 1;
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldUsed[i]) {
+                int index = LongObjectMap.hash(oldKeys[i]) & mask;
+
+                while(used[index]) {
+                    index = (index + 1) & mask;
+                }
+
+                keys[index] = oldKeys[i];
+                used[index] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package net.towerester.deasy.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpHeaders;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks Discord rate limit buckets per route. Every request is mapped to a route key (HTTP method + route template)
+ * and a major parameter (channel, guild or webhook id). Discord reports which bucket a route belongs to with the
+ * X-RateLimit-Bucket header, so only requests sharing that bucket and major parameter wait for each other**/
+public class RateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+    private static final String UNKNOWN_BUCKET = "unknown";
+
+    private final Map<String, String> bucketHashes;
+    private final Map<String, Bucket> buckets;
+    private final ScheduledExecutorService scheduler;
+    private volatile long globalResetAt;
+
+    public static class Bucket {
+        private final String id;
+        private final ScheduledExecutorService scheduler;
+        // Not a monitor, so virtual threads waiting for the bucket don't pin their carrier
+        private final ReentrantLock lock;
+        private final Queue<CompletableFuture<Void>> pending;
+        private int limit;
+        private int remaining;
+        private long resetAt;
+        private long window;
+        private boolean drainScheduled;
+
+        public Bucket(String id, ScheduledExecutorService scheduler) {
+            this.id = id;
+            this.scheduler = scheduler;
+            this.lock = new ReentrantLock();
+            this.pending = new ArrayDeque<>();
+            this.limit = -1;
+            this.remaining = -1;
+            this.resetAt = 0;
+            this.window = 0;
+            this.drainScheduled = false;
+        }
+
+        /**
+         * Take a free slot of the bucket. If the bucket is exhausted, the returned future is completed by the
+         * rate limit timer when the bucket resets, no thread is blocked while waiting
+         * @return Future completed when the request is allowed to be sent**/
+        public CompletableFuture<Void> acquire() {
+            lock.lock();
+            try {
+                if(pending.isEmpty() && tryTake()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                pending.add(future);
+                scheduleDrain();
+
+                return future;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Update bucket state from the rate limit headers of a response
+         * @param limit Number of requests that can be made per reset period
+         * @param remaining Number of remaining requests that can be made
+         * @param resetAfter Number of milliseconds until the bucket resets**/
+        public void update(int limit, int remaining, long resetAfter) {
+            lock.lock();
+            try {
+                this.limit = limit;
+                this.remaining = remaining;
+                this.resetAt = System.currentTimeMillis() + resetAfter;
+                this.window = Math.max(window, resetAfter);
+            } finally {
+                lock.unlock();
+            }
+
+            drain();
+        }
+
+        /**
+         * Mark the bucket as exhausted, for example after a 429 response
+         * @param retryAfter Number of milliseconds until the bucket resets**/
+        public void exhaust(long retryAfter) {
+            lock.lock();
+            try {
+                this.remaining = 0;
+                this.resetAt = Math.max(resetAt, System.currentTimeMillis() + retryAfter);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getRemaining() {
+            lock.lock();
+            try {
+                return remaining;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return Number of requests waiting for the bucket to reset**/
+        public int getPendingCount() {
+            lock.lock();
+            try {
+                return pending.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public boolean isExhausted() {
+            lock.lock();
+            try {
+                return remaining == 0 && System.currentTimeMillis() < resetAt;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean tryTake() {
+            long now = System.currentTimeMillis();
+
+            if(remaining == 0 && now >= resetAt) {
+                // Until the next response updates the bucket, assume that it resets after the same window
+                remaining = limit > 0 ? limit : -1;
+                resetAt = now + window;
+            }
+
+            if(remaining == 0) {
+                return false;
+            }
+
+            if(remaining > 0) {
+                remaining--;
+            }
+
+            return true;
+        }
+
+        private void scheduleDrain() {
+            if(!drainScheduled) {
+                drainScheduled = true;
+                scheduler.schedule(() -> {
+                    lock.lock();
+                    try {
+                        drainScheduled = false;
+                    } finally {
+                        lock.unlock();
+                    }
+
+                    drain();
+                }, Math.max(0, resetAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void drain() {
+            List<CompletableFuture<Void>> ready = new ArrayList<>();
+
+            lock.lock();
+            try {
+                while(!pending.isEmpty() && tryTake()) {
+                    ready.add(pending.poll());
+                }
+
+                if(!pending.isEmpty()) {
+                    scheduleDrain();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            for(CompletableFuture<Void> future: ready) {
+                future.complete(null);
+            }
+        }
+    }
+
+    public RateLimiter() {
+        this.bucketHashes = new ConcurrentHashMap<>();
+        this.buckets = new ConcurrentHashMap<>();
+        this.globalResetAt = 0;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "RateLimiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Wait (without blocking a thread) until the request is allowed to be sent
+     * @param method Request HTTP method
+     * @param path Request path relative to the base url
+     * @return Future completed when the request is allowed to be sent**/
+    public CompletableFuture<Void> acquire(String method, String path) {
+        return acquireRoute(getRouteKey(method, path), getMajorParameter(path));
+    }
+
+    /**
+     * Wait (without blocking a thread) until the request is allowed to be sent, for requests that know their route
+     * @param routeKey Route key, see {@link #getRouteKey(String, String)}
+     * @param majorParameter Major parameter of the request or empty string
+     * @return Future completed when the request is allowed to be sent**/
+    public CompletableFuture<Void> acquireRoute(String routeKey, String majorParameter) {
+        long globalWait = globalResetAt - System.currentTimeMillis();
+
+        if(globalWait > 0) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            scheduler.schedule(() -> future.complete(null), globalWait, TimeUnit.MILLISECONDS);
+
+            return future.thenCompose(v -> acquireRoute(routeKey, majorParameter));
+        }
+
+        return getRouteBucket(routeKey, majorParameter).acquire();
+    }
+
+    /**
+     * @return Timer used for rate limit waits**/
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Update the bucket of the route from response headers
+     * @param method Request HTTP method
+     * @param path Request path relative to the base url
+     * @param headers Response headers**/
+    public void update(String method, String path, HttpHeaders headers) {
+        updateRoute(getRouteKey(method, path), getMajorParameter(path), headers);
+    }
+
+    /**
+     * Update the bucket of the route from response headers, for requests that know their route
+     * @param routeKey Route key, see {@link #getRouteKey(String, String)}
+     * @param majorParameter Major parameter of the request or empty string
+     * @param headers Response headers**/
+    public void updateRoute(String routeKey, String majorParameter, HttpHeaders headers) {
+        Optional<String> bucketHash = headers.firstValue("X-RateLimit-Bucket");
+
+        if(bucketHash.isEmpty()) {
+            return;
+        }
+
+        String previous = bucketHashes.put(routeKey, bucketHash.get());
+
+        if(previous != null && !previous.equals(bucketHash.get())) {
+            logger.debug("Route {} moved from bucket {} to {}", routeKey, previous, bucketHash.get());
+        }
+
+        int limit = Integer.parseInt(headers.firstValue("X-RateLimit-Limit").orElse("-1"));
+        int remaining = Integer.parseInt(headers.firstValue("X-RateLimit-Remaining").orElse("-1"));
+        double resetAfter = Double.parseDouble(headers.firstValue("X-RateLimit-Reset-After").orElse("0"));
+        Bucket bucket = getRouteBucket(routeKey, majorParameter);
+
+        bucket.update(limit, remaining, (long) Math.ceil(resetAfter * 1000));
+
+        if(remaining == 0) {
+            logger.warn("Rate limit bucket {} is exhausted!Reset after: {}s", bucket.getId(), resetAfter);
+        }
+    }
+
+    /**
+     * Mark the bucket of the route or all buckets (if global) as exhausted
+     * @param method Request HTTP method
+     * @param path Request path relative to the base url
+     * @param retryAfter Number of milliseconds until requests can be made again
+     * @param global Whether the global rate limit was hit**/
+    public void exhaust(String method, String path, long retryAfter, boolean global) {
+        exhaustRoute(getRouteKey(method, path), getMajorParameter(path), retryAfter, global);
+    }
+
+    /**
+     * Mark the bucket of the route or all buckets (if global) as exhausted, for requests that know their route
+     * @param routeKey Route key, see {@link #getRouteKey(String, String)}
+     * @param majorParameter Major parameter of the request or empty string
+     * @param retryAfter Number of milliseconds until requests can be made again
+     * @param global Whether the global rate limit was hit**/
+    public void exhaustRoute(String routeKey, String majorParameter, long retryAfter, boolean global) {
+        if(global) {
+            exhaustGlobal(retryAfter);
+        } else {
+            getRouteBucket(routeKey, majorParameter).exhaust(retryAfter);
+        }
+    }
+
+    /**
+     * Block all requests for the given time
+     * @param retryAfter Number of milliseconds until requests can be made again**/
+    public void exhaustGlobal(long retryAfter) {
+        this.globalResetAt = System.currentTimeMillis() + retryAfter;
+    }
+
+    public boolean isGloballyExhausted() {
+        return System.currentTimeMillis() < globalResetAt;
+    }
+
+    /**
+     * @return Bucket for the route and its major parameter**/
+    public Bucket getBucket(String method, String path) {
+        return getRouteBucket(getRouteKey(method, path), getMajorParameter(path));
+    }
+
+    /**
+     * @param routeKey Route key, see {@link #getRouteKey(String, String)}
+     * @param majorParameter Major parameter of the request or empty string
+     * @return Bucket for the route and its major parameter**/
+    public Bucket getRouteBucket(String routeKey, String majorParameter) {
+        String hash = bucketHashes.getOrDefault(routeKey, UNKNOWN_BUCKET + ":" + routeKey);
+        String id = hash + ":" + majorParameter;
+
+        return buckets.computeIfAbsent(id, key -> new Bucket(key, scheduler));
+    }
+
+    /**
+     * Build route key from method and path. All ids (the major parameter too) are replaced with placeholders,
+     * because one bucket hash is shared between major parameters. The major parameter is added to the bucket id separately
+     * @param method Request HTTP method
+     * @param path Request path relative to the base url
+     * @return Route key like "GET /channels/{id}/messages/{id}"**/
+    public static String getRouteKey(String method, String path) {
+        String[] segments = stripQuery(path).split("/");
+        StringBuilder res = new StringBuilder(method).append(" ");
+
+        for(int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+
+            if(segment.isEmpty()) {
+                continue;
+            }
+
+            res.append("/");
+
+            if(i > 0 && segments[i - 1].equals("reactions")) {
+                // Emoji and user of the reaction routes share one bucket
+                res.append("{reaction}");
+                break;
+            } else if(isSnowflake(segment) || (i > 1 && segments[i - 2].equals("webhooks"))) {
+                res.append("{id}");
+            } else {
+                res.append(segment);
+            }
+        }
+
+        return res.toString();
+    }
+
+    /**
+     * @param path Request path relative to the base url
+     * @return Major parameter (channel id, guild id or webhook id with token) or empty string if the route has no major parameter**/
+    public static String getMajorParameter(String path) {
+        String[] segments = stripQuery(path).split("/");
+
+        for(int i = 0; i < segments.length - 1; i++) {
+            switch (segments[i]) {
+                case "channels", "guilds" -> {
+                    return segments[i + 1];
+                }
+                case "webhooks" -> {
+                    return i + 2 < segments.length ? segments[i + 1] + "/" + segments[i + 2] : segments[i + 1];
+                }
+            }
+        }
+
+        return "";
+    }
+
+    private static String stripQuery(String path) {
+        int idx = path.indexOf('?');
+        return idx == -1 ? path : path.substring(0, idx);
+    }
+
+    private static boolean isSnowflake(String segment) {
+        for(int i = 0; i < segment.length(); i++) {
+            if(!Character.isDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+
+        return !segment.isEmpty();
+    }
+}
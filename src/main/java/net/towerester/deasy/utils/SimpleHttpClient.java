@@ -1,43 +1,60 @@
 package net.towerester.deasy.utils;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import net.towerester.deasy.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import javax.net.ssl.SSLSession;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 public class SimpleHttpClient {
+    public static final int MAX_RETRIES = 3;
+    private static final Logger logger = LoggerFactory.getLogger(SimpleHttpClient.class);
     private HttpClient client;
     private String baseUrl;
     private Map<String, String> defaultHeaders;
-    private boolean exhausted;
-    private int resetAfter;
+    private final RateLimiter rateLimiter;
 
     public static class Request {
         private String url;
         private String method;
         private Map<String, String> headers;
         private HttpRequest.BodyPublisher body;
+        private String routeKey;
+        private String majorParameter;
 
         public static class Builder {
             private String url;
             private String method;
             private Map<String, String> headers;
             private HttpRequest.BodyPublisher body;
+            private String routeKey;
+            private String majorParameter;
 
             public Builder(String url, String method) {
                 this.url = url;
                 this.method = method;
                 this.headers = new HashMap<>();
                 this.body = null;
+                this.routeKey = null;
+                this.majorParameter = null;
             }
 
             /**
@@ -72,10 +89,20 @@ public class SimpleHttpClient {
                 return this;
             }
 
+            /**
+             * Set the rate limit route of the request, so it isn't derived from the url on every execution
+             * @param routeKey Route key, see {@link RateLimiter#getRouteKey(String, String)}
+             * @param majorParameter Major parameter or empty string**/
+            public Builder setRoute(String routeKey, String majorParameter) {
+                this.routeKey = routeKey;
+                this.majorParameter = majorParameter;
+                return this;
+            }
+
             /**
              * @return Built Request**/
             public Request build() {
-                return new Request(url, method, headers, body);
+                return new Request(url, method, headers, body, routeKey, majorParameter);
             }
         }
 
@@ -85,10 +112,23 @@ public class SimpleHttpClient {
          * @param url Request url
          * @param headers Request header**/
         public Request(String url, String method, Map<String, String> headers, HttpRequest.BodyPublisher body) {
+            this(url, method, headers, body, null, null);
+        }
+
+        /**
+         * @param body Request body
+         * @param method Request method
+         * @param url Request url
+         * @param headers Request header
+         * @param routeKey Rate limit route key or null to derive it from the url
+         * @param majorParameter Major parameter or null to derive it from the url**/
+        public Request(String url, String method, Map<String, String> headers, HttpRequest.BodyPublisher body, String routeKey, String majorParameter) {
             this.url = url;
             this.method = method;
             this.headers = headers;
             this.body = body;
+            this.routeKey = routeKey;
+            this.majorParameter = majorParameter;
         }
 
         /**
@@ -116,6 +156,8 @@ public class SimpleHttpClient {
          * @param url Request url*/
         public void setUrl(String url) {
             this.url = url;
+            this.routeKey = null;
+            this.majorParameter = null;
         }
 
         /**
@@ -124,11 +166,36 @@ public class SimpleHttpClient {
             return this.url;
         }
 
+        /**
+         * @return Rate limit route key, derived from the method and the url if it isn't set**/
+        public String getRouteKey() {
+            return routeKey == null ? RateLimiter.getRouteKey(method, url) : routeKey;
+        }
+
+        /**
+         * @return Major parameter or empty string, derived from the url if it isn't set**/
+        public String getMajorParameter() {
+            return majorParameter == null ? RateLimiter.getMajorParameter(url) : majorParameter;
+        }
+
+        /**
+         * @return Request HTTP method**/
+        public String getMethod() {
+            return this.method;
+        }
+
         /**
          * Create original HttpRequest given current request**/
         public HttpRequest toHttpRequest() {
+            return toHttpRequestBuilder(url).build();
+        }
+
+        /**
+         * Create original HttpRequest builder given current request
+         * @param fullUrl Absolute request url**/
+        public HttpRequest.Builder toHttpRequestBuilder(String fullUrl) {
             HttpRequest.Builder b = HttpRequest.newBuilder();
-            b.uri(URI.create(url));
+            b.uri(URI.create(fullUrl));
 
             switch (method) {
                 case "GET" -> b.GET();
@@ -142,7 +209,7 @@ public class SimpleHttpClient {
                 b.header(entry.getKey(), entry.getValue());
             }
 
-            return b.build();
+            return b;
         }
     }
 
@@ -150,11 +217,13 @@ public class SimpleHttpClient {
         private String baseUrl;
         private Map<String, String> defaultHeaders;
         private boolean allowInsecureConnections;
+        private boolean useVirtualThreads;
 
         public Builder() {
             this.baseUrl = "";
             this.defaultHeaders = new HashMap<>();
             this.allowInsecureConnections = false;
+            this.useVirtualThreads = false;
         }
 
         /**
@@ -181,10 +250,21 @@ public class SimpleHttpClient {
             return this;
         }
 
+        /**
+         * @param useVirtualThreads If set to true, responses are handled on virtual threads (on Java 21+, otherwise on a cached thread pool)**/
+        public Builder setUseVirtualThreads(boolean useVirtualThreads) {
+            this.useVirtualThreads = useVirtualThreads;
+            return this;
+        }
+
         /**
          * @return Built SimpleHttpClient**/
         public SimpleHttpClient build() {
-            HttpClient.Builder base = HttpClient.newBuilder();
+            HttpClient.Builder base = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+
+            if(useVirtualThreads) {
+                base.executor(VirtualThreads.newExecutor("SimpleHttpClient"));
+            }
 
             if(allowInsecureConnections) {
                 TrustManager[] trustAllCerts = new TrustManager[]{
@@ -223,8 +303,8 @@ public class SimpleHttpClient {
      * @param defaultHeaders Default headers**/
     public SimpleHttpClient(HttpClient client, String baseUrl, Map<String, String> defaultHeaders) {
         this.client = client;
-        this.exhausted = false;
-        this.resetAfter = 0;
+        this.rateLimiter = new RateLimiter();
+        this.baseUrl = "";
 
         if(isValidUrl(baseUrl)) {
             this.baseUrl = baseUrl;
@@ -240,18 +320,23 @@ public class SimpleHttpClient {
     }
 
     /**
+     * Exhaust the global rate limit. Per-route buckets are handled by {@link RateLimiter} automatically
      * @param exhausted If the value is set to true, then when calling to execute or executeAndReturn method, the thread will wait for resetAfter number of seconds, and after that it will execute the request
      * @param resetAfter The number of seconds that the thread will wait before executing if exhausted (1 second is added to the resetAfter value for safer execution of requests)**/
     public void setExhausted(boolean exhausted, int resetAfter) {
-        this.exhausted = exhausted;
-
-        if(exhausted) {
-            this.resetAfter = resetAfter;
-        }
+        rateLimiter.exhaustGlobal(exhausted ? TimeUnit.SECONDS.toMillis(resetAfter + 1) : 0);
     }
 
+    /**
+     * @return Whether the global rate limit is exhausted**/
     public boolean isExhausted() {
-        return exhausted;
+        return rateLimiter.isGloballyExhausted();
+    }
+
+    /**
+     * @return Per-route rate limit buckets of this client**/
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
     }
 
     /**
@@ -266,36 +351,36 @@ public class SimpleHttpClient {
     /**
      * Execute an HTTP request
      * @return String response body**/
-    public synchronized String execute(Request request) {
-        try {
-            if(exhausted) {
-                wait(TimeUnit.SECONDS.toMillis(resetAfter + 1));
-
-                this.exhausted = false;
-                this.resetAfter = 0;
-
-                if(!baseUrl.isEmpty()) {
-                    request.setUrl(baseUrl + request.getUrl());
-                }
+    public String execute(Request request) {
+        HttpResponse<String> response = executeAndReturn(request);
+        return response == null ? null : response.body();
+    }
 
-                if(!defaultHeaders.isEmpty()) {
-                    for(Map.Entry<String, String> entry: this.defaultHeaders.entrySet()) {
-                        request.addOrReplaceHeader(entry.getKey(), entry.getValue());
-                    }
-                }
-            } else {
-                if(!baseUrl.isEmpty()) {
-                    request.setUrl(baseUrl + request.getUrl());
-                }
+    /**
+     * Execute an HTTP request and wait for the response
+     * @return Response**/
+    public HttpResponse<String> executeAndReturn(Request request) {
+        try {
+            return executeAsync(request).join();
+        } catch(Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-                if(!defaultHeaders.isEmpty()) {
-                    for(Map.Entry<String, String> entry: this.defaultHeaders.entrySet()) {
-                        request.addOrReplaceHeader(entry.getKey(), entry.getValue());
-                    }
-                }
+    /**
+     * Execute an HTTP request without blocking the calling thread
+     * @return Future with the response body**/
+    public CompletableFuture<String> executeBodyAsync(Request request) {
+        return executeAsync(request).thenApply(HttpResponse::body);
+    }
 
-            }
-            return client.sendAsync(request.toHttpRequest(), HttpResponse.BodyHandlers.ofString()).join().body();
+    /**
+     * Execute an HTTP request and wait for the response. The body is read as UTF-8 bytes and parsed without building a string
+     * @return Response with the json body (a missing node if the body is empty or isn't json)**/
+    public HttpResponse<JsonNode> executeJson(Request request) {
+        try {
+            return executeJsonAsync(request).join();
         } catch(Exception e) {
             e.printStackTrace();
             return null;
@@ -303,42 +388,152 @@ public class SimpleHttpClient {
     }
 
     /**
-     * Execute an HTTP request
-     * @return Response**/
-    public synchronized HttpResponse<String> executeAndReturn(Request request) {
-        try {
-            if(exhausted) {
-                wait(TimeUnit.SECONDS.toMillis(resetAfter + 1));
+     * Execute an HTTP request without blocking the calling thread. The body is read as UTF-8 bytes and parsed without building a string.
+     * It's parsed after the rate limits and retries are handled, so a body that isn't json (an HTML error page of a proxy) doesn't fail the request
+     * @return Future with the response with the json body (a missing node if the body is empty or isn't json)**/
+    public CompletableFuture<HttpResponse<JsonNode>> executeJsonAsync(Request request) {
+        return executeAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(JsonResponse::new);
+    }
 
-                this.exhausted = false;
-                this.resetAfter = 0;
+    /**
+     * Execute an HTTP request without blocking the calling thread. If the rate limit bucket of the request is exhausted,
+     * the request is sent by the rate limit timer when the bucket resets. 429 responses are retried up to {@link #MAX_RETRIES} times
+     * @return Future with the response**/
+    public CompletableFuture<HttpResponse<String>> executeAsync(Request request) {
+        return executeAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
 
-                if(!baseUrl.isEmpty()) {
-                    request.setUrl(baseUrl + request.getUrl());
-                }
+    /**
+     * Execute an HTTP request without blocking the calling thread, the body is read by the handler
+     * @param bodyHandler Handler of the response body
+     * @return Future with the response**/
+    public <T> CompletableFuture<HttpResponse<T>> executeAsync(Request request, HttpResponse.BodyHandler<T> bodyHandler) {
+        return executeAsync(request, bodyHandler, 0);
+    }
 
-                if(!defaultHeaders.isEmpty()) {
-                    for(Map.Entry<String, String> entry: this.defaultHeaders.entrySet()) {
-                        request.addOrReplaceHeader(entry.getKey(), entry.getValue());
-                    }
-                }
-            } else {
-                if(!baseUrl.isEmpty()) {
-                    request.setUrl(baseUrl + request.getUrl());
-                }
+    private <T> CompletableFuture<HttpResponse<T>> executeAsync(Request request, HttpResponse.BodyHandler<T> bodyHandler, int attempt) {
+        String routeKey = request.getRouteKey();
+        String majorParameter = request.getMajorParameter();
+
+        return rateLimiter.acquireRoute(routeKey, majorParameter)
+                .thenCompose(v -> client.sendAsync(prepare(request), bodyHandler))
+                .thenCompose(response -> {
+                    rateLimiter.updateRoute(routeKey, majorParameter, response.headers());
+
+                    if(response.statusCode() == 429 && attempt < MAX_RETRIES) {
+                        long retryAfter = getRetryAfter(response);
+                        boolean global = response.headers().firstValue("X-RateLimit-Global").map(Boolean::parseBoolean).orElse(false);
 
-                if(!defaultHeaders.isEmpty()) {
-                    for(Map.Entry<String, String> entry: this.defaultHeaders.entrySet()) {
-                        request.addOrReplaceHeader(entry.getKey(), entry.getValue());
+                        logger.warn("Exceeded a rate limit on {} {}!Retry after: {}ms, is global: {}", request.getMethod(), request.getUrl(), retryAfter, global);
+                        rateLimiter.exhaustRoute(routeKey, majorParameter, retryAfter, global);
+
+                        return executeAsync(request, bodyHandler, attempt + 1);
                     }
-                }
 
+                    return CompletableFuture.completedFuture(response);
+                });
+    }
+
+    /**
+     * Parse a response body from its UTF-8 bytes, so it isn't decoded to a string first**/
+    private static JsonNode readJson(HttpResponse<byte[]> response) {
+        byte[] body = response.body();
+
+        if(body == null || body.length == 0) {
+            return MissingNode.getInstance();
+        }
+
+        try {
+            JsonNode json = Constants.MAPPER.readTree(body);
+            return json == null ? MissingNode.getInstance() : json;
+        } catch(IOException e) {
+            logger.debug("Response of {} with status {} isn't json", response.uri(), response.statusCode(), e);
+            return MissingNode.getInstance();
+        }
+    }
+
+    /**
+     * Response with the parsed json body, other parts are taken from the response with the raw body**/
+    private static final class JsonResponse implements HttpResponse<JsonNode> {
+        private final HttpResponse<byte[]> response;
+        private final JsonNode body;
+
+        private JsonResponse(HttpResponse<byte[]> response) {
+            this.response = response;
+            this.body = readJson(response);
+        }
+
+        @Override
+        public int statusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public HttpRequest request() {
+            return response.request();
+        }
+
+        @Override
+        public Optional<HttpResponse<JsonNode>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return response.headers();
+        }
+
+        @Override
+        public JsonNode body() {
+            return body;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return response.sslSession();
+        }
+
+        @Override
+        public URI uri() {
+            return response.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return response.version();
+        }
+    }
+
+    private long getRetryAfter(HttpResponse<?> response) {
+        try {
+            JsonNode json = null;
+
+            if(response.body() instanceof JsonNode node) {
+                json = node;
+            } else if(response.body() instanceof String text) {
+                json = Constants.MAPPER.readTree(text);
+            } else if(response.body() instanceof byte[] bytes) {
+                json = Constants.MAPPER.readTree(bytes);
+            }
+
+            if(json != null && json.has("retry_after")) {
+                return (long) Math.ceil(json.get("retry_after").asDouble() * 1000);
             }
-            return client.sendAsync(request.toHttpRequest(), HttpResponse.BodyHandlers.ofString()).join();
         } catch(Exception e) {
-            e.printStackTrace();
-            return null;
+            logger.debug("Can't read 429 response body", e);
         }
+
+        return TimeUnit.SECONDS.toMillis(response.headers().firstValue("Retry-After").map(Long::parseLong).orElse(1L));
+    }
+
+    private HttpRequest prepare(Request request) {
+        HttpRequest.Builder b = request.toHttpRequestBuilder(baseUrl.isEmpty() ? request.getUrl() : baseUrl + request.getUrl());
+
+        for(Map.Entry<String, String> entry: this.defaultHeaders.entrySet()) {
+            b.setHeader(entry.getKey(), entry.getValue());
+        }
+
+        return b.build();
     }
 
     private boolean isValidUrl(String url) {
@@ -0,0 +1,91 @@
+package net.towerester.deasy.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.Instant;
+
+/**
+ * Discord id. Snowflakes are sent as strings in json, but they are 64-bit numbers: 42 bits of milliseconds since
+ * the Discord epoch, 5 bits of worker id, 5 bits of process id and a 12-bit increment. The library stores them
+ * as primitive longs (see {@link LongObjectMap} and {@link LongSet}), this class parses and formats them**/
+public final class Snowflake implements Comparable<Snowflake> {
+    /**
+     * First second of 2015 in milliseconds since the Unix epoch**/
+    public static final long DISCORD_EPOCH = 1420070400000L;
+
+    private final long id;
+
+    private Snowflake(long id) {
+        this.id = id;
+    }
+
+    public static Snowflake of(long id) {
+        return new Snowflake(id);
+    }
+
+    public static Snowflake of(String id) {
+        return new Snowflake(parse(id));
+    }
+
+    /**
+     * @param id Snowflake string
+     * @return Snowflake as a long**/
+    public static long parse(String id) {
+        return Long.parseUnsignedLong(id);
+    }
+
+    /**
+     * Read a snowflake field without creating objects
+     * @param node Json object
+     * @param field Field name
+     * @return Snowflake as a long or 0 if the node or the field is missing or null**/
+    public static long parse(JsonNode node, String field) {
+        if(node == null) {
+            return 0;
+        }
+
+        JsonNode value = node.get(field);
+
+        if(value == null || value.isNull()) {
+            return 0;
+        }
+
+        return value.isTextual() ? parse(value.asText()) : value.asLong();
+    }
+
+    /**
+     * @return Creation time of the entity**/
+    public static Instant getCreationTime(long id) {
+        return Instant.ofEpochMilli((id >>> 22) + DISCORD_EPOCH);
+    }
+
+    public long asLong() {
+        return id;
+    }
+
+    /**
+     * @return Creation time of the entity**/
+    public Instant getCreationTime() {
+        return getCreationTime(id);
+    }
+
+    @Override
+    public int compareTo(Snowflake other) {
+        return Long.compareUnsigned(id, other.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Snowflake && ((Snowflake) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toUnsignedString(id);
+    }
+}
@@ -0,0 +1,53 @@
+package net.towerester.deasy.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates virtual thread executors when the runtime supports them. The library targets Java 17, so
+ * the Java 21 api is looked up by reflection and a cached pool of daemon threads is used when it's missing**/
+public class VirtualThreads {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final Method NEW_EXECUTOR = findExecutorFactory();
+
+    private VirtualThreads() {}
+
+    /**
+     * @return Whether executors created by {@link #newExecutor(String)} use virtual threads**/
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * @param name Name prefix of the fallback threads
+     * @return Executor starting a new virtual thread per task, or a cached pool of daemon threads before Java 21**/
+    public static ExecutorService newExecutor(String name) {
+        if(NEW_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_EXECUTOR.invoke(null);
+            } catch(Exception e) {
+                logger.warn("Can't create virtual thread executor!Using platform threads", e);
+            }
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Method findExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch(NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
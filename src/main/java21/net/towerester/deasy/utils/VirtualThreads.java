@@ -0,0 +1,24 @@
+package net.towerester.deasy.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Java 21 version of the class, packaged into the multi-release jar. Virtual threads are always available here,
+ * so executors are created directly**/
+public class VirtualThreads {
+    private VirtualThreads() {}
+
+    /**
+     * @return Whether executors created by {@link #newExecutor(String)} use virtual threads**/
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * @param name Name prefix of the threads
+     * @return Executor starting a new virtual thread per task**/
+    public static ExecutorService newExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+}
@@ -0,0 +1,88 @@
+package net.towerester.deasy.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.towerester.deasy.Constants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class EntityCacheTest {
+    private static final String GUILD = "{\"id\":\"10\",\"name\":\"Guild\"," +
+            "\"channels\":[{\"id\":\"20\",\"name\":\"general\"}]," +
+            "\"roles\":[{\"id\":\"30\",\"name\":\"@everyone\"}]," +
+            "\"voice_states\":[{\"user_id\":\"41\",\"channel_id\":\"21\"}]," +
+            "\"members\":[{\"user\":{\"id\":\"40\"}},{\"user\":{\"id\":\"41\"}}]}";
+
+    private static JsonNode json(String text) throws Exception {
+        return Constants.MAPPER.readTree(text);
+    }
+
+    @Test
+    public void fillFromGuildCreate() throws Exception {
+        EntityCache cache = new EntityCache.Builder().setMemberPolicy(CachePolicy.all()).build();
+        cache.handle("GUILD_CREATE", json(GUILD));
+
+        Assertions.assertEquals("Guild", cache.getGuild(10).get("name").asText());
+        Assertions.assertFalse(cache.getGuild(10).has("channels"));
+        Assertions.assertEquals("10", cache.getChannel(20).get("guild_id").asText());
+        Assertions.assertEquals("10", cache.getRole(30).get("guild_id").asText());
+        Assertions.assertEquals(2, cache.getMembers(10).size());
+
+        cache.handle("GUILD_MEMBER_REMOVE", json("{\"guild_id\":\"10\",\"user\":{\"id\":\"40\"}}"));
+        Assertions.assertNull(cache.getMember(10, 40));
+
+        cache.handle("GUILD_DELETE", json("{\"id\":\"10\"}"));
+        Assertions.assertNull(cache.getGuild(10));
+        Assertions.assertNull(cache.getChannel(20));
+        Assertions.assertNull(cache.getRole(30));
+        Assertions.assertEquals(0, cache.getMemberCount());
+    }
+
+    @Test
+    public void cacheOnlyVoiceMembers() throws Exception {
+        EntityCache cache = new EntityCache.Builder().setMemberPolicy(CachePolicy.voiceMembers()).build();
+        cache.handle("GUILD_CREATE", json(GUILD));
+
+        Assertions.assertNull(cache.getMember(10, 40));
+        Assertions.assertNotNull(cache.getMember(10, 41));
+
+        cache.handle("VOICE_STATE_UPDATE", json("{\"guild_id\":\"10\",\"channel_id\":\"21\",\"user_id\":\"40\",\"member\":{\"user\":{\"id\":\"40\"}}}"));
+        cache.handle("VOICE_STATE_UPDATE", json("{\"guild_id\":\"10\",\"channel_id\":null,\"user_id\":\"41\"}"));
+
+        Assertions.assertNotNull(cache.getMember(10, 40));
+        Assertions.assertNull(cache.getMember(10, 41));
+
+        // Members requested with op 8 aren't in voice channels, only the cached one is updated
+        cache.handle("GUILD_MEMBERS_CHUNK", json("{\"guild_id\":\"10\",\"members\":[{\"user\":{\"id\":\"40\"},\"nick\":\"voice\"}," +
+                "{\"user\":{\"id\":\"41\"}},{\"user\":{\"id\":\"42\"}}]}"));
+
+        Assertions.assertEquals("voice", cache.getMember(10, 40).get("nick").asText());
+        Assertions.assertNull(cache.getMember(10, 41));
+        Assertions.assertNull(cache.getMember(10, 42));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        EntityCache cache = new EntityCache.Builder().setChannelPolicy(CachePolicy.lru(10)).build();
+
+        for(int i = 1; i <= 10; i++) {
+            cache.handle("CHANNEL_CREATE", json("{\"id\":\"" + i + "\"}"));
+        }
+
+        cache.getChannel(1);
+        cache.handle("CHANNEL_CREATE", json("{\"id\":\"11\"}"));
+
+        Assertions.assertEquals(9, cache.getChannelCount());
+        Assertions.assertNotNull(cache.getChannel(1));
+        Assertions.assertNotNull(cache.getChannel(11));
+        Assertions.assertNull(cache.getChannel(2));
+    }
+
+    @Test
+    public void skipDisabledTypes() throws Exception {
+        EntityCache cache = new EntityCache.Builder().setRolePolicy(CachePolicy.none()).build();
+        cache.handle("GUILD_CREATE", json(GUILD));
+
+        Assertions.assertNull(cache.getRole(30));
+        Assertions.assertNotNull(cache.getChannel(20));
+    }
+}
@@ -0,0 +1,108 @@
+package net.towerester.deasy.cache;
+
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.gateway.entities.DiscordStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OffHeapMemberStoreTest {
+    private static final String MEMBER = "{\"user\":{\"id\":\"%d\",\"username\":\"user%d\",\"global_name\":null,\"avatar\":\"a1\",\"bot\":%b}," +
+            "\"nick\":\"nick\",\"roles\":[\"30\",\"20\"],\"joined_at\":\"2021-05-01T12:00:00.000000+00:00\",\"premium_since\":null," +
+            "\"deaf\":false,\"mute\":true,\"pending\":false,\"flags\":2}";
+
+    private static void put(OffHeapMemberStore store, long guildId, long userId, boolean bot) throws Exception {
+        store.putMember(guildId, Constants.MAPPER.readTree(String.format(MEMBER, userId, userId, bot)));
+    }
+
+    @Test
+    public void readThroughView() throws Exception {
+        OffHeapMemberStore store = new OffHeapMemberStore();
+        put(store, 10, 40, true);
+
+        MemberView view = store.getMember(10, 40);
+        Assertions.assertEquals("user40", view.getUsername());
+        Assertions.assertNull(view.getGlobalName());
+        Assertions.assertEquals("nick", view.getNick());
+        Assertions.assertArrayEquals(new long[]{20, 30}, view.getRoles());
+        Assertions.assertEquals(1619870400000L, view.getJoinedAt().toEpochMilli());
+        Assertions.assertNull(view.getPremiumSince());
+        Assertions.assertTrue(view.isMute());
+        Assertions.assertTrue(view.isBot());
+        Assertions.assertEquals(2, view.getFlags());
+        Assertions.assertNull(view.getStatus());
+
+        store.updatePresence(10, Constants.MAPPER.readTree("{\"user\":{\"id\":\"40\"},\"status\":\"dnd\",\"activities\":[{\"name\":\"Game\"}]}"));
+        Assertions.assertEquals(DiscordStatus.DO_NOT_DISTURB, view.getStatus());
+        Assertions.assertEquals("Game", view.getActivityName());
+
+        // Replacing the member keeps the presence
+        put(store, 10, 40, true);
+        Assertions.assertEquals(DiscordStatus.DO_NOT_DISTURB, view.getStatus());
+        Assertions.assertEquals("20", view.toJson().get("roles").get(0).asText());
+    }
+
+    @Test
+    public void reuseSlotsAndInternValues() throws Exception {
+        OffHeapMemberStore store = new OffHeapMemberStore();
+
+        for(long user = 1; user <= 20000; user++) {
+            put(store, 10, user, false);
+        }
+
+        MemberView removed = store.getMember(10, 5);
+        store.removeMember(10, 5);
+        put(store, 11, 99999, false);
+
+        Assertions.assertThrows(IllegalStateException.class, removed::getUsername);
+        Assertions.assertEquals(20000, store.getMemberCount());
+        Assertions.assertEquals(19999, store.getMemberCount(10));
+
+        List<Long> users = new ArrayList<>();
+        store.forEachMember(10, view -> users.add(view.getUserId()));
+        Assertions.assertEquals(19999, users.size());
+
+        store.removeGuild(10);
+        Assertions.assertEquals(1, store.getMemberCount());
+        Assertions.assertNull(store.getMember(10, 1));
+    }
+
+    @Test
+    public void compactArenaOnChurn() throws Exception {
+        OffHeapMemberStore store = new OffHeapMemberStore();
+        put(store, 10, 1, false);
+
+        // Every presence interns a new activity name, the old ones are garbage
+        for(int i = 0; i < 300000; i++) {
+            store.updatePresence(10, Constants.MAPPER.readTree("{\"user\":{\"id\":\"1\"},\"status\":\"online\",\"activities\":[{\"name\":\"Activity with a long name " + i + "\"}]}"));
+        }
+
+        // Members that left leave their values behind too
+        for(long user = 2; user < 50000; user++) {
+            put(store, 11, user, false);
+        }
+        store.removeGuild(11);
+
+        MemberView view = store.getMember(10, 1);
+        Assertions.assertEquals("Activity with a long name 299999", view.getActivityName());
+        Assertions.assertEquals("user1", view.getUsername());
+        Assertions.assertArrayEquals(new long[]{20, 30}, view.getRoles());
+        Assertions.assertTrue(store.getArenaUsed() <= 4L * InternArena.CHUNK_BYTES, "Arena wasn't compacted: " + store.getArenaUsed());
+    }
+
+    @Test
+    public void storeCacheMembersOffHeap() throws Exception {
+        EntityCache cache = new EntityCache.Builder().setMemberPolicy(CachePolicy.all()).setOffHeapMembers(true).build();
+        cache.handle("GUILD_CREATE", Constants.MAPPER.readTree("{\"id\":\"10\",\"members\":[" + String.format(MEMBER, 40, 40, false) + "]," +
+                "\"presences\":[{\"user\":{\"id\":\"40\"},\"status\":\"idle\",\"activities\":[]}]}"));
+
+        Assertions.assertTrue(cache.isHandled("PRESENCE_UPDATE"));
+        Assertions.assertEquals(DiscordStatus.IDLE, cache.getMemberView(10, 40).getStatus());
+        Assertions.assertEquals("nick", cache.getMember(10, 40).get("nick").asText());
+
+        cache.handle("GUILD_MEMBER_REMOVE", Constants.MAPPER.readTree("{\"guild_id\":\"10\",\"user\":{\"id\":\"40\"}}"));
+        Assertions.assertEquals(0, cache.getMemberCount());
+    }
+}
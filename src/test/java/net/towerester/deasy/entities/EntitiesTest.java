@@ -0,0 +1,66 @@
+package net.towerester.deasy.entities;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.gateway.GatewayPayload;
+import net.towerester.deasy.gateway.etf.EtfDecoder;
+import net.towerester.deasy.gateway.etf.EtfEncoder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class EntitiesTest {
+    private static final String MESSAGE = "{\"id\":\"1400000000000000001\",\"channel_id\":\"1100000000000000001\",\"guild_id\":\"1000000000000000000\"," +
+            "\"content\":\"hi\",\"edited_timestamp\":null,\"type\":0,\"flags\":0,\"attachments\":[]," +
+            "\"author\":{\"id\":\"1300000000000000001\",\"username\":\"user1\",\"global_name\":null,\"public_flags\":0}," +
+            "\"member\":{\"roles\":[\"1200000000000000001\",\"1200000000000000002\"],\"joined_at\":\"2023-05-01T12:00:00.000000+00:00\"}}";
+
+    @Test
+    public void readMessage() throws IOException {
+        Message message = Entities.MESSAGE.readValue(MESSAGE);
+
+        Assertions.assertEquals(1400000000000000001L, message.id());
+        Assertions.assertEquals(1000000000000000000L, message.guildId());
+        Assertions.assertEquals("hi", message.content());
+        Assertions.assertNull(message.editedTimestamp());
+        Assertions.assertEquals("user1", message.author().username());
+        Assertions.assertNull(message.author().globalName());
+        Assertions.assertEquals(List.of(1200000000000000001L, 1200000000000000002L), message.member().roles());
+        Assertions.assertNull(message.member().user());
+        // Missing lists are read as empty ones
+        Assertions.assertTrue(message.mentions().isEmpty());
+    }
+
+    @Test
+    public void readGuild() throws IOException {
+        Guild guild = Entities.GUILD.readValue("{\"id\":\"1\",\"name\":\"g\",\"owner_id\":\"2\",\"channels\":[{\"id\":\"3\",\"type\":2,\"parent_id\":null}],\"roles\":null}");
+
+        Assertions.assertEquals(2, guild.ownerId());
+        Assertions.assertEquals(1, guild.channels().size());
+        Assertions.assertEquals(0, guild.channels().get(0).parentId());
+        Assertions.assertTrue(guild.roles().isEmpty());
+        Assertions.assertTrue(guild.members().isEmpty());
+    }
+
+    @Test
+    public void readPayloadData() throws IOException {
+        byte[] json = ("{\"op\":0,\"s\":3,\"t\":\"MESSAGE_CREATE\",\"d\":" + MESSAGE + "}").getBytes(StandardCharsets.UTF_8);
+        Message fromBytes = GatewayPayload.parse(json, 0, json.length).getData(Entities.MESSAGE);
+
+        // Etf sends snowflakes as integers
+        ObjectNode node = (ObjectNode) Constants.MAPPER.readTree(json);
+        ((ObjectNode) node.get("d")).put("id", 1400000000000000001L);
+        byte[] etf = EtfEncoder.encode(node);
+        Message fromEtf = GatewayPayload.parseEtf(etf, 0, etf.length).getData(Entities.MESSAGE);
+
+        Assertions.assertEquals(fromBytes.id(), fromEtf.id());
+        Assertions.assertEquals(fromBytes.author(), fromEtf.author());
+        Message fromTree = Entities.read(Entities.MESSAGE, EtfDecoder.decode(etf, 0, etf.length).get("d"));
+
+        Assertions.assertEquals(fromBytes.content(), fromTree.content());
+        Assertions.assertNull(Entities.read(Entities.USER, null));
+    }
+}
@@ -0,0 +1,41 @@
+package net.towerester.deasy.gateway;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BackoffTest {
+    @Test
+    public void growWithJitter() {
+        double[] random = {0};
+        Backoff backoff = new Backoff(1000, 8000, () -> random[0]);
+
+        Assertions.assertEquals(500, backoff.next());
+        random[0] = 0.999;
+        Assertions.assertEquals(1999, backoff.next());
+        random[0] = 0;
+        Assertions.assertEquals(2000, backoff.next());
+        Assertions.assertEquals(4000, backoff.next());
+        Assertions.assertEquals(4, backoff.getAttempt());
+        // Capped by the maximum
+        Assertions.assertEquals(4000, backoff.next());
+
+        for(int i = 0; i < 100; i++) {
+            Assertions.assertEquals(4000, backoff.next());
+        }
+
+        backoff.reset();
+        Assertions.assertEquals(500, backoff.next());
+    }
+
+    @Test
+    public void classifyCloseCodes() {
+        Assertions.assertEquals(CloseAction.RESUME, CloseAction.of(1006));
+        Assertions.assertEquals(CloseAction.RESUME, CloseAction.of(-1));
+        Assertions.assertEquals(CloseAction.RESUME, CloseAction.of(4000));
+        Assertions.assertEquals(CloseAction.RESUME, CloseAction.of(4008));
+        Assertions.assertEquals(CloseAction.IDENTIFY, CloseAction.of(4009));
+        Assertions.assertEquals(CloseAction.IDENTIFY, CloseAction.of(1000));
+        Assertions.assertEquals(CloseAction.STOP, CloseAction.of(4004));
+        Assertions.assertEquals(CloseAction.STOP, CloseAction.of(4014));
+    }
+}
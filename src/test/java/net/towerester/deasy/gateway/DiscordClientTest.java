@@ -1,5 +1,41 @@
 package net.towerester.deasy.gateway;
 
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 public class DiscordClientTest {
+    @Test
+    public void copyBuilder() {
+        DiscordClient.Builder template = new DiscordClient.Builder("token").setGatewayInfo(new GatewayInfo("wss://gateway.discord.gg", 2));
+        DiscordClient shard = template.copy().setShardingEnabled(true).setShardCount(2).setShardId(1).build();
+
+        Assertions.assertEquals(1, shard.getShardId());
+        Assertions.assertEquals(2, shard.getTotalShards());
+
+        // Settings of the copy don't leak into the template
+        DiscordClient client = template.build();
+
+        Assertions.assertFalse(client.isShardingEnabled());
+        Assertions.assertEquals(0, client.getShardId());
+    }
+
+    @Test
+    public void buildIndependentClients() throws InterruptedException {
+        DiscordClient.Builder builder = new DiscordClient.Builder("token").setGatewayInfo(new GatewayInfo("wss://gateway.discord.gg", 1));
+        DiscordClient first = builder.build();
+        DiscordClient second = builder.build();
+
+        Assertions.assertNotSame(first.getEventBus(), second.getEventBus());
+        Assertions.assertNotSame(first.getCache(), second.getCache());
+
+        // Stopping one client doesn't stop the dispatcher of the other
+        first.stop();
+        CountDownLatch handled = new CountDownLatch(1);
+        second.getEventBus().getDispatcher().dispatch(1, handled::countDown);
 
+        Assertions.assertTrue(handled.await(5, TimeUnit.SECONDS));
+    }
 }
@@ -0,0 +1,66 @@
+package net.towerester.deasy.gateway;
+
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.ContinuousFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GatewayDraftTest {
+    private static DataFrame frame(DataFrame frame, String text, boolean fin) {
+        frame.setPayload(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        frame.setFin(fin);
+
+        return frame;
+    }
+
+    @Test
+    public void readSingleFrame() throws IOException {
+        GatewayDraft draft = new GatewayDraft();
+        List<GatewayPayload> received = new ArrayList<>();
+        GatewayDraft.Listener listener = (buffer, offset, length) -> {
+            try {
+                received.add(GatewayPayload.parse(buffer, offset, length));
+            } catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+        };
+
+        Assertions.assertTrue(draft.accept(frame(new TextFrame(), "{\"op\":11,\"d\":null}", true), listener));
+        Assertions.assertEquals(1, received.size());
+        Assertions.assertEquals(11, received.get(0).getOp());
+    }
+
+    @Test
+    public void joinFragments() {
+        GatewayDraft draft = new GatewayDraft();
+        List<String> received = new ArrayList<>();
+        GatewayDraft.Listener listener = (buffer, offset, length) -> received.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+
+        Assertions.assertTrue(draft.accept(frame(new TextFrame(), "{\"op\":0,", false), listener));
+        Assertions.assertTrue(draft.accept(frame(new ContinuousFrame(), "\"t\":\"\u0442\u0435", false), listener));
+        Assertions.assertTrue(received.isEmpty());
+        Assertions.assertTrue(draft.accept(frame(new ContinuousFrame(), "\u0441\u0442\"}", true), listener));
+
+        // The buffer is reused, a new text frame starts a new message
+        Assertions.assertTrue(draft.accept(frame(new TextFrame(), "{}", true), listener));
+        Assertions.assertEquals(List.of("{\"op\":0,\"t\":\"\u0442\u0435\u0441\u0442\"}", "{}"), received);
+    }
+
+    @Test
+    public void skipOtherFrames() {
+        GatewayDraft draft = new GatewayDraft();
+        GatewayDraft.Listener listener = (buffer, offset, length) -> Assertions.fail("Not a text message");
+
+        Assertions.assertFalse(draft.accept(frame(new BinaryFrame(), "x", false), listener));
+        // Continuation of a binary message belongs to the default draft
+        Assertions.assertFalse(draft.accept(frame(new ContinuousFrame(), "y", true), listener));
+    }
+}
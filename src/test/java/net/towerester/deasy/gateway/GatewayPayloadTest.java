@@ -0,0 +1,81 @@
+package net.towerester.deasy.gateway;
+
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.entities.Entities;
+import net.towerester.deasy.entities.Message;
+import net.towerester.deasy.gateway.etf.EtfEncoder;
+import net.towerester.deasy.gateway.events.DispatchEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class GatewayPayloadTest {
+    @Test
+    public void parseDispatch() throws IOException {
+        byte[] message = "xx{\"d\":{\"id\":\"1\",\"roles\":[{\"id\":\"2\"}]},\"t\":\"GUILD_CREATE\",\"s\":42,\"op\":0}".getBytes(StandardCharsets.UTF_8);
+        GatewayPayload payload = GatewayPayload.parse(message, 2, message.length - 2);
+
+        Assertions.assertEquals(0, payload.getOp());
+        Assertions.assertEquals(42, payload.getSequence());
+        Assertions.assertEquals("GUILD_CREATE", payload.getType());
+        Assertions.assertEquals("2", payload.getData().get("roles").get(0).get("id").asText());
+    }
+
+    @Test
+    public void parseScalarData() throws IOException {
+        GatewayPayload payload = GatewayPayload.parse("{\"t\":null,\"s\":null,\"op\":9,\"d\":true}");
+
+        Assertions.assertEquals(9, payload.getOp());
+        Assertions.assertEquals(-1, payload.getSequence());
+        Assertions.assertNull(payload.getType());
+        Assertions.assertTrue(payload.getData().asBoolean());
+    }
+
+    @Test
+    public void parseText() throws IOException {
+        GatewayPayload payload = GatewayPayload.parse("{\"t\":null,\"s\":null,\"op\":10,\"d\":{\"heartbeat_interval\":41250}}");
+
+        Assertions.assertEquals(41250, payload.getData().get("heartbeat_interval").asInt());
+    }
+
+    @Test
+    public void parseEtf() throws IOException {
+        byte[] term = EtfEncoder.encode(Constants.MAPPER.readTree("{\"op\":0,\"s\":42,\"t\":\"MESSAGE_CREATE\",\"d\":{\"id\":\"1\",\"mentions\":[{\"id\":\"2\"}]}}"));
+        byte[] message = new byte[term.length + 2];
+        System.arraycopy(term, 0, message, 2, term.length);
+        GatewayPayload payload = GatewayPayload.parseEtf(message, 2, term.length);
+
+        Assertions.assertEquals(0, payload.getOp());
+        Assertions.assertEquals(42, payload.getSequence());
+        Assertions.assertEquals("MESSAGE_CREATE", payload.getType());
+        Assertions.assertEquals("2", payload.getData().get("mentions").get(0).get("id").asText());
+    }
+
+    @Test
+    public void detachData() throws IOException {
+        byte[] message = "{\"op\":0,\"s\":1,\"t\":\"MESSAGE_CREATE\",\"d\":{\"id\":\"5\",\"author\":{\"id\":\"6\",\"guild_id\":\"9\"},\"guild_id\":\"7\",\"content\":\"hi\"}}".getBytes(StandardCharsets.UTF_8);
+        GatewayPayload detached = GatewayPayload.parse(message, 0, message.length).detach();
+
+        // The source buffer is reused for the next message
+        Arrays.fill(message, (byte) ' ');
+
+        Assertions.assertEquals(7, detached.getDataSnowflake("guild_id", null));
+        Assertions.assertEquals(5, detached.getDataSnowflake("channel_id", "id"));
+        Assertions.assertEquals(0, detached.getDataSnowflake("channel_id", null));
+
+        DispatchEvent event = new DispatchEvent(null, "MESSAGE_CREATE", detached, 7);
+        Message typed = event.getData(Entities.MESSAGE);
+
+        Assertions.assertEquals("hi", typed.content());
+        Assertions.assertEquals(6, typed.author().id());
+        Assertions.assertEquals("hi", event.getData().get("content").asText());
+
+        byte[] etf = EtfEncoder.encode(Constants.MAPPER.readTree("{\"op\":0,\"d\":{\"id\":5,\"owner_id\":3}}"));
+        GatewayPayload etfPayload = GatewayPayload.parseEtf(etf, 0, etf.length).detach();
+
+        Assertions.assertEquals(5, etfPayload.getDataSnowflake("guild_id", "id"));
+    }
+}
@@ -0,0 +1,98 @@
+package net.towerester.deasy.gateway;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GatewaySendQueueTest {
+    @Test
+    public void reserveSendsForPriorityLane() {
+        List<String> sent = new ArrayList<>();
+        long[] now = {1000};
+        GatewaySendQueue queue = new GatewaySendQueue((payload, length) -> sent.add(new String(payload, 0, length, StandardCharsets.UTF_8)), () -> now[0]);
+
+        for(int i = 0; i < GatewaySendQueue.LIMIT; i++) {
+            queue.send("frame" + i);
+        }
+
+        Assertions.assertEquals(GatewaySendQueue.LIMIT - GatewaySendQueue.RESERVED, sent.size());
+        Assertions.assertEquals(GatewaySendQueue.RESERVED, queue.getQueuedCount());
+
+        queue.sendPriority("heartbeat");
+        Assertions.assertEquals("heartbeat", sent.get(sent.size() - 1));
+
+        // The window moves on, queued frames are sent in order
+        now[0] += GatewaySendQueue.WINDOW;
+        queue.send("last");
+
+        Assertions.assertEquals(0, queue.getQueuedCount());
+        Assertions.assertEquals("frame" + (GatewaySendQueue.LIMIT - GatewaySendQueue.RESERVED), sent.get(GatewaySendQueue.LIMIT - GatewaySendQueue.RESERVED + 1));
+        Assertions.assertEquals("last", sent.get(sent.size() - 1));
+        Assertions.assertEquals(GatewaySendQueue.LIMIT + 2, queue.getSentCount());
+    }
+
+    @Test
+    public void coalescePresenceUpdates() {
+        List<String> sent = new ArrayList<>();
+        long[] now = {1000};
+        GatewaySendQueue queue = new GatewaySendQueue((payload, length) -> sent.add(new String(payload, 0, length, StandardCharsets.UTF_8)), () -> now[0]);
+
+        for(int i = 0; i < GatewaySendQueue.LIMIT - GatewaySendQueue.RESERVED; i++) {
+            queue.send("frame");
+        }
+
+        queue.sendPresence("presence1");
+        queue.send("other");
+        queue.sendPresence("presence2");
+        queue.sendPresence("presence3");
+
+        Assertions.assertEquals(2, queue.getQueuedCount());
+        Assertions.assertEquals(2, queue.getCoalescedCount());
+
+        now[0] += GatewaySendQueue.WINDOW;
+        queue.sendPresence("presence4");
+
+        // Only the latest update is sent, in the place of the first queued one
+        Assertions.assertEquals(List.of("presence4", "other"), sent.subList(sent.size() - 2, sent.size()));
+        Assertions.assertEquals(3, queue.getCoalescedCount());
+
+        queue.sendPresence("presence5");
+        Assertions.assertEquals("presence5", sent.get(sent.size() - 1));
+    }
+
+    @Test
+    public void dropFramesAfterClose() {
+        List<String> sent = new ArrayList<>();
+        GatewaySendQueue queue = new GatewaySendQueue((payload, length) -> sent.add(new String(payload, 0, length, StandardCharsets.UTF_8)), () -> 1000);
+
+        queue.close();
+        queue.send("frame");
+
+        Assertions.assertTrue(sent.isEmpty());
+        Assertions.assertEquals(0, queue.getQueuedCount());
+    }
+
+    @Test
+    public void copyQueuedBuffers() {
+        List<String> sent = new ArrayList<>();
+        long[] now = {1000};
+        GatewaySendQueue queue = new GatewaySendQueue((payload, length) -> sent.add(new String(payload, 0, length, StandardCharsets.UTF_8)), () -> now[0]);
+        byte[] buffer = "heartbeat1xx".getBytes(StandardCharsets.UTF_8);
+
+        for(int i = 0; i < GatewaySendQueue.LIMIT; i++) {
+            queue.sendPriority("frame");
+        }
+
+        // The window is full, the frame waits and the buffer is reused by the caller
+        queue.sendPriority(buffer, 10);
+        buffer[9] = '2';
+
+        now[0] += GatewaySendQueue.WINDOW;
+        queue.sendPriority(buffer, 10);
+
+        Assertions.assertEquals(List.of("heartbeat1", "heartbeat2"), sent.subList(sent.size() - 2, sent.size()));
+    }
+}
@@ -0,0 +1,161 @@
+package net.towerester.deasy.gateway;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.gateway.entities.DiscordStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+public class GuildMemberRequestsTest {
+    private static DiscordClient createClient() {
+        return new DiscordClient("token", List.of(), false, 0, false, null, false, List.of(), List.of(), DiscordStatus.ONLINE, 0, new GatewayInfo("wss://gateway.discord.gg", 1), null, null, null, null, GatewayEncoding.JSON);
+    }
+
+    private static CompletableFuture<List<String>> collect(Flow.Publisher<JsonNode> publisher) {
+        CompletableFuture<List<String>> res = new CompletableFuture<>();
+        List<String> ids = new CopyOnWriteArrayList<>();
+
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(JsonNode item) {
+                ids.add(item.get("user").get("id").asText());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                res.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                res.complete(ids);
+            }
+        });
+
+        return res;
+    }
+
+    @Test
+    public void streamChunksByNonce() throws Exception {
+        DiscordClient client = createClient();
+        GuildMemberRequests requests = client.getMemberRequests();
+
+        CompletableFuture<List<String>> first = collect(client.requestGuildMembers(10, "", 0));
+        // Paced behind the first request, so its chunks arrive before it would be sent
+        CompletableFuture<List<String>> second = collect(client.requestGuildMembers(10, 40L, 41L));
+
+        Assertions.assertTrue(requests.isHandled("GUILD_MEMBERS_CHUNK"));
+        requests.handleChunk(Constants.MAPPER.readTree("{\"guild_id\":\"10\",\"nonce\":\"2\",\"chunk_index\":0,\"chunk_count\":2,\"members\":[{\"user\":{\"id\":\"40\"}}]}"));
+        requests.handleChunk(Constants.MAPPER.readTree("{\"guild_id\":\"10\",\"nonce\":\"2\",\"chunk_index\":1,\"chunk_count\":2,\"members\":[{\"user\":{\"id\":\"41\"}}]}"));
+
+        Assertions.assertEquals(List.of("40", "41"), second.get(5, TimeUnit.SECONDS));
+
+        // The client isn't connected, so the first request fails when it's sent
+        Exception e = Assertions.assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(IllegalStateException.class, e.getCause());
+        Assertions.assertEquals(0, requests.getPendingCount());
+    }
+
+    @Test
+    public void sendOnSubscribe() throws Exception {
+        DiscordClient client = createClient();
+        GuildMemberRequests requests = client.getMemberRequests();
+        // Sent at once and failed, so the next request is paced and stays pending
+        collect(client.requestGuildMembers(10, "", 0));
+
+        Flow.Publisher<JsonNode> publisher = client.requestGuildMembers(10, 40L);
+        JsonNode chunk = Constants.MAPPER.readTree("{\"guild_id\":\"10\",\"nonce\":\"2\",\"chunk_index\":0,\"chunk_count\":1,\"members\":[{\"user\":{\"id\":\"40\"}}]}");
+
+        // Not queued until subscribed, so the chunk doesn't complete the request without a subscriber
+        requests.handleChunk(chunk);
+
+        CompletableFuture<List<String>> members = collect(publisher);
+        Assertions.assertFalse(members.isDone());
+        requests.handleChunk(chunk);
+
+        Assertions.assertEquals(List.of("40"), members.get(5, TimeUnit.SECONDS));
+
+        // A request is sent once, the second subscriber is rejected
+        Exception e = Assertions.assertThrows(Exception.class, () -> collect(publisher).get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    public void failSlowSubscriber() throws Exception {
+        DiscordClient client = createClient();
+        GuildMemberRequests requests = client.getMemberRequests();
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+
+        // Paced behind the first request, so it's pending when the chunk arrives
+        collect(client.requestGuildMembers(10, "", 0));
+        client.requestGuildMembers(10, "", 0).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                // Never requests members
+            }
+
+            @Override
+            public void onNext(JsonNode item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.complete(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                error.complete(null);
+            }
+        });
+
+        StringBuilder chunk = new StringBuilder("{\"guild_id\":\"10\",\"nonce\":\"2\",\"chunk_index\":0,\"chunk_count\":3,\"members\":[");
+
+        for(int i = 0; i < 1100; i++) {
+            chunk.append(i == 0 ? "" : ",").append("{\"user\":{\"id\":\"").append(100 + i).append("\"}}");
+        }
+
+        requests.handleChunk(Constants.MAPPER.readTree(chunk.append("]}").toString()));
+
+        Throwable cause = error.get(5, TimeUnit.SECONDS);
+        Assertions.assertInstanceOf(IllegalStateException.class, cause);
+        Assertions.assertTrue(cause.getMessage().contains("keep up"));
+        Assertions.assertEquals(0, requests.getPendingCount());
+    }
+
+    @Test
+    public void keepVoiceMemberPolicy() throws Exception {
+        DiscordClient client = createClient();
+        GuildMemberRequests requests = client.getMemberRequests();
+
+        collect(client.requestGuildMembers(10, 40L));
+
+        JsonNode chunk = Constants.MAPPER.readTree("{\"guild_id\":\"10\",\"nonce\":\"1\",\"chunk_index\":0,\"chunk_count\":1,\"members\":[{\"user\":{\"id\":\"40\"}}]}");
+
+        // Cached by default, but the default member policy keeps only members connected to voice channels
+        Assertions.assertTrue(requests.isCached(chunk));
+        client.getCache().handle("GUILD_MEMBERS_CHUNK", chunk);
+        requests.handleChunk(chunk);
+
+        Assertions.assertNull(client.getCache().getMember(10, 40));
+    }
+
+    @Test
+    public void cacheUnknownChunks() throws Exception {
+        GuildMemberRequests requests = createClient().getMemberRequests();
+
+        Assertions.assertFalse(requests.isHandled("GUILD_MEMBERS_CHUNK"));
+        Assertions.assertTrue(requests.isCached(Constants.MAPPER.readTree("{\"nonce\":\"other\"}")));
+    }
+}
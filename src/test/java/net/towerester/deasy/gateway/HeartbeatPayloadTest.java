@@ -0,0 +1,43 @@
+package net.towerester.deasy.gateway;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class HeartbeatPayloadTest {
+    @Test
+    public void writeSequence() {
+        HeartbeatPayload payload = new HeartbeatPayload();
+
+        Assertions.assertEquals("{\"op\":1,\"d\":null}", write(payload, 0));
+        Assertions.assertEquals("{\"op\":1,\"d\":7}", write(payload, 7));
+        Assertions.assertEquals("{\"op\":1,\"d\":2147483647}", write(payload, Integer.MAX_VALUE));
+        // A shorter sequence doesn't leave digits of the previous one
+        Assertions.assertEquals("{\"op\":1,\"d\":10}", write(payload, 10));
+    }
+
+    @Test
+    public void writeEtfSequence() throws IOException {
+        HeartbeatPayload payload = new HeartbeatPayload(true);
+
+        Assertions.assertTrue(writeEtf(payload, 0).getData().isNull());
+        Assertions.assertEquals(7, writeEtf(payload, 7).getData().asInt());
+        Assertions.assertEquals(300, writeEtf(payload, 300).getData().asInt());
+        Assertions.assertEquals(Integer.MAX_VALUE, writeEtf(payload, Integer.MAX_VALUE).getData().asInt());
+        Assertions.assertEquals(1, writeEtf(payload, 10).getOp());
+    }
+
+    private static GatewayPayload writeEtf(HeartbeatPayload payload, int sequence) throws IOException {
+        int length = payload.write(sequence);
+
+        return GatewayPayload.parseEtf(payload.getBuffer(), 0, length);
+    }
+
+    private static String write(HeartbeatPayload payload, int sequence) {
+        int length = payload.write(sequence);
+
+        return new String(payload.getBuffer(), 0, length, StandardCharsets.US_ASCII);
+    }
+}
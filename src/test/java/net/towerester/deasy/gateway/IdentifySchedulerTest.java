@@ -0,0 +1,53 @@
+package net.towerester.deasy.gateway;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class IdentifySchedulerTest {
+    @Test
+    public void bucketByMaxConcurrency() {
+        IdentifyScheduler scheduler = new IdentifyScheduler(new GatewayInfo("wss://gateway.discord.gg", 4, 1000, 1000, 0, 2));
+
+        Assertions.assertEquals(0, scheduler.schedule(0, () -> {}));
+        Assertions.assertEquals(0, scheduler.schedule(1, () -> {}));
+
+        long delay = scheduler.schedule(2, () -> {});
+        Assertions.assertTrue(delay > IdentifyScheduler.IDENTIFY_INTERVAL - 1000 && delay <= IdentifyScheduler.IDENTIFY_INTERVAL);
+    }
+
+    @Test
+    public void delayWhenNoSessionStartsRemaining() {
+        IdentifyScheduler scheduler = new IdentifyScheduler(new GatewayInfo("wss://gateway.discord.gg", 1, 1000, 0, 60_000, 1));
+
+        Assertions.assertTrue(scheduler.schedule(0, () -> {}) > 50_000);
+    }
+
+    @Test
+    public void countOnlySentIdentifies() throws InterruptedException {
+        IdentifyScheduler scheduler = new IdentifyScheduler(new GatewayInfo("wss://gateway.discord.gg", 1, 1000, 2, 60_000, 1));
+
+        // The connection was closed before the identify, the start and the bucket slot are given back
+        scheduler.schedule(0, () -> false);
+        awaitRemaining(scheduler, 2);
+
+        Assertions.assertEquals(0, scheduler.schedule(0, () -> true));
+        awaitRemaining(scheduler, 1);
+
+        // A waiting identify reserves the start until the scheduler is shut down
+        Assertions.assertTrue(scheduler.schedule(0, () -> true) > 0);
+        Assertions.assertEquals(0, scheduler.getSessionStartRemaining());
+
+        scheduler.shutdown();
+        Assertions.assertEquals(1, scheduler.getSessionStartRemaining());
+    }
+
+    private static void awaitRemaining(IdentifyScheduler scheduler, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while(scheduler.getSessionStartRemaining() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertEquals(expected, scheduler.getSessionStartRemaining());
+    }
+}
@@ -0,0 +1,63 @@
+package net.towerester.deasy.gateway;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+public class ZlibStreamDecoderTest {
+    private static byte[] compress(Deflater deflater, String message) {
+        deflater.setInput(message.getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[message.length() + 64];
+        int length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+
+        return Arrays.copyOf(buffer, length);
+    }
+
+    @Test
+    public void decodeStream() throws DataFormatException {
+        Deflater deflater = new Deflater();
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        String first = "{\"op\":10,\"d\":{\"heartbeat_interval\":41250}}";
+        String second = "{\"op\":11,\"d\":null}";
+
+        Assertions.assertTrue(decoder.decode(ByteBuffer.wrap(compress(deflater, first))));
+        Assertions.assertEquals(first, new String(decoder.getBuffer(), 0, decoder.getLength(), StandardCharsets.UTF_8));
+
+        Assertions.assertTrue(decoder.decode(ByteBuffer.wrap(compress(deflater, second))));
+        Assertions.assertEquals(second, new String(decoder.getBuffer(), 0, decoder.getLength(), StandardCharsets.UTF_8));
+
+        decoder.close();
+    }
+
+    @Test
+    public void decodeSplitFrames() throws DataFormatException {
+        Deflater deflater = new Deflater();
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        String message = "{\"op\":0,\"t\":\"GUILD_CREATE\",\"d\":{\"name\":\"" + "a".repeat(100_000) + "\"}}";
+        byte[] compressed = compress(deflater, message);
+        int half = compressed.length / 2;
+
+        Assertions.assertFalse(decoder.decode(ByteBuffer.wrap(compressed, 0, half)));
+        Assertions.assertTrue(decoder.decode(ByteBuffer.wrap(compressed, half, compressed.length - half)));
+        Assertions.assertEquals(message, new String(decoder.getBuffer(), 0, decoder.getLength(), StandardCharsets.UTF_8));
+
+        decoder.close();
+    }
+
+    @Test
+    public void dropCorruptMessage() {
+        ZlibStreamDecoder decoder = new ZlibStreamDecoder();
+        byte[] corrupt = {1, 2, 3, 4, 5, 0, 0, (byte) 0xFF, (byte) 0xFF};
+
+        Assertions.assertThrows(DataFormatException.class, () -> decoder.decode(ByteBuffer.wrap(corrupt)));
+        // The corrupt message isn't kept in the input buffer
+        Assertions.assertEquals(0, decoder.getPendingLength());
+
+        decoder.close();
+    }
+}
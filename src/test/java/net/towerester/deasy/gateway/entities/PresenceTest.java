@@ -0,0 +1,45 @@
+package net.towerester.deasy.gateway.entities;
+
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.gateway.GatewayEncoding;
+import net.towerester.deasy.gateway.etf.EtfDecoder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class PresenceTest {
+    @Test
+    public void cachePresenceUntilChanged() throws IOException {
+        Presence presence = new Presence();
+        presence.addActivity(new Activity(Activity.Type.COMPETING, "tests"));
+        byte[] first = presence.toPayload();
+
+        Assertions.assertSame(first, presence.toPayload());
+        Assertions.assertEquals(3, Constants.MAPPER.readTree(first).get("op").asInt());
+        Assertions.assertEquals(5, Constants.MAPPER.readTree(first).get("d").get("activities").get(0).get("type").asInt());
+
+        presence.setStatus(DiscordStatus.DO_NOT_DISTURB);
+        byte[] second = presence.toPayload();
+
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals("dnd", Constants.MAPPER.readTree(second).get("d").get("status").asText());
+    }
+
+    @Test
+    public void cacheEtfPresenceUntilChanged() throws IOException {
+        Presence presence = new Presence();
+        presence.addActivity(new Activity(Activity.Type.COMPETING, "tests"));
+        byte[] first = presence.toPayload(GatewayEncoding.ETF);
+
+        Assertions.assertSame(first, presence.toPayload(GatewayEncoding.ETF));
+        Assertions.assertNotSame(first, presence.toPayload());
+        Assertions.assertEquals(3, EtfDecoder.decode(first, 0, first.length).get("op").asInt());
+
+        presence.setStatus(DiscordStatus.DO_NOT_DISTURB);
+        byte[] second = presence.toPayload(GatewayEncoding.ETF);
+
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals("dnd", EtfDecoder.decode(second, 0, second.length).get("d").get("status").asText());
+    }
+}
@@ -0,0 +1,88 @@
+package net.towerester.deasy.gateway.etf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.towerester.deasy.Constants;
+import net.towerester.deasy.utils.Snowflake;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+public class EtfTest {
+    @Test
+    public void roundTrip() throws IOException {
+        JsonNode node = Constants.MAPPER.readTree("{\"op\":3,\"d\":{\"since\":null,\"afk\":false,\"status\":\"dnd\",\"activities\":[{\"name\":\"\u0442\u0435\u0441\u0442\",\"type\":5}],"
+                + "\"empty\":[],\"big\":1099511627776,\"negative\":-70000,\"huge\":18446744073709551615,\"ratio\":0.25}}");
+        byte[] term = EtfEncoder.encode(node);
+
+        Assertions.assertEquals(node, EtfDecoder.decode(term, 0, term.length));
+    }
+
+    @Test
+    public void decodeDiscordTerms() throws IOException {
+        // {id => 1100000000000000000 (small big), name => <<"general">>, nsfw => false, topic => nil, flags => [1, 2]}
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(131);
+        out.write(116);
+        out.writeInt(5);
+        atom(out, "id");
+        out.write(110);
+        out.write(8);
+        out.write(0);
+        out.writeLong(Long.reverseBytes(1100000000000000000L));
+        atom(out, "name");
+        out.write(109);
+        out.writeInt(7);
+        out.write("general".getBytes(StandardCharsets.UTF_8));
+        atom(out, "nsfw");
+        atom(out, "false");
+        atom(out, "topic");
+        atom(out, "nil");
+        atom(out, "flags");
+        out.write(107);
+        out.writeShort(2);
+        out.write(1);
+        out.write(2);
+
+        JsonNode node = EtfDecoder.decode(bytes.toByteArray(), 0, bytes.size());
+
+        Assertions.assertEquals(1100000000000000000L, Snowflake.parse(node, "id"));
+        Assertions.assertEquals("1100000000000000000", node.get("id").asText());
+        Assertions.assertEquals("general", node.get("name").asText());
+        Assertions.assertFalse(node.get("nsfw").asBoolean());
+        Assertions.assertTrue(node.get("topic").isNull());
+        Assertions.assertEquals(2, node.get("flags").get(1).asInt());
+    }
+
+    @Test
+    public void decodeCompressedTerm() throws IOException {
+        byte[] term = EtfEncoder.encode(Constants.MAPPER.readTree("{\"content\":\"" + "a".repeat(1000) + "\"}"));
+
+        Deflater deflater = new Deflater();
+        deflater.setInput(term, 1, term.length - 1);
+        deflater.finish();
+        byte[] deflated = new byte[term.length];
+        int size = deflater.deflate(deflated);
+        deflater.end();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(131);
+        out.write(80);
+        out.writeInt(term.length - 1);
+        out.write(deflated, 0, size);
+
+        Assertions.assertEquals(1000, EtfDecoder.decode(bytes.toByteArray(), 0, bytes.size()).get("content").asText().length());
+    }
+
+    private static void atom(DataOutputStream out, String name) throws IOException {
+        out.write(119);
+        out.write(name.length());
+        out.write(name.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,69 @@
+package net.towerester.deasy.gateway.events;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EventBusTest {
+    @Test
+    public void subscribeAndUnsubscribe() {
+        EventBus bus = new EventBus();
+        List<String> received = new ArrayList<>();
+
+        Assertions.assertFalse(bus.hasSubscribers("MESSAGE_CREATE"));
+
+        Subscription<DispatchEvent> subscription = bus.subscribe("MESSAGE_CREATE", event -> received.add(event.getEventName()));
+        Assertions.assertTrue(bus.hasSubscribers("MESSAGE_CREATE"));
+        Assertions.assertFalse(bus.hasSubscribers("GUILD_CREATE"));
+
+        bus.publish("MESSAGE_CREATE", new DispatchEvent(null, "MESSAGE_CREATE", 1, null));
+        subscription.unsubscribe();
+        bus.publish("MESSAGE_CREATE", new DispatchEvent(null, "MESSAGE_CREATE", 2, null));
+
+        Assertions.assertEquals(List.of("MESSAGE_CREATE"), received);
+        Assertions.assertFalse(bus.hasSubscribers("MESSAGE_CREATE"));
+    }
+
+    @Test
+    public void registerOnlyOverriddenMethods() {
+        EventBus bus = new EventBus();
+        List<Integer> received = new ArrayList<>();
+
+        bus.register(new EventListener() {
+            @Override
+            public void onHello(HelloEvent event) {
+                received.add(event.getHeartbeatInterval());
+            }
+        });
+
+        Assertions.assertTrue(bus.hasSubscribers(EventBus.HELLO));
+        Assertions.assertFalse(bus.hasSubscribers(EventBus.READY));
+
+        bus.publish(EventBus.HELLO, new HelloEvent(null, 41250));
+        Assertions.assertEquals(List.of(41250), received);
+    }
+
+    @Test
+    public void typedAndRawSubscribers() {
+        EventBus bus = new EventBus();
+        List<String> received = new ArrayList<>();
+
+        bus.subscribe(ReadyEvent.class, event -> received.add(event.getSessionId()));
+        bus.subscribe(EventBus.READY, event -> received.add(event.getEventName()));
+        bus.publish(EventBus.READY, new ReadyEvent(null, 1, null, 10, "session", "wss://resume"));
+
+        Assertions.assertEquals(List.of("session", "READY"), received);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void createReadyWithoutData() {
+        ReadyEvent event = new ReadyEvent(null, 10, "session", "wss://resume");
+
+        Assertions.assertEquals(EventBus.READY, event.getEventName());
+        Assertions.assertEquals("session", event.getSessionId());
+        Assertions.assertNull(event.getData());
+    }
+}
@@ -0,0 +1,137 @@
+package net.towerester.deasy.gateway.events;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EventDispatcherTest {
+    @Test
+    public void keepOrderPerGuild() throws InterruptedException {
+        EventDispatcher dispatcher = new EventDispatcher(DispatchMode.POOL, 4, 1000);
+        Map<Long, List<Integer>> received = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(4000);
+
+        for(int i = 0; i < 1000; i++) {
+            for(long guild = 1; guild <= 4; guild++) {
+                int number = i;
+                long key = guild;
+
+                dispatcher.dispatch(key, () -> {
+                    received.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(number);
+                    done.countDown();
+                });
+            }
+        }
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(4, received.size());
+
+        for(List<Integer> numbers: received.values()) {
+            Assertions.assertEquals(1000, numbers.size());
+
+            for(int i = 0; i < numbers.size(); i++) {
+                Assertions.assertEquals(i, numbers.get(i));
+            }
+        }
+
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void blockWhenQueueIsFull() throws InterruptedException {
+        EventDispatcher dispatcher = new EventDispatcher(DispatchMode.POOL, 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        dispatcher.dispatch(1, () -> {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        dispatcher.dispatch(1, () -> {});
+        dispatcher.dispatch(1, () -> {});
+        Assertions.assertEquals(2, dispatcher.getQueuedCount());
+
+        Thread producer = new Thread(() -> dispatcher.dispatch(1, () -> {}));
+        producer.start();
+        producer.join(200);
+        Assertions.assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+
+        Assertions.assertFalse(producer.isAlive());
+        Assertions.assertEquals(1, dispatcher.getBlockedCount());
+        Assertions.assertEquals(2, dispatcher.getPeakQueuedCount());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void dropWhenHandlersAreStuck() throws InterruptedException {
+        EventDispatcher dispatcher = new EventDispatcher(DispatchMode.POOL, 1, 1, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        dispatcher.dispatch(1, () -> {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        dispatcher.dispatch(2, () -> {});
+        // The reader thread gives up after the block timeout
+        dispatcher.dispatch(3, () -> Assertions.fail("Event must be dropped"));
+
+        Assertions.assertEquals(1, dispatcher.getDroppedCount());
+        Assertions.assertEquals(1, dispatcher.getQueuedCount());
+
+        release.countDown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void continueAfterError() throws InterruptedException {
+        EventDispatcher dispatcher = new EventDispatcher(DispatchMode.POOL, 1, 10);
+        CountDownLatch done = new CountDownLatch(1);
+
+        dispatcher.dispatch(1, () -> {
+            throw new AssertionError("Handler error");
+        });
+        dispatcher.dispatch(1, done::countDown);
+
+        // The lane isn't left scheduled by the failed worker, later events of the guild still run
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, dispatcher.getQueuedCount());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void runInline() {
+        EventDispatcher dispatcher = new EventDispatcher();
+        Thread[] thread = new Thread[1];
+
+        dispatcher.dispatch(1, () -> thread[0] = Thread.currentThread());
+
+        Assertions.assertSame(Thread.currentThread(), thread[0]);
+        Assertions.assertEquals(1, dispatcher.getDispatchedCount());
+    }
+}
@@ -0,0 +1,54 @@
+package net.towerester.deasy.gateway.session;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class SessionStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void fileStore() throws IOException {
+        check(new FileSessionStore(dir.resolve("sessions")));
+    }
+
+    @Test
+    public void mappedStore() throws IOException {
+        Path file = dir.resolve("sessions.bin");
+
+        try(MappedSessionStore store = new MappedSessionStore(file, 2)) {
+            check(store);
+            // Shard ids above the expected count grow the file
+            store.save(40, new SavedSession("forty", "wss://resume", 40, 4000));
+        }
+
+        // A new process sees the sessions saved by the previous one
+        try(MappedSessionStore store = new MappedSessionStore(file, 1)) {
+            Assertions.assertEquals("forty", store.load(40).getSessionId());
+            Assertions.assertEquals(3, store.load(3).getSequence());
+            Assertions.assertNull(store.load(100));
+        }
+    }
+
+    private static void check(SessionStore store) throws IOException {
+        Assertions.assertNull(store.load(0));
+
+        store.save(0, new SavedSession("abc", "wss://gateway-us-east1-b.discord.gg", 1, 1000));
+        store.save(0, new SavedSession("def", "wss://gateway-us-east1-c.discord.gg", 42, 2000));
+        store.save(3, new SavedSession("ghi", "wss://gateway-us-east1-d.discord.gg", 3, 3000));
+
+        SavedSession session = store.load(0);
+        Assertions.assertEquals("def", session.getSessionId());
+        Assertions.assertEquals("wss://gateway-us-east1-c.discord.gg", session.getResumeUrl());
+        Assertions.assertEquals(42, session.getSequence());
+        Assertions.assertEquals(2000, session.getSavedAt());
+
+        store.remove(0);
+        Assertions.assertNull(store.load(0));
+        Assertions.assertEquals("ghi", store.load(3).getSessionId());
+    }
+}
@@ -0,0 +1,107 @@
+package net.towerester.deasy.rest;
+
+import com.sun.net.httpserver.HttpServer;
+import net.towerester.deasy.entities.Member;
+import net.towerester.deasy.utils.SimpleHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RestApiTest {
+    private HttpServer server;
+    private RestApi api;
+    private AtomicInteger requests;
+    private CountDownLatch release;
+
+    @BeforeEach
+    public void start() throws IOException {
+        this.requests = new AtomicInteger();
+        this.release = new CountDownLatch(1);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            int status = 200;
+            String body = "{\"user\":{\"id\":\"6\",\"username\":\"user6\"},\"roles\":[\"7\"],\"nick\":null}";
+
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if(path.endsWith("/404")) {
+                status = 404;
+                body = "{\"message\":\"Unknown Member\",\"code\":10007}";
+            } else if(path.endsWith("/502")) {
+                status = 502;
+                body = "<html><body>Bad Gateway</body></html>";
+            }
+
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+
+            try(OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        this.server.start();
+
+        SimpleHttpClient client = new SimpleHttpClient.Builder().setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort()).build();
+        this.api = new RestApi(client);
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void coalesceGetRequests() {
+        CompletableFuture<Member> first = api.getMember(5, 6);
+        CompletableFuture<Member> second = api.getMember(5, 6);
+
+        Assertions.assertEquals(1, api.getInFlightCount());
+        release.countDown();
+
+        Assertions.assertEquals("user6", first.join().user().username());
+        Assertions.assertEquals(first.join(), second.join());
+        Assertions.assertEquals(1, requests.get());
+        Assertions.assertEquals(0, api.getInFlightCount());
+
+        // A request made after the response is sent again
+        Assertions.assertEquals(List.of(7L), api.getMember(5, 6).join().roles());
+        Assertions.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void failWithRestException() {
+        release.countDown();
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class, () -> api.execute(Routes.GET_GUILD_MEMBER.compile(5L, "404"), null).join());
+        RestException cause = Assertions.assertInstanceOf(RestException.class, e.getCause());
+
+        Assertions.assertEquals(404, cause.getStatus());
+        Assertions.assertEquals(10007, cause.getCode());
+
+        // A proxy error page isn't json, the status is reported anyway
+        e = Assertions.assertThrows(CompletionException.class, () -> api.execute(Routes.GET_GUILD_MEMBER.compile(5L, "502"), null).join());
+        cause = Assertions.assertInstanceOf(RestException.class, e.getCause());
+
+        Assertions.assertEquals(502, cause.getStatus());
+        Assertions.assertEquals(0, cause.getCode());
+        Assertions.assertTrue(cause.getBody().isMissingNode());
+    }
+}
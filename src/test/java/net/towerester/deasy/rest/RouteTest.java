@@ -0,0 +1,49 @@
+package net.towerester.deasy.rest;
+
+import net.towerester.deasy.utils.RateLimiter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RouteTest {
+    @Test
+    public void compilePath() {
+        CompiledRoute route = Routes.EDIT_MESSAGE.compile(123L, 456L);
+
+        Assertions.assertEquals("PATCH", route.getMethod());
+        Assertions.assertEquals("/channels/123/messages/456", route.getPath());
+        Assertions.assertEquals("123", route.getMajorParameter());
+        Assertions.assertEquals("/channels/1/messages?limit=50", Routes.GET_MESSAGES.compile(1L).withQuery("limit", 50).getPath());
+        Assertions.assertEquals("/users/@me", Routes.GET_CURRENT_USER.compile().getPath());
+        Assertions.assertEquals("", Routes.GET_GATEWAY_BOT.compile().getMajorParameter());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Routes.GET_MESSAGE.compile(1L));
+    }
+
+    @Test
+    public void encodeParameters() {
+        CompiledRoute reaction = Routes.ADD_REACTION.compile(1L, 2L, "\uD83D\uDC4D");
+        CompiledRoute custom = Routes.ADD_REACTION.compile(1L, 2L, "my emoji:3");
+
+        Assertions.assertEquals("/channels/1/messages/2/reactions/%F0%9F%91%8D/@me", reaction.getPath());
+        Assertions.assertEquals("/channels/1/messages/2/reactions/my%20emoji%3A3/@me", custom.getPath());
+    }
+
+    @Test
+    public void matchRateLimiterKeys() {
+        CompiledRoute[] routes = {
+                Routes.GET_GATEWAY_BOT.compile(),
+                Routes.GET_GUILD_MEMBER.compile(5L, 6L),
+                Routes.ADD_GUILD_MEMBER_ROLE.compile(5L, 6L, 7L),
+                Routes.CREATE_MESSAGE.compile(1L),
+                Routes.ADD_REACTION.compile(1L, 2L, "\uD83D\uDC4D"),
+                Routes.EXECUTE_WEBHOOK.compile(1L, "token")
+        };
+
+        for(CompiledRoute route: routes) {
+            Assertions.assertEquals(RateLimiter.getRouteKey(route.getMethod(), route.getPath()), route.getRouteKey(), route.toString());
+            Assertions.assertEquals(RateLimiter.getMajorParameter(route.getPath()), route.getMajorParameter(), route.toString());
+        }
+
+        Assertions.assertEquals("1/token", Routes.EXECUTE_WEBHOOK.compile(1L, "token").getMajorParameter());
+    }
+}
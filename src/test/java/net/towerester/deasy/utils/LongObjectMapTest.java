@@ -0,0 +1,53 @@
+package net.towerester.deasy.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongObjectMapTest {
+    @Test
+    public void putGetRemove() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+
+        Assertions.assertNull(map.put(1097623450121232384L, "a"));
+        Assertions.assertEquals("a", map.put(1097623450121232384L, "b"));
+        Assertions.assertNull(map.put(0, "zero"));
+
+        Assertions.assertEquals("b", map.get(1097623450121232384L));
+        Assertions.assertEquals("zero", map.get(0));
+        Assertions.assertEquals(2, map.size());
+
+        Assertions.assertEquals("b", map.remove(1097623450121232384L));
+        Assertions.assertNull(map.get(1097623450121232384L));
+        Assertions.assertEquals(1, map.size());
+    }
+
+    @Test
+    public void matchHashMap() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for(int i = 0; i < 100000; i++) {
+            // Small key range, so removes hit existing keys and probe chains get long
+            long key = (long) random.nextInt(5000) << 22;
+
+            if(random.nextInt(3) == 0) {
+                Assertions.assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Assertions.assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+
+        Assertions.assertEquals(expected.size(), map.size());
+
+        for(Map.Entry<Long, Long> entry: expected.entrySet()) {
+            Assertions.assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+
+        map.forEach((key, value) -> Assertions.assertEquals(expected.get(key), value));
+    }
+}
@@ -0,0 +1,33 @@
+package net.towerester.deasy.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class LongSetTest {
+    @Test
+    public void matchHashSet() {
+        LongSet set = new LongSet();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+
+        for(int i = 0; i < 100000; i++) {
+            long key = (long) random.nextInt(5000) << 22;
+
+            if(random.nextInt(3) == 0) {
+                Assertions.assertEquals(expected.remove(key), set.remove(key));
+            } else {
+                Assertions.assertEquals(expected.add(key), set.add(key));
+            }
+        }
+
+        Assertions.assertEquals(expected.size(), set.size());
+
+        for(long key: set.toArray()) {
+            Assertions.assertTrue(expected.contains(key));
+        }
+    }
+}
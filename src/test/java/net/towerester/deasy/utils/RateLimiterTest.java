@@ -0,0 +1,67 @@
+package net.towerester.deasy.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiterTest {
+    @Test
+    public void buildRouteKey() {
+        Assertions.assertEquals("GET /channels/{id}/messages/{id}", RateLimiter.getRouteKey("GET", "/channels/123/messages/456"));
+        Assertions.assertEquals("PUT /channels/{id}/messages/{id}/reactions/{reaction}", RateLimiter.getRouteKey("PUT", "/channels/1/messages/2/reactions/%F0%9F%91%8D/@me"));
+        Assertions.assertEquals("POST /webhooks/{id}/{id}", RateLimiter.getRouteKey("POST", "/webhooks/1/token?wait=true"));
+        Assertions.assertEquals("GET /gateway/bot", RateLimiter.getRouteKey("GET", "/gateway/bot"));
+    }
+
+    @Test
+    public void findMajorParameter() {
+        Assertions.assertEquals("123", RateLimiter.getMajorParameter("/channels/123/messages/456"));
+        Assertions.assertEquals("5", RateLimiter.getMajorParameter("/guilds/5/members/6"));
+        Assertions.assertEquals("1/token", RateLimiter.getMajorParameter("/webhooks/1/token"));
+        Assertions.assertEquals("", RateLimiter.getMajorParameter("/gateway/bot"));
+    }
+
+    @Test
+    public void exhaustOnlyOneBucket() {
+        RateLimiter limiter = new RateLimiter();
+        HttpHeaders headers = HttpHeaders.of(Map.of(
+                "X-RateLimit-Bucket", List.of("abcd"),
+                "X-RateLimit-Limit", List.of("5"),
+                "X-RateLimit-Remaining", List.of("0"),
+                "X-RateLimit-Reset-After", List.of("60")
+        ), (a, b) -> true);
+
+        limiter.update("POST", "/channels/1/messages", headers);
+
+        Assertions.assertTrue(limiter.getBucket("POST", "/channels/1/messages").isExhausted());
+        Assertions.assertFalse(limiter.getBucket("POST", "/channels/2/messages").isExhausted());
+
+        Assertions.assertFalse(limiter.acquire("POST", "/channels/1/messages").isDone());
+        Assertions.assertTrue(limiter.acquire("POST", "/channels/2/messages").isDone());
+        Assertions.assertTrue(limiter.acquire("GET", "/guilds/1").isDone());
+    }
+
+    @Test
+    public void releaseAfterReset() {
+        RateLimiter limiter = new RateLimiter();
+        HttpHeaders headers = HttpHeaders.of(Map.of(
+                "X-RateLimit-Bucket", List.of("abcd"),
+                "X-RateLimit-Limit", List.of("1"),
+                "X-RateLimit-Remaining", List.of("0"),
+                "X-RateLimit-Reset-After", List.of("0.2")
+        ), (a, b) -> true);
+
+        limiter.update("GET", "/channels/1", headers);
+        CompletableFuture<Void> first = limiter.acquire("GET", "/channels/1");
+        CompletableFuture<Void> second = limiter.acquire("GET", "/channels/1");
+
+        Assertions.assertFalse(first.isDone());
+        first.orTimeout(5, TimeUnit.SECONDS).join();
+        Assertions.assertFalse(second.isDone());
+    }
+}
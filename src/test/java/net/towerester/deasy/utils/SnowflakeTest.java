@@ -0,0 +1,27 @@
+package net.towerester.deasy.utils;
+
+import net.towerester.deasy.Constants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class SnowflakeTest {
+    @Test
+    public void parseSnowflake() {
+        Snowflake id = Snowflake.of("175928847299117063");
+
+        Assertions.assertEquals(175928847299117063L, id.asLong());
+        Assertions.assertEquals("175928847299117063", id.toString());
+        Assertions.assertEquals(1462015105796L, id.getCreationTime().toEpochMilli());
+    }
+
+    @Test
+    public void parseJsonField() throws IOException {
+        // Ids are strings in json and integers in etf
+        Assertions.assertEquals(175928847299117063L, Snowflake.parse(Constants.MAPPER.readTree("{\"id\":\"175928847299117063\"}"), "id"));
+        Assertions.assertEquals(175928847299117063L, Snowflake.parse(Constants.MAPPER.readTree("{\"id\":175928847299117063}"), "id"));
+        Assertions.assertEquals(0, Snowflake.parse(Constants.MAPPER.readTree("{\"id\":null}"), "id"));
+        Assertions.assertEquals(0, Snowflake.parse(null, "id"));
+    }
+}